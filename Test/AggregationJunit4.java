@@ -0,0 +1,141 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.aggregate.Aggregation;
+import ts.tsc.logScanner.aggregate.CountTable;
+import ts.tsc.logScanner.aggregate.LongCountTable;
+import ts.tsc.logScanner.aggregate.WorkerCounts;
+import ts.tsc.logScanner.inputLine.InputOptions;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class AggregationJunit4 extends Assert {
+
+    private static Map<String, Long> toMap(CountTable table) {
+        Map<String, Long> map = new HashMap<>();
+        table.forEach((key, count) -> assertNull(key, map.put(key, count)));
+        return map;
+    }
+
+    private static Map<Long, Long> toMap(LongCountTable table) {
+        Map<Long, Long> map = new HashMap<>();
+        table.forEach((key, count) -> assertNull(map.put(key, count)));
+        return map;
+    }
+
+    /**
+     * Счетчики строковых ключей: увеличение таблицы, ключи с одинаковым хешем, объединение таблиц
+     */
+    @Test
+    public void countTableTest() {
+        CountTable table = new CountTable();
+        for(int key = 0; key < 1000; key++) {
+            table.add("logs/app" + key + ".log", key);
+            table.add("logs/app" + key + ".log", 1);
+        }
+        //"Aa" и "BB" имеют одинаковый hashCode
+        table.add("Aa", 5);
+        table.add("BB", 7);
+        table.add("Aa", 1);
+        assertEquals(1002, table.size());
+        Map<String, Long> counts = toMap(table);
+        assertEquals(1002, counts.size());
+        assertEquals(Long.valueOf(500), counts.get("logs/app499.log"));
+        assertEquals(Long.valueOf(6), counts.get("Aa"));
+        assertEquals(Long.valueOf(7), counts.get("BB"));
+
+        CountTable other = new CountTable();
+        other.add("BB", 3);
+        other.add("AaBB", 2);
+        other.add("BBAa", 4);
+        table.addAll(other);
+        counts = toMap(table);
+        assertEquals(1004, table.size());
+        assertEquals(Long.valueOf(10), counts.get("BB"));
+        assertEquals(Long.valueOf(2), counts.get("AaBB"));
+        assertEquals(Long.valueOf(4), counts.get("BBAa"));
+    }
+
+    /**
+     * Счетчики числовых ключей: увеличение таблицы, ключи с одинаковым хешем, крайние значения, объединение
+     */
+    @Test
+    public void longCountTableTest() {
+        LongCountTable table = new LongCountTable();
+        for(long key = -500; key < 500; key++) {
+            table.add(key, 1);
+            table.add(key, key + 1000);
+        }
+        //Старшая и младшая половины ключа складываются в один хеш: 6 ^ 3 == 5
+        long collision = (3L << 32) | 6L;
+        table.add(collision, 11);
+        table.add(Long.MIN_VALUE, 2);
+        table.add(Long.MAX_VALUE, 3);
+        assertEquals(1003, table.size());
+        Map<Long, Long> counts = toMap(table);
+        assertEquals(Long.valueOf(1006), counts.get(5L));
+        assertEquals(Long.valueOf(11), counts.get(collision));
+        assertEquals(Long.valueOf(2), counts.get(Long.MIN_VALUE));
+        assertEquals(Long.valueOf(3), counts.get(Long.MAX_VALUE));
+
+        LongCountTable other = new LongCountTable();
+        other.add(5L, 1);
+        other.add(collision, 1);
+        other.add(Aggregation.NO_TIME, 1);
+        other.add(10_000, 4);
+        table.addAll(other);
+        counts = toMap(table);
+        assertEquals(1004, table.size());
+        assertEquals(Long.valueOf(1007), counts.get(5L));
+        assertEquals(Long.valueOf(12), counts.get(collision));
+        assertEquals(Long.valueOf(3), counts.get(Aggregation.NO_TIME));
+        assertEquals(Long.valueOf(4), counts.get(10_000L));
+    }
+
+    /**
+     * Группы упорядочены по убыванию количества строк, при равенстве - по имени;
+     * счетчики всех потоков объединяются
+     */
+    @Test
+    public void groupSummaryTest() {
+        Aggregation aggregation = new Aggregation(InputOptions.Aggregate.FILE);
+        assertTrue(aggregation.summary().isEmpty());
+        WorkerCounts first = aggregation.newWorker();
+        WorkerCounts second = aggregation.newWorker();
+        first.add("b.log", 2);
+        first.add("c.log", 5);
+        second.add("a.log", 2);
+        second.add("b.log", 1);
+        second.add("d.log", 0);
+        assertEquals(Arrays.asList("Файл\tКоличество строк", "c.log\t5", "b.log\t3", "a.log\t2", "Всего\t10"),
+                aggregation.summary());
+    }
+
+    /**
+     * Часы подписываются местным временем, упорядочены по времени, строки без отметки времени - последние.
+     * В часовом поясе со смещением +5:30 строки одного часа местного времени попадают в одну группу
+     */
+    @Test
+    public void hourSummaryTest() {
+        ZoneId zone = ZoneId.of("Asia/Kolkata");
+        long early = Instant.parse("2024-03-10T10:40:00Z").toEpochMilli();     //16:10 местного времени
+        long late = Instant.parse("2024-03-10T11:20:00Z").toEpochMilli();      //16:50 местного времени
+        long next = Instant.parse("2024-03-10T11:40:00Z").toEpochMilli();      //17:10 местного времени
+        assertEquals(Aggregation.hourOf(early, zone), Aggregation.hourOf(late, zone));
+        assertNotEquals(Aggregation.hourOf(late, zone), Aggregation.hourOf(next, zone));
+        assertEquals(Aggregation.NO_TIME, Aggregation.hourOf(Long.MIN_VALUE, zone));
+
+        Aggregation aggregation = new Aggregation(InputOptions.Aggregate.HOUR);
+        LongCountTable hours = new LongCountTable();
+        hours.add(Aggregation.hourOf(next, zone), 1);
+        hours.add(Aggregation.NO_TIME, 4);
+        hours.add(Aggregation.hourOf(early, zone), 1);
+        hours.add(Aggregation.hourOf(late, zone), 1);
+        aggregation.newWorker().addHours(hours);
+        assertEquals(Arrays.asList("Час\tКоличество строк", "2024-03-10 16:00\t2", "2024-03-10 17:00\t1",
+                "Без отметки времени\t4", "Всего\t7"), aggregation.summary());
+    }
+}
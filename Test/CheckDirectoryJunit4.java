@@ -0,0 +1,112 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.directory.CheckDirectory;
+import ts.tsc.logScanner.dispatch.DispatchInterface;
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.inputParser.InputParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+public class CheckDirectoryJunit4 extends Assert {
+
+    /**
+     * Очередь, добавление в которую ожидает разрешения теста (заполненная очередь)
+     */
+    private static class BlockedQueue implements DispatchInterface {
+        private final Semaphore permits = new Semaphore(0);
+        private final Set<Path> paths = Collections.synchronizedSet(new HashSet<>());
+        private volatile boolean finished = false;
+
+        @Override
+        public Path popListElement() {
+            return null;
+        }
+
+        @Override
+        public void addListElement(Path path) throws InterruptedException {
+            permits.acquire();
+            paths.add(path);
+        }
+
+        @Override
+        public boolean isSearchFinished() {
+            return finished;
+        }
+
+        @Override
+        public void setDirEndTrue() {
+            finished = true;
+        }
+    }
+
+    /**
+     * @return количество потоков, выполняющих обход директории
+     */
+    private static int walkerThreads() {
+        int count = 0;
+        for(StackTraceElement[] stack : Thread.getAllStackTraces().values()) {
+            for(StackTraceElement element : stack) {
+                if(element.getClassName().startsWith(CheckDirectory.class.getName())) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void delete(Path root) throws IOException {
+        try(Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Пока очередь заполнена, параллельный обход не создает потоков сверх постоянного количества;
+     * после освобождения места все файлы попадают в очередь, а прерывание останавливает обход
+     */
+    @Test
+    public void blockedParallelWalkTest() throws Exception {
+        Path root = Files.createTempDirectory("walk");
+        try {
+            for(int directory = 0; directory < 300; directory++) {
+                Path path = Files.createDirectories(root.resolve("d" + directory % 10).resolve("s" + directory));
+                Files.write(path.resolve("app.log"), "ERROR\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            InputLine line = new InputLine("2", "ERROR", root.toString(), root.resolve("out.txt").toString(),
+                    new String[] {"log"}, InputParser.parseOptions(Collections.singletonList("walk=parallel")));
+
+            BlockedQueue queue = new BlockedQueue();
+            Thread walker = new Thread(new CheckDirectory(queue, line));
+            walker.start();
+            Thread.sleep(500);
+            //Поток запуска обхода и постоянные потоки пула
+            assertTrue(walkerThreads() <= CheckDirectory.WALK_THREADS + 1);
+            queue.permits.release(Integer.MAX_VALUE / 2);
+            walker.join(10_000);
+            assertFalse(walker.isAlive());
+            assertTrue(queue.isSearchFinished());
+            assertEquals(300, queue.paths.size());
+
+            BlockedQueue stopped = new BlockedQueue();
+            walker = new Thread(new CheckDirectory(stopped, line));
+            walker.start();
+            Thread.sleep(200);
+            walker.interrupt();
+            walker.join(10_000);
+            assertFalse(walker.isAlive());
+            assertTrue(stopped.isSearchFinished());
+        } finally {
+            delete(root);
+        }
+    }
+}
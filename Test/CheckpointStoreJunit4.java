@@ -0,0 +1,93 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.checkpoint.CheckpointStore;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+public class CheckpointStoreJunit4 extends Assert {
+
+    private static long startOffset(CheckpointStore store, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return store.startOffset(path, Files.readAttributes(path, BasicFileAttributes.class), channel);
+        }
+    }
+
+    private static void update(CheckpointStore store, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            store.update(path, Files.readAttributes(path, BasicFileAttributes.class), channel.size(), channel);
+        }
+    }
+
+    private static byte[] lines(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for(int iterator = 0; iterator < count; iterator++) {
+            builder.append(text).append(' ').append(iterator).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Дописанный файл просматривается с сохраненной позиции, а усеченный и снова выросший
+     * дальше этой позиции (copytruncate) - с начала
+     */
+    @Test
+    public void copyTruncateTest() throws IOException {
+        Path path = Files.createTempFile("checkpoint", ".log");
+        try {
+            CheckpointStore store = new CheckpointStore();
+            Files.write(path, lines("first", 1000));
+            update(store, path);
+            long offset = Files.size(path);
+            assertEquals(offset, startOffset(store, path));
+
+            Files.write(path, lines("appended", 10), StandardOpenOption.APPEND);
+            assertEquals(offset, startOffset(store, path));
+
+            //Усечение и запись нового содержимого длиннее прежнего в тот же файл (тот же inode)
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(0);
+            }
+            Files.write(path, lines("rotated", 2000), StandardOpenOption.APPEND);
+            assertTrue(Files.size(path) > offset);
+            assertEquals(0, startOffset(store, path));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Позиции удаленных файлов не сохраняются
+     */
+    @Test
+    public void pruneTest() throws IOException {
+        Path directory = Files.createTempDirectory("checkpoint");
+        Path kept = directory.resolve("kept.log");
+        Path deleted = directory.resolve("deleted.log");
+        Path storePath = directory.resolve("out.txt.checkpoint");
+        try {
+            Files.write(kept, lines("kept", 10));
+            Files.write(deleted, lines("deleted", 10));
+            CheckpointStore store = new CheckpointStore(storePath, "query");
+            update(store, kept);
+            update(store, deleted);
+            Files.delete(deleted);
+            store.save();
+
+            CheckpointStore loaded = new CheckpointStore(storePath, "query");
+            loaded.load();
+            assertEquals(Files.size(kept), startOffset(loaded, kept));
+            String saved = new String(Files.readAllBytes(storePath), StandardCharsets.UTF_8);
+            assertFalse(saved.contains(deleted.toString()));
+        } finally {
+            Files.deleteIfExists(kept);
+            Files.deleteIfExists(storePath);
+            Files.delete(directory);
+        }
+    }
+}
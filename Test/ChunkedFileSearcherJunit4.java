@@ -0,0 +1,148 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.fileParser.searcher.ChunkedFileSearcher;
+import ts.tsc.logScanner.fileParser.searcher.EveryLineMatcher;
+import ts.tsc.logScanner.fileParser.searcher.HorspoolMatcher;
+import ts.tsc.logScanner.fileParser.searcher.MappedFileSearcher;
+import ts.tsc.logScanner.fileParser.searcher.RegexLineFilter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+public class ChunkedFileSearcherJunit4 extends Assert {
+
+    /**
+     * Найденные строки одного фрагмента
+     */
+    private static class Lines implements ChunkedFileSearcher.ChunkHandler<List<String>> {
+        private final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void onLine(ByteBuffer buffer, int start, int end, int pattern) {
+            lines.add(MappedFileSearcher.decode(buffer, start, end));
+        }
+
+        @Override
+        public List<String> result() {
+            return lines;
+        }
+    }
+
+    /**
+     * Поиск во фрагментах заданного размера
+     * @return найденные строки всех фрагментов в порядке фрагментов
+     */
+    private static List<String> chunked(Path path, MappedFileSearcher searcher, long chunkSize,
+                                        ForkJoinPool pool) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for(List<String> chunk : new ChunkedFileSearcher(searcher, chunkSize, pool)
+                    .search(channel, 0, channel.size(), Lines::new)) {
+                lines.addAll(chunk);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Поиск во всем файле одним проходом
+     */
+    private static List<String> mapped(Path path, MappedFileSearcher searcher) throws IOException {
+        Lines lines = new Lines();
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            searcher.search(channel, 0, channel.size(), lines);
+        }
+        return lines.result();
+    }
+
+    /**
+     * Найденные строки совпадают с поиском одним проходом при любом положении границ фрагментов:
+     * на найденной строке, перед ней и после нее, в том числе в части файла
+     */
+    @Test
+    public void chunkBoundaryTest() throws IOException {
+        Path path = Files.createTempFile("chunked", ".log");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            StringBuilder text = new StringBuilder();
+            String[] breaks = {"\n", "\r\n", "\r"};
+            int matching = 1;
+            for(int line = 0; line < 200; line++) {
+                if(line % 3 == 0 || line % 5 == 0) {
+                    matching++;
+                }
+                if(line % 3 == 0) {
+                    text.append("ERROR");
+                }
+                text.append(" line ").append(line);
+                if(line % 5 == 0) {
+                    text.append(" error");
+                }
+                text.append(breaks[line % breaks.length]);
+            }
+            text.append("last Error without break");
+            Files.write(path, text.toString().getBytes(StandardCharsets.US_ASCII));
+
+            MappedFileSearcher searcher = new MappedFileSearcher(new HorspoolMatcher("ERROR"));
+            List<String> expected = mapped(path, searcher);
+            assertEquals(matching, expected.size());
+            for(int chunkSize = 1; chunkSize <= 64; chunkSize++) {
+                assertEquals("Размер фрагмента " + chunkSize, expected, chunked(path, searcher, chunkSize, pool));
+            }
+            assertEquals(expected, chunked(path, searcher, 1 << 20, pool));
+
+            //Диапазон, начинающийся с середины файла
+            long from = text.indexOf(" line 100 error");
+            Lines range = new Lines();
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                searcher.search(channel, from, channel.size(), range);
+                for(int chunkSize = 1; chunkSize <= 64; chunkSize += 7) {
+                    List<String> lines = new ArrayList<>();
+                    for(List<String> chunk : new ChunkedFileSearcher(searcher, chunkSize, pool)
+                            .search(channel, from, channel.size(), Lines::new)) {
+                        lines.addAll(chunk);
+                    }
+                    assertEquals("Размер фрагмента " + chunkSize, range.result(), lines);
+                }
+            }
+            assertEquals(" line 100 error", range.result().get(0));
+        } finally {
+            pool.shutdown();
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Граница фрагмента между \r и \n не создает пустую строку в начале следующего фрагмента
+     */
+    @Test
+    public void crlfBoundaryTest() throws IOException {
+        Path path = Files.createTempFile("chunked", ".log");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            StringBuilder text = new StringBuilder();
+            for(int line = 0; line < 50; line++) {
+                text.append("line ").append(line).append(line == 20 ? "\r\n\r\n" : "\r\n");
+            }
+            Files.write(path, text.toString().getBytes(StandardCharsets.US_ASCII));
+            MappedFileSearcher searcher = new MappedFileSearcher(new EveryLineMatcher(),
+                    new RegexLineFilter(Pattern.compile("^$")));
+            assertEquals(1, mapped(path, searcher).size());
+            for(int chunkSize = 1; chunkSize <= 20; chunkSize++) {
+                assertEquals("Размер фрагмента " + chunkSize, 1, chunked(path, searcher, chunkSize, pool).size());
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(path);
+        }
+    }
+}
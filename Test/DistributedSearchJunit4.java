@@ -0,0 +1,215 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.api.LogScanner;
+import ts.tsc.logScanner.api.Query;
+import ts.tsc.logScanner.distributed.ScanWorker;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+public class DistributedSearchJunit4 extends Assert {
+
+    private static final String TOKEN = "distributed-test-token";
+
+    /**
+     * Создание директории с поддиректориями, в каждой из которых один файл с найденными строками
+     * @param directories количество поддиректорий (фрагментов)
+     * @param lines количество строк в каждом файле
+     * @return начальная директория
+     */
+    private static Path createTree(int directories, int lines) throws IOException {
+        Path root = Files.createTempDirectory("distributed");
+        for(int directory = 0; directory < directories; directory++) {
+            StringBuilder text = new StringBuilder();
+            for(int line = 0; line < lines; line++) {
+                text.append(line % 1000 == 0 ? "ERROR" : "INFO").append(" d").append(directory)
+                        .append(" line ").append(line).append(" padding padding padding\n");
+            }
+            Path path = Files.createDirectory(root.resolve("d" + directory));
+            Files.write(path.resolve("app.log"), text.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        return root;
+    }
+
+    private static void delete(Path root) throws IOException {
+        try(Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static ScanWorker startWorker(Path root, String token) throws IOException {
+        ScanWorker worker = new ScanWorker(InetAddress.getLoopbackAddress(), 0, root, token);
+        Thread thread = new Thread(worker, "scan-worker-" + worker.getPort());
+        thread.setDaemon(true);
+        thread.start();
+        return worker;
+    }
+
+    /**
+     * Запуск поиска
+     * @param workers узлы распределенного поиска; null - поиск на этом узле
+     * @param lines найденные строки
+     */
+    private static CompletableFuture<Boolean> submit(LogScanner scanner, Path root, String workers,
+                                                     List<String> lines) {
+        Query query = new Query("ERROR", root.toString(), "log");
+        query.setThreads(2);
+        query.setOutputPath(root.resolve("out.txt").toString());
+        query.setListener(lines::addAll);
+        if(workers != null) {
+            assertTrue(query.set("workers", workers));
+        }
+        return scanner.submit(query).getResult();
+    }
+
+    /**
+     * Найденные строки без номеров потоков в порядке строк
+     */
+    private static List<String> normalize(List<String> lines) {
+        List<String> result = new ArrayList<>();
+        for(String line : lines) {
+            result.add(line.replaceFirst("^\\[\\d+\\] ", ""));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * @return true - если узел просматривает фрагмент
+     */
+    private static boolean isScanning(ScanWorker worker) {
+        for(Map.Entry<Thread, StackTraceElement[]> thread : Thread.getAllStackTraces().entrySet()) {
+            if(!thread.getKey().getName().equals("shard-connection-" + worker.getPort())) {
+                continue;
+            }
+            for(StackTraceElement element : thread.getValue()) {
+                if(element.getClassName().equals(ScanWorker.class.getName())
+                        && element.getMethodName().equals("waitFor")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Узел остановлен во время просмотра фрагмента: фрагмент просматривается другим узлом,
+     * найденные строки совпадают с поиском на одном узле
+     */
+    @Test
+    public void killedWorkerTest() throws Exception {
+        Path root = createTree(8, 60_000);
+        System.setProperty("logscanner.token", TOKEN);
+        ScanWorker first = startWorker(root, TOKEN);
+        ScanWorker second = startWorker(root, TOKEN);
+        try(LogScanner scanner = new LogScanner()) {
+            List<String> expected = new ArrayList<>();
+            assertTrue(submit(scanner, root, null, expected).join());
+            assertEquals(8 * 60, expected.size());
+
+            List<String> lines = Collections.synchronizedList(new ArrayList<>());
+            CompletableFuture<Boolean> result = submit(scanner, root,
+                    "127.0.0.1:" + first.getPort() + ",127.0.0.1:" + second.getPort(), lines);
+            boolean killed = false;
+            while (!result.isDone()) {
+                if(isScanning(first)) {
+                    first.close();
+                    killed = true;
+                    break;
+                }
+                Thread.sleep(1);
+            }
+            assertTrue("Узел не был остановлен во время просмотра фрагмента", killed);
+            assertTrue(result.join());
+            assertEquals(normalize(expected), normalize(lines));
+        } finally {
+            first.close();
+            second.close();
+            System.clearProperty("logscanner.token");
+            delete(root);
+        }
+    }
+
+    /**
+     * Фрагменты, которые узел не может просмотреть (директория вне корня узла), передаются другому узлу;
+     * узел с другим ключом не получает фрагменты
+     */
+    @Test
+    public void refusedShardTest() throws Exception {
+        Path root = createTree(4, 5_000);
+        Path other = Files.createTempDirectory("distributed");
+        System.setProperty("logscanner.token", TOKEN);
+        ScanWorker outside = startWorker(other, TOKEN);
+        ScanWorker stranger = startWorker(root, "other-token");
+        ScanWorker inside = startWorker(root, TOKEN);
+        try(LogScanner scanner = new LogScanner()) {
+            List<String> expected = new ArrayList<>();
+            assertTrue(submit(scanner, root, null, expected).join());
+            assertEquals(4 * 5, expected.size());
+
+            List<String> lines = Collections.synchronizedList(new ArrayList<>());
+            assertTrue(submit(scanner, root, "127.0.0.1:" + outside.getPort() + ",127.0.0.1:" + stranger.getPort()
+                    + ",127.0.0.1:" + inside.getPort(), lines).join());
+            assertEquals(normalize(expected), normalize(lines));
+        } finally {
+            outside.close();
+            stranger.close();
+            inside.close();
+            System.clearProperty("logscanner.token");
+            delete(root);
+            delete(other);
+        }
+    }
+
+    /**
+     * Соединения сверх предела узла сразу закрываются с ошибкой; после закрытия соединений
+     * узел снова принимает координатора
+     */
+    @Test
+    public void connectionLimitTest() throws Exception {
+        Path root = createTree(2, 5_000);
+        System.setProperty("logscanner.token", TOKEN);
+        ScanWorker worker = startWorker(root, TOKEN);
+        List<Socket> idle = new ArrayList<>();
+        try(LogScanner scanner = new LogScanner()) {
+            //Соединения без ключа занимают узел
+            for(int connection = 0; connection < ScanWorker.MAX_CONNECTIONS; connection++) {
+                idle.add(new Socket(InetAddress.getLoopbackAddress(), worker.getPort()));
+            }
+            try(Socket extra = new Socket(InetAddress.getLoopbackAddress(), worker.getPort())) {
+                extra.setSoTimeout(10_000);
+                DataInputStream in = new DataInputStream(extra.getInputStream());
+                assertEquals("ERROR", in.readUTF());
+            }
+            for(Socket socket : idle) {
+                socket.close();
+            }
+            Thread.sleep(500);
+
+            List<String> expected = new ArrayList<>();
+            assertTrue(submit(scanner, root, null, expected).join());
+            List<String> lines = Collections.synchronizedList(new ArrayList<>());
+            assertTrue(submit(scanner, root, "127.0.0.1:" + worker.getPort(), lines).join());
+            assertEquals(normalize(expected), normalize(lines));
+        } finally {
+            for(Socket socket : idle) {
+                socket.close();
+            }
+            worker.close();
+            System.clearProperty("logscanner.token");
+            delete(root);
+        }
+    }
+}
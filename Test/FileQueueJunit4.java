@@ -0,0 +1,127 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.dispatch.DeviceQueue;
+import ts.tsc.logScanner.dispatch.FileQueue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class FileQueueJunit4 extends Assert {
+
+    /**
+     * Закрытие заполненной очереди будит производителя, ожидающего свободного места
+     */
+    @Test
+    public void closeFullQueueTest() throws InterruptedException {
+        FileQueue queue = new FileQueue(1);
+        queue.put(Paths.get("a.log"));
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(Paths.get("b.log"));
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        producer.start();
+        while (producer.getState() != Thread.State.WAITING) {
+            assertTrue(producer.isAlive());
+            Thread.sleep(1);
+        }
+
+        queue.close();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertTrue(error.get() instanceof IllegalStateException);
+
+        //Пути, добавленные до закрытия, остаются доступны потокам поиска
+        assertEquals(1, queue.size());
+        Path path = queue.take();
+        assertEquals(Paths.get("a.log"), path);
+        assertNull(queue.take());
+        assertTrue(queue.isFinished());
+    }
+
+    /**
+     * Заполненная очередь одного устройства не мешает добавлять файлы другого устройства
+     */
+    @Test
+    public void deviceCapacityTest() throws Exception {
+        DeviceQueue queue = new DeviceQueue(2, 1);
+        Path slow = Files.createTempDirectory("device");
+        try {
+            queue.put(slow.resolve("a.log"));
+            queue.put(slow.resolve("b.log"));
+
+            //Хранилище несуществующей директории не определяется - это другое устройство
+            Path other = slow.resolve("missing").resolve("c.log");
+            Thread producer = new Thread(() -> {
+                try {
+                    queue.put(other);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+            producer.join(5000);
+            assertFalse("Файл другого устройства ожидает места в очереди", producer.isAlive());
+            assertEquals(3, queue.size());
+
+            //Файлы устройств выдаются по кругу
+            Path first = queue.take();
+            Path second = queue.take();
+            assertTrue(first.equals(other) || second.equals(other));
+            queue.close();
+        } finally {
+            Files.delete(slow);
+        }
+    }
+
+    /**
+     * @return текущее ограничение единственного устройства из описания очереди
+     */
+    private static int deviceLimit(DeviceQueue queue) {
+        Matcher matcher = Pattern.compile("одновременно файлов (\\d+)").matcher(queue.summary());
+        assertTrue(matcher.find());
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * Ограничение, достигшее наибольшего значения, не остается на границе, даже если скорость не падает
+     */
+    @Test
+    public void deviceLimitBoundTest() throws Exception {
+        DeviceQueue queue = new DeviceQueue(1000, 4);
+        Path directory = Files.createTempDirectory("device");
+        try {
+            for(int file = 0; file < 100; file++) {
+                queue.put(directory.resolve(String.format("f%03d.log", file)));
+            }
+            List<Integer> limits = new ArrayList<>();
+            for(int window = 0; window < 10; window++) {
+                Thread.sleep(550);
+                //Скорость чтения растет в каждом интервале измерения
+                for(int file = 0; file < 4; file++) {
+                    queue.done(queue.take(), (1L << window) * 1_000_000, 0);
+                }
+                limits.add(deviceLimit(queue));
+            }
+            for(int limit : limits) {
+                assertTrue(limits.toString(), limit >= 1 && limit <= 4);
+            }
+            int top = limits.indexOf(4);
+            assertTrue(limits.toString(), top >= 0);
+            assertTrue(limits.toString(), limits.subList(top, limits.size()).stream().anyMatch(limit -> limit < 4));
+            queue.close();
+        } finally {
+            Files.delete(directory);
+        }
+    }
+}
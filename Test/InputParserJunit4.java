@@ -1,7 +1,12 @@
 import org.junit.Assert;
 import org.junit.Test;
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.InputOptions;
 import ts.tsc.logScanner.inputLine.inputParser.InputParser;
 
+import java.nio.file.Paths;
+import java.util.Arrays;
+
 public class InputParserJunit4 extends Assert {
 
     /**
@@ -37,4 +42,99 @@ public class InputParserJunit4 extends Assert {
                 .validateLine("15; password; c:; c:\\temp\\out/.txt; txt log out e13"));
 
     }
+
+    /**
+     * Проверка дополнительных параметров
+     */
+    @Test
+    public void validateOptionsTest() {
+        assertTrue(InputParser
+                .validateLine("15; password; c:\\logs; c:\\temp\\out.txt; txt log; walk=parallel")
+                .getOptions().isParallelWalk());
+        assertFalse(InputParser
+                .validateLine("15; password; c:\\logs; c:\\temp\\out.txt; txt log")
+                .getOptions().isParallelWalk());
+
+        assertNull(InputParser
+                .validateLine("15; password; c:\\logs; c:\\temp\\out.txt; txt log; walk"));
+        assertNull(InputParser
+                .validateLine("15; password; c:\\logs; c:\\temp\\out.txt; txt log; walk=fast"));
+        assertNull(InputParser
+                .validateLine("15; password; c:\\logs; c:\\temp\\out.txt; txt log; unknown=1"));
+    }
+
+    /**
+     * Разделение текста для поиска на подстроки
+     */
+    @Test
+    public void splitPatternsTest() {
+        assertArrayEquals(new String[] {"timeout", "refused"}, InputLine.splitPatterns(" timeout | refused|"));
+        assertArrayEquals(new String[] {" a b "}, InputLine.splitPatterns(" a b "));
+        assertArrayEquals(new String[] {"a|b", "c"}, InputLine.splitPatterns("a\\|b|c"));
+        assertArrayEquals(new String[] {"x || y"}, InputLine.splitPatterns("x \\|\\| y"));
+        assertArrayEquals(new String[0], InputLine.splitPatterns(" | "));
+    }
+
+    /**
+     * Упорядоченный вывод несовместим с параметрами, меняющими порядок файлов
+     */
+    @Test
+    public void sortedOutputOptionsTest() {
+        assertTrue(InputParser.parseOptions(Arrays.asList("order=path")).isSortedOutput());
+        assertNull(InputParser.parseOptions(Arrays.asList("order=path", "walk=parallel")));
+        assertNull(InputParser.parseOptions(Arrays.asList("order=path", "io=device")));
+        assertNull(InputParser.parseOptions(Arrays.asList("order=path", "limit=10")));
+        assertNotNull(InputParser.parseOptions(Arrays.asList("order=path", "max=10")));
+    }
+
+    /**
+     * Проверка параметров кэша результатов
+     */
+    @Test
+    public void validateCacheOptionsTest() {
+        InputOptions options = InputParser.parseOptions(Arrays.asList("cache=on", "cachesize=64"));
+        assertNotNull(options);
+        assertTrue(options.isCached());
+        assertEquals(64L * 1024 * 1024, options.getCacheSize());
+
+        assertNull(InputParser.parseOptions(Arrays.asList("cachesize=0")));
+        assertNull(InputParser.parseOptions(Arrays.asList("cache=on", "mode=follow")));
+        assertNull(InputParser.parseOptions(Arrays.asList("cache=on", "count=file")));
+    }
+
+    /**
+     * Проверка ограничений количества найденных строк
+     */
+    @Test
+    public void validateLimitOptionsTest() {
+        InputOptions options = InputParser.parseOptions(Arrays.asList("max=5", "limit=100"));
+        assertNotNull(options);
+        assertEquals(5, options.getFileMatchLimit());
+        assertEquals(100, options.getMatchLimit());
+        assertEquals(1, InputParser.parseOptions(Arrays.asList("max=5", "list=files")).getFileMatchLimit());
+
+        assertNull(InputParser.parseOptions(Arrays.asList("max=0")));
+        assertNull(InputParser.parseOptions(Arrays.asList("limit=many")));
+        assertNull(InputParser.parseOptions(Arrays.asList("list=dirs")));
+        assertNull(InputParser.parseOptions(Arrays.asList("limit=1", "mode=incremental")));
+        assertNull(InputParser.parseOptions(Arrays.asList("list=files", "count=file")));
+    }
+
+    /**
+     * Проверка расширений, в том числе сжатых файлов после ротации
+     */
+    @Test
+    public void isRightExtensionTest() {
+        String[] extensions = {"log", "txt"};
+        assertTrue(InputParser.isRightExtension(Paths.get("logs", "app.LOG"), extensions));
+        assertTrue(InputParser.isRightExtension(Paths.get("logs", "app.log.gz"), extensions));
+        assertTrue(InputParser.isRightExtension(Paths.get("logs", "app.log.12.gz"), extensions));
+        assertFalse(InputParser.isRightExtension(Paths.get("logs", "app.log.1"), extensions));
+        assertFalse(InputParser.isRightExtension(Paths.get("logs", "app.err.gz"), extensions));
+        assertFalse(InputParser.isRightExtension(Paths.get("logs", "app.zip"), extensions));
+
+        assertTrue(InputParser.isRightEntry("inner/app.log", new String[] {"zip", "log"}));
+        assertFalse(InputParser.isRightEntry("inner/app.bin", new String[] {"zip", "log"}));
+        assertTrue(InputParser.isRightEntry("inner/app.bin", new String[] {"zip"}));
+    }
 }
@@ -0,0 +1,329 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.api.LogScanner;
+import ts.tsc.logScanner.api.Query;
+import ts.tsc.logScanner.directory.CheckDirectory;
+import ts.tsc.logScanner.dispatch.QueryInterface;
+import ts.tsc.logScanner.fileParser.searcher.ChunkedFileSearcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+public class LogScannerJunit4 extends Assert {
+
+    /**
+     * Создание дерева директорий с одинаковыми файлами
+     * @param directories количество поддиректорий
+     * @param files количество файлов в каждой поддиректории
+     * @return начальная директория
+     */
+    private static Path createTree(int directories, int files) throws IOException {
+        Path root = Files.createTempDirectory("scanner");
+        byte[] text = "first line\nERROR second line\nthird line\n".getBytes(StandardCharsets.US_ASCII);
+        for(int directory = 0; directory < directories; directory++) {
+            Path path = Files.createDirectory(root.resolve("d" + directory));
+            for(int file = 0; file < files; file++) {
+                Files.write(path.resolve("f" + file + ".log"), text);
+            }
+        }
+        return root;
+    }
+
+    private static void delete(Path root) throws IOException {
+        try(Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * @return true - если какой-либо поток еще выполняет обход директории
+     */
+    private static boolean isWalking() {
+        for(StackTraceElement[] stack : Thread.getAllStackTraces().values()) {
+            for(StackTraceElement element : stack) {
+                if(element.getClassName().startsWith("ts.tsc.logScanner.directory.CheckDirectory")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Поиск в дереве с выводом, упорядоченным по пути (без номеров потоков)
+     * @param options дополнительные параметры ключ=значение
+     * @return найденные строки
+     */
+    private static List<String> scan(LogScanner scanner, Path root, Path output, String message,
+                                     String... options) {
+        List<String> lines = new ArrayList<>();
+        Query query = new Query(message, root.toString(), "log");
+        query.setThreads(3);
+        query.setOutputPath(output.toString());
+        query.setListener(lines::addAll);
+        assertTrue(query.set("order", "path"));
+        for(String option : options) {
+            String[] pair = option.split("=", 2);
+            assertTrue(option, query.set(pair[0], pair[1]));
+        }
+        scanner.submit(query).getResult().join();
+        return lines;
+    }
+
+    /**
+     * Поиск с индексом триграмм находит те же строки, что и без индекса,
+     * в том числе после дописывания файла (индекс достраивается)
+     */
+    @Test
+    public void indexedScanTest() throws Exception {
+        Path root = Files.createTempDirectory("scanner");
+        Path output = root.resolve("out.txt");
+        Path big = root.resolve("big.log");
+        try(LogScanner scanner = new LogScanner()) {
+            StringBuilder text = new StringBuilder();
+            for(int line = 0; line < 250_000; line++) {
+                text.append("line ").append(line).append(line % 97_000 == 500 ? " Needle-Found" : " nothing")
+                        .append(" padding padding padding\n");
+            }
+            Files.write(big, text.toString().getBytes(StandardCharsets.US_ASCII));
+            Files.write(root.resolve("small.log"), "needle-found here\nnot here\n".getBytes(StandardCharsets.US_ASCII));
+
+            List<String> plain = scan(scanner, root, output, "needle-found");
+            assertEquals(4, plain.size());
+            assertEquals(plain, scan(scanner, root, output, "needle-found", "index=on"));
+            //Повторный запуск использует сохраненный индекс
+            assertEquals(plain, scan(scanner, root, output, "needle-found", "index=on"));
+
+            Files.write(big, "appended NEEDLE-FOUND line\n".getBytes(StandardCharsets.US_ASCII),
+                    StandardOpenOption.APPEND);
+            plain = scan(scanner, root, output, "needle-found");
+            assertEquals(5, plain.size());
+            assertEquals(plain, scan(scanner, root, output, "needle-found", "index=on"));
+            assertEquals(plain, scan(scanner, root, output, "needle-found", "index=on"));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /**
+     * Строки контекста из соседнего блока индекса, в котором нет искомой строки, не теряются
+     */
+    @Test
+    public void indexedContextTest() throws Exception {
+        Path root = Files.createTempDirectory("scanner");
+        Path output = root.resolve("out.txt");
+        try(LogScanner scanner = new LogScanner()) {
+            //Строки по 64 байта: блок индекса (4 МБ) заканчивается перед строкой 65536
+            StringBuilder text = new StringBuilder();
+            for(int line = 0; line < 100_000; line++) {
+                text.append(String.format("line %08d %-49s\n", line, line == 65_536 ? "Needle-Found" : "nothing"));
+            }
+            Files.write(root.resolve("big.log"), text.toString().getBytes(StandardCharsets.US_ASCII));
+
+            List<String> context = scan(scanner, root, output, "needle-found", "context=3");
+            assertEquals(7, context.size());
+            assertEquals(context, scan(scanner, root, output, "needle-found", "context=3", "index=on"));
+            assertEquals(context, scan(scanner, root, output, "needle-found", "context=3", "index=on"));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /**
+     * Содержимое выходного файла без итоговой строки со временем поиска
+     */
+    private static byte[] results(Path output) throws IOException {
+        String text = new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+        int summary = text.lastIndexOf(System.lineSeparator() + "Поиск длился");
+        assertTrue(summary > 0);
+        return text.substring(0, summary).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Упорядоченный вывод нескольких потоков совпадает побайтно при повторном запуске,
+     * в том числе для файла, строки которого сбрасываются во временный сегмент
+     */
+    @Test
+    public void sortedOutputTest() throws Exception {
+        Path root = createTree(8, 40);
+        Path first = root.resolve("first.txt");
+        Path second = root.resolve("second.txt");
+        try(LogScanner scanner = new LogScanner()) {
+            StringBuilder text = new StringBuilder();
+            for(int line = 0; line < 40_000; line++) {
+                text.append("ERROR line ").append(line).append(" of the file with many matching lines\n");
+            }
+            Files.write(root.resolve("d3").resolve("many.log"), text.toString().getBytes(StandardCharsets.US_ASCII));
+
+            for(Path output : new Path[] {first, second}) {
+                Query query = new Query("ERROR", root.toString(), "log");
+                query.setThreads(4);
+                query.setOutputPath(output.toString());
+                assertTrue(query.set("order", "path"));
+                assertTrue(scanner.submit(query).getResult().join());
+            }
+            byte[] expected = results(first);
+            assertEquals(8 * 40 + 40_000,
+                    new String(expected, StandardCharsets.UTF_8).split(System.lineSeparator()).length);
+            assertArrayEquals(expected, results(second));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /**
+     * Остановка по limit при параллельном обходе дерева, в котором файлов больше размера очереди:
+     * обходчик, ожидающий места в очереди, должен завершиться
+     */
+    @Test
+    public void limitStopsParallelWalkTest() throws Exception {
+        Path root = createTree(50, 100);
+        try(LogScanner scanner = new LogScanner()) {
+            List<String> lines = Collections.synchronizedList(new ArrayList<>());
+            Query query = new Query("ERROR", root.toString(), "log");
+            query.setThreads(2);
+            query.setListener(lines::addAll);
+            assertTrue(query.set("walk", "parallel"));
+            assertTrue(query.set("limit", "1"));
+            assertTrue(scanner.submit(query).getResult().join());
+            assertEquals(1, lines.size());
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (isWalking() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse("Обход директории не завершился после остановки поиска", isWalking());
+        } finally {
+            delete(root);
+        }
+    }
+
+    /**
+     * Запрос, потокам которого вместе с уже занятыми не хватает общего предела, не запускается;
+     * после окончания других запросов такой запрос допускается
+     */
+    @Test
+    public void threadLimitTest() throws Exception {
+        Path root = createTree(2, 10);
+        try(LogScanner scanner = new LogScanner(8 + ChunkedFileSearcher.POOL_THREADS)) {
+            Query follow = new Query("ERROR", root.toString(), "log");
+            follow.setOutputPath(root.resolve("follow.txt").toString());
+            follow.setListener(lines -> { });
+            assertTrue(follow.set("mode", "follow"));
+            QueryInterface following = scanner.submit(follow);
+
+            //Наблюдение занимает 2 потока, запросу нужно 4 потока поиска и 3 вспомогательных
+            Query query = new Query("ERROR", root.toString(), "log");
+            query.setThreads(4);
+            query.setListener(lines -> { });
+            try {
+                scanner.submit(query);
+                fail("Запрос превышает предел потоков");
+            } catch (IllegalStateException e) {
+                //Запрос отклонен, потоки не запускались
+            }
+            following.cancel();
+            following.getResult().join();
+
+            List<String> lines = Collections.synchronizedList(new ArrayList<>());
+            query.setListener(lines::addAll);
+            assertTrue(scanner.submit(query).getResult().join());
+            assertEquals(2 * 10, lines.size());
+
+            Query large = new Query("ERROR", root.toString(), "log");
+            large.setThreads(6);
+            large.setListener(lines::addAll);
+            try {
+                scanner.submit(large);
+                fail("Запрос превышает предел потоков");
+            } catch (IllegalStateException e) {
+                //Запрос не может быть выполнен при этом пределе
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    /**
+     * Потоки параллельного обхода директории учитываются в пределе потоков запросов
+     */
+    @Test
+    public void parallelWalkLimitTest() throws Exception {
+        Path root = createTree(2, 10);
+        //Достаточно для одного потока поиска и вспомогательных потоков, но не для пула обхода
+        int limit = ChunkedFileSearcher.POOL_THREADS + 1 + 3 + CheckDirectory.WALK_THREADS - 1;
+        try(LogScanner scanner = new LogScanner(limit)) {
+            Query query = new Query("ERROR", root.toString(), "log");
+            query.setThreads(1);
+            query.setListener(lines -> { });
+            assertTrue(query.set("walk", "parallel"));
+            try {
+                scanner.submit(query);
+                fail("Запрос превышает предел потоков");
+            } catch (IllegalStateException e) {
+                //Запрос отклонен, потоки не запускались
+            }
+            assertTrue(scanner.getRunning().isEmpty());
+
+            List<String> lines = Collections.synchronizedList(new ArrayList<>());
+            query = new Query("ERROR", root.toString(), "log");
+            query.setThreads(1);
+            query.setListener(lines::addAll);
+            assertTrue(scanner.submit(query).getResult().join());
+            assertEquals(2 * 10, lines.size());
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void gzip(Path path, String text) throws IOException {
+        try(OutputStream output = new GZIPOutputStream(Files.newOutputStream(path))) {
+            output.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * При наблюдении выводятся только дописанные строки: сжатые файлы, существующие при запуске
+     * и появившиеся при ротации, не просматриваются ни по событиям, ни при периодической проверке
+     */
+    @Test
+    public void followCompressedTest() throws Exception {
+        Path root = Files.createTempDirectory("scanner");
+        Path log = root.resolve("app.log");
+        try(LogScanner scanner = new LogScanner()) {
+            Files.write(log, "ERROR old\n".getBytes(StandardCharsets.US_ASCII));
+            gzip(root.resolve("app.log.1.gz"), "ERROR archived\n");
+
+            List<String> lines = Collections.synchronizedList(new ArrayList<>());
+            Query query = new Query("ERROR", root.toString(), "log");
+            query.setOutputPath(root.resolve("out.txt").toString());
+            query.setListener(lines::addAll);
+            assertTrue(query.set("mode", "follow"));
+            long start = System.currentTimeMillis();
+            QueryInterface follow = scanner.submit(query);
+            Thread.sleep(1000);
+
+            gzip(root.resolve("app.log.2.gz"), "ERROR old\nERROR rotated\n");
+            Files.write(log, "ERROR new\n".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+            //Периодическая проверка всех файлов выполняется через 10 с после запуска
+            Thread.sleep(Math.max(0, start + 11_000 - System.currentTimeMillis()));
+            follow.cancel();
+            follow.getResult().join();
+
+            assertEquals(1, lines.size());
+            assertTrue(lines.get(0), lines.get(0).endsWith("ERROR new"));
+        } finally {
+            delete(root);
+        }
+    }
+}
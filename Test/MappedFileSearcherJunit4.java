@@ -0,0 +1,232 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.fileParser.searcher.ByteMatcher;
+import ts.tsc.logScanner.fileParser.searcher.EveryLineMatcher;
+import ts.tsc.logScanner.fileParser.searcher.HorspoolMatcher;
+import ts.tsc.logScanner.fileParser.searcher.LineHandler;
+import ts.tsc.logScanner.fileParser.searcher.MappedFileSearcher;
+import ts.tsc.logScanner.fileParser.searcher.RegexLineFilter;
+import ts.tsc.logScanner.fileParser.searcher.TimeWindow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class MappedFileSearcherJunit4 extends Assert {
+
+    private static List<String> search(String text, String needle, int window) throws IOException {
+        return search(text, new String[] {needle}, window);
+    }
+
+    private static List<String> search(String text, String[] needles, int window) throws IOException {
+        Path path = Files.createTempFile("searcher", ".log");
+        try {
+            Files.write(path, text.getBytes(StandardCharsets.ISO_8859_1));
+            List<String> lines = new ArrayList<>();
+            new MappedFileSearcher(ByteMatcher.of(needles), window)
+                    .search(path, (buffer, start, end, pattern) ->
+                            lines.add(needles[pattern] + ": " + MappedFileSearcher.decode(buffer, start, end)));
+            return lines;
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Поиск без учета регистра, по одной строке на несколько вхождений
+     */
+    @Test
+    public void caseInsensitiveSearchTest() throws IOException {
+        List<String> lines = search("first Password\r\nsecond\npassword password\rPASS\n", "password", 1 << 20);
+        assertEquals(2, lines.size());
+        assertEquals("password: first Password", lines.get(0));
+        assertEquals("password: password password", lines.get(1));
+    }
+
+    /**
+     * Строки не теряются на границах окон отображения
+     */
+    @Test
+    public void windowBoundaryTest() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for(int iterator = 0; iterator < 100; iterator++) {
+            text.append("line ").append(iterator).append(iterator % 7 == 0 ? " error" : "").append('\n');
+        }
+        assertEquals(15, search(text.toString(), "ERROR", 64).size());
+    }
+
+    /**
+     * Подстрока с символами вне ISO-8859-1 не может быть найдена
+     */
+    @Test
+    public void unmappableNeedleTest() throws IOException {
+        assertTrue(search("пароль\n", "пароль", 1 << 20).isEmpty());
+    }
+
+    /**
+     * Поиск нескольких подстрок за один проход с пометкой найденной подстроки
+     */
+    @Test
+    public void multiPatternTest() throws IOException {
+        List<String> lines = search("connection Timeout\nok\nnull pointer\nhis hers\n",
+                new String[] {"timeout", "NULL", "hers", "he"}, 1 << 20);
+        assertEquals(3, lines.size());
+        assertEquals("timeout: connection Timeout", lines.get(0));
+        assertEquals("NULL: null pointer", lines.get(1));
+        //Вхождение "he" заканчивается раньше, чем "hers", поэтому строка помечается им
+        assertEquals("he: his hers", lines.get(2));
+
+        lines = search("abc abd\nxbcd\n", new String[] {"abd", "bcd", "ab"}, 1 << 20);
+        assertEquals(2, lines.size());
+        assertEquals("ab: abc abd", lines.get(0));
+        assertEquals("bcd: xbcd", lines.get(1));
+    }
+
+    private static List<String> searchRegex(String text, ByteMatcher matcher, String regex) throws IOException {
+        Path path = Files.createTempFile("searcher", ".log");
+        try {
+            Files.write(path, text.getBytes(StandardCharsets.ISO_8859_1));
+            List<String> lines = new ArrayList<>();
+            new MappedFileSearcher(matcher, new RegexLineFilter(Pattern.compile(regex)))
+                    .search(path, (buffer, start, end, pattern) ->
+                            lines.add(MappedFileSearcher.decode(buffer, start, end)));
+            return lines;
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Регулярное выражение проверяется в каждой строке, в том числе с переводом строки \r\n
+     */
+    @Test
+    public void regexSearchTest() throws IOException {
+        String text = "ERROR timeout=12345\r\nERROR timeout=12\r\n\r\nINFO timeout=99999\nerror timeout=5000";
+        List<String> lines = searchRegex(text, new EveryLineMatcher(), "ERROR.*timeout=\\d{4,}");
+        assertEquals(1, lines.size());
+        assertEquals("ERROR timeout=12345", lines.get(0));
+        assertEquals(4, searchRegex(text, new EveryLineMatcher(), "^.+$").size());
+    }
+
+    /**
+     * Строки отбираются по подстроке без учета регистра, а затем проверяются выражением
+     */
+    @Test
+    public void prefilterSearchTest() throws IOException {
+        String text = "ERROR timeout=12345\nERROR timeout=12\nINFO timeout=99999\nerror timeout=5000\n";
+        List<String> lines = searchRegex(text, new HorspoolMatcher("ERROR"), "(?i)error.*timeout=\\d{4,}");
+        assertEquals(2, lines.size());
+        assertEquals("error timeout=5000", lines.get(1));
+    }
+
+    /**
+     * Границы интервала времени находятся двоичным поиском,
+     * строки без отметки времени относятся к предыдущей строке
+     */
+    @Test
+    public void timeWindowRangeTest() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for(int minute = 0; minute < 60; minute++) {
+            text.append(String.format("2024-01-01 10:%02d:00 INFO line %d%n", minute, minute));
+            text.append("    at stack.trace\n");
+        }
+        Path path = Files.createTempFile("searcher", ".log");
+        try (FileChannel channel = openWritten(path, text.toString())) {
+            TimeWindow window = new TimeWindow(TimeWindow.DEFAULT_FORMAT,
+                    "2024-01-01 10:20:00", "2024-01-01 10:29:00");
+            long[] range = window.range(channel, 0, channel.size());
+            String found = text.substring((int) range[0], (int) range[1]);
+            assertTrue(found.startsWith("2024-01-01 10:20:00"));
+            assertTrue(found.trim().endsWith("at stack.trace"));
+            assertTrue(found.contains("10:29:00"));
+            assertFalse(found.contains("10:30:00"));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Строки контекста до и после найденных строк, объединение пересекающихся окон
+     * и разделитель между группами; строки перед найденной берутся и из предыдущего окна
+     */
+    @Test
+    public void contextSearchTest() throws IOException {
+        String text = "a\nb\nERROR 1\nc\nd\ne\nf\ng\nERROR 2\nh\nERROR 3\ni\nj\n";
+        Path path = Files.createTempFile("searcher", ".log");
+        try {
+            Files.write(path, text.getBytes(StandardCharsets.ISO_8859_1));
+            List<String> lines = new ArrayList<>();
+            new MappedFileSearcher(new HorspoolMatcher("error"), null, 2, 1, 16)
+                    .search(path, new LineHandler() {
+                        @Override
+                        public void onLine(ByteBuffer buffer, int start, int end, int pattern) {
+                            lines.add(":" + MappedFileSearcher.decode(buffer, start, end));
+                        }
+
+                        @Override
+                        public void onContext(ByteBuffer buffer, int start, int end) {
+                            lines.add("-" + MappedFileSearcher.decode(buffer, start, end));
+                        }
+
+                        @Override
+                        public void onBreak() {
+                            lines.add("--");
+                        }
+                    });
+            assertEquals(Arrays.asList("--", "-a", "-b", ":ERROR 1", "-c",
+                    "--", "-f", "-g", ":ERROR 2", "-h", ":ERROR 3", "-i"), lines);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Досрочное окончание просмотра: после последней нужной строки выводится только ее контекст
+     */
+    @Test
+    public void earlyStopTest() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for(int iterator = 0; iterator < 100; iterator++) {
+            text.append("line ").append(iterator).append(iterator % 7 == 0 ? " error" : "").append('\n');
+        }
+        Path path = Files.createTempFile("searcher", ".log");
+        try {
+            Files.write(path, text.toString().getBytes(StandardCharsets.ISO_8859_1));
+            List<String> lines = new ArrayList<>();
+            new MappedFileSearcher(new HorspoolMatcher("error"), null, 0, 1, 64)
+                    .search(path, new LineHandler() {
+                        @Override
+                        public void onLine(ByteBuffer buffer, int start, int end, int pattern) {
+                            lines.add(":" + MappedFileSearcher.decode(buffer, start, end));
+                        }
+
+                        @Override
+                        public void onContext(ByteBuffer buffer, int start, int end) {
+                            lines.add("-" + MappedFileSearcher.decode(buffer, start, end));
+                        }
+
+                        @Override
+                        public boolean isDone() {
+                            return lines.stream().filter(line -> line.startsWith(":")).count() >= 3;
+                        }
+                    });
+            assertEquals(Arrays.asList(":line 0 error", "-line 1", ":line 7 error", "-line 8",
+                    ":line 14 error", "-line 15"), lines);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static FileChannel openWritten(Path path, String text) throws IOException {
+        Files.write(path, text.getBytes(StandardCharsets.ISO_8859_1));
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+}
@@ -0,0 +1,166 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.output.ResultBuffer;
+import ts.tsc.logScanner.output.ResultWriter;
+import ts.tsc.logScanner.output.SortedOutput;
+import ts.tsc.logScanner.output.WorkerSegment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ResultBufferJunit4 extends Assert {
+
+    private static void delete(Path root) throws IOException {
+        try(Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Строки с символами вне ASCII, чтобы длина в байтах отличалась от длины в символах
+     */
+    private static List<String> lines(String prefix, int count) {
+        List<String> lines = new ArrayList<>();
+        for(int line = 0; line < count; line++) {
+            lines.add(prefix + " строка " + line + " é");
+        }
+        return lines;
+    }
+
+    private static byte[] encode(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for(String line : lines) {
+            text.append(line).append(System.lineSeparator());
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Передача буфера потоку записи и чтение выходного файла
+     */
+    private static byte[] submit(ResultBuffer buffer, Path output) throws IOException {
+        ResultWriter writer = new ResultWriter(output);
+        writer.start();
+        buffer.submitTo(writer);
+        writer.close();
+        return Files.readAllBytes(output);
+    }
+
+    /**
+     * @return количество временных сегментов в директории
+     */
+    private static long segments(Path directory) throws IOException {
+        try(Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().startsWith(".logscanner-")).count();
+        }
+    }
+
+    /**
+     * После превышения размера часть строк находится в сегменте, часть - в памяти;
+     * выходной файл содержит все строки в порядке добавления
+     */
+    @Test
+    public void overflowTest() throws IOException {
+        Path directory = Files.createTempDirectory("buffer");
+        try {
+            ResultBuffer buffer = new ResultBuffer(40, directory);
+            List<String> expected = lines("file", 7);
+            for(String line : expected) {
+                buffer.add(line);
+            }
+            assertEquals(1, segments(directory));
+            assertArrayEquals(encode(expected), submit(buffer, directory.resolve("out.txt")));
+            assertTrue(buffer.isEmpty());
+            assertEquals(0, segments(directory));
+
+            //Буфер используется повторно для следующего файла: строки только в памяти
+            List<String> next = lines("next", 1);
+            buffer.add(next.get(0));
+            assertArrayEquals(encode(next), submit(buffer, directory.resolve("next.txt")));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Перенос буфера со сброшенными строками в буфер, строки которого только в памяти,
+     * и в буфер с собственным сегментом
+     */
+    @Test
+    public void addAllTest() throws IOException {
+        Path directory = Files.createTempDirectory("buffer");
+        try {
+            ResultBuffer target = new ResultBuffer(1000, directory);
+            ResultBuffer chunk = new ResultBuffer(40, directory);
+            List<String> expected = lines("first", 2);
+            for(String line : expected) {
+                target.add(line);
+            }
+            for(String line : lines("chunk", 9)) {
+                chunk.add(line);
+                expected.add(line);
+            }
+            target.addAll(chunk);
+            assertTrue(chunk.isEmpty());
+            assertEquals(1, segments(directory));
+
+            ResultBuffer spilled = new ResultBuffer(40, directory);
+            for(String line : lines("last", 5)) {
+                spilled.add(line);
+                expected.add(line);
+            }
+            target.addAll(spilled);
+            assertTrue(spilled.isEmpty());
+            assertEquals(1, segments(directory));
+
+            assertArrayEquals(encode(expected), submit(target, directory.resolve("out.txt")));
+            assertEquals(0, segments(directory));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Серии упорядоченного вывода из буфера со сброшенными строками и из буфера в памяти
+     * копируются в выходной файл без изменений в порядке путей
+     */
+    @Test
+    public void writeRunTest() throws IOException {
+        Path directory = Files.createTempDirectory("buffer");
+        try {
+            SortedOutput sorted = new SortedOutput(directory);
+            WorkerSegment first = sorted.newWorker();
+            WorkerSegment second = sorted.newWorker();
+
+            ResultBuffer spilled = new ResultBuffer(40, directory);
+            List<String> spilledLines = lines("b", 8);
+            for(String line : spilledLines) {
+                spilled.add(line);
+            }
+            ResultBuffer memory = new ResultBuffer(1000, directory);
+            List<String> memoryLines = lines("a", 3);
+            for(String line : memoryLines) {
+                memory.add(line);
+            }
+            first.write(new String[] {"d", "b.log"}, spilled);
+            second.write(new String[] {"d", "a.log"}, memory);
+            assertTrue(spilled.isEmpty());
+            assertTrue(memory.isEmpty());
+
+            Path output = directory.resolve("out.txt");
+            List<String> expected = new ArrayList<>(memoryLines);
+            expected.addAll(spilledLines);
+            assertEquals(encode(expected).length, sorted.merge(output));
+            assertArrayEquals(encode(expected), Files.readAllBytes(output));
+            assertEquals(0, segments(directory));
+        } finally {
+            delete(directory);
+        }
+    }
+}
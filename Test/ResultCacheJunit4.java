@@ -0,0 +1,244 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.api.LogScanner;
+import ts.tsc.logScanner.api.Query;
+import ts.tsc.logScanner.cache.ResultCache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ResultCacheJunit4 extends Assert {
+
+    private static final String QUERY = "LITERAL;error;log;0;0;;0;false";
+
+    /**
+     * Атрибуты файла без обращения к файловой системе
+     */
+    private static class Attributes implements BasicFileAttributes {
+        private final long size;
+        private final long lastModified;
+        private final Object fileKey;
+
+        Attributes(long size, long lastModified, Object fileKey) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return FileTime.fromMillis(lastModified);
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return FileTime.fromMillis(lastModified);
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return FileTime.fromMillis(0);
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return true;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return fileKey;
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        try(Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static ResultCache.FileResult result(String... lines) {
+        return new ResultCache.FileResult(lines.length, Arrays.asList(lines));
+    }
+
+    private static long linesFiles(Path directory) throws IOException {
+        try(Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(".lines")).count();
+        }
+    }
+
+    /**
+     * Запись не используется, если изменился размер, время изменения или идентификатор файла
+     */
+    @Test
+    public void invalidationTest() throws Exception {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            Path file = Paths.get("logs", "app.log");
+            Attributes attrs = new Attributes(100, 1000, "inode-1");
+            ResultCache cache = new ResultCache(directory, QUERY, 1024 * 1024);
+            cache.load();
+            cache.put(file, attrs, result("ERROR first"));
+            cache.save();
+
+            cache = new ResultCache(directory, QUERY, 1024 * 1024);
+            cache.load();
+            assertEquals(Collections.singletonList("ERROR first"), cache.get(file, attrs).getLines());
+            assertNull(cache.get(file, new Attributes(101, 1000, "inode-1")));
+            assertNull(cache.get(file, new Attributes(100, 1001, "inode-1")));
+            assertNull(cache.get(file, new Attributes(100, 1000, "inode-2")));
+            assertEquals(1, cache.getHits());
+            assertEquals(3, cache.getMisses());
+
+            //Записи другого запроса не используются
+            ResultCache other = new ResultCache(directory, QUERY + "x", 1024 * 1024);
+            other.load();
+            assertNull(other.get(file, attrs));
+
+            //Новое состояние файла заменяет прежнюю запись, строки прежнего состояния удаляются
+            Attributes changed = new Attributes(200, 2000, "inode-1");
+            cache.put(file, changed, result("ERROR second"));
+            cache.save();
+            cache = new ResultCache(directory, QUERY, 1024 * 1024);
+            cache.load();
+            assertNull(cache.get(file, attrs));
+            assertEquals(Collections.singletonList("ERROR second"), cache.get(file, changed).getLines());
+            assertEquals(1, linesFiles(directory));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * При превышении размера кэша удаляются записи, которые дольше всего не использовались
+     */
+    @Test
+    public void trimTest() throws Exception {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            char[] fill = new char[1000];
+            Arrays.fill(fill, 'x');
+            String line = "ERROR " + new String(fill);
+            //Помещаются строки двух файлов, но не трех
+            long capacity = 2 * (line.length() + 200) + 500;
+            Attributes attrs = new Attributes(100, 1000, "inode");
+
+            ResultCache cache = new ResultCache(directory, QUERY, capacity);
+            cache.load();
+            for(String name : new String[] {"a.log", "b.log", "c.log"}) {
+                cache.put(Paths.get(name), attrs, result(line));
+                Thread.sleep(5);
+            }
+            cache.save();
+
+            cache = new ResultCache(directory, QUERY, capacity);
+            cache.load();
+            assertNull(cache.get(Paths.get("a.log"), attrs));
+            Thread.sleep(5);
+            assertNotNull(cache.get(Paths.get("b.log"), attrs));
+            Thread.sleep(5);
+            cache.put(Paths.get("d.log"), attrs, result(line));
+            cache.save();
+
+            //c.log использовалась раньше, чем b.log и d.log
+            cache = new ResultCache(directory, QUERY, capacity);
+            cache.load();
+            assertNotNull(cache.get(Paths.get("b.log"), attrs));
+            assertNull(cache.get(Paths.get("c.log"), attrs));
+            assertNotNull(cache.get(Paths.get("d.log"), attrs));
+            assertEquals(2, linesFiles(directory));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Поиск с упорядоченным выводом и контекстом
+     */
+    private static List<String> scan(LogScanner scanner, Path root, String... options) {
+        List<String> lines = new ArrayList<>();
+        Query query = new Query("error", root.toString(), "log");
+        query.setThreads(3);
+        query.setOutputPath(root.resolve("out.txt").toString());
+        query.setListener(lines::addAll);
+        assertTrue(query.set("order", "path"));
+        assertTrue(query.set("context", "1"));
+        for(String option : options) {
+            String[] pair = option.split("=", 2);
+            assertTrue(option, query.set(pair[0], pair[1]));
+        }
+        scanner.submit(query).getResult().join();
+        return lines;
+    }
+
+    /**
+     * Строки, полученные из кэша, совпадают с результатом поиска без кэша
+     */
+    @Test
+    public void replayTest() throws Exception {
+        Path root = Files.createTempDirectory("cache");
+        try(LogScanner scanner = new LogScanner()) {
+            for(int directory = 0; directory < 3; directory++) {
+                Path path = Files.createDirectory(root.resolve("d" + directory));
+                for(int file = 0; file < 5; file++) {
+                    StringBuilder text = new StringBuilder();
+                    for(int line = 0; line < 50; line++) {
+                        text.append(line % (file + 7) == 0 ? "Error in " : "line of ").append(path.getFileName())
+                                .append('/').append(file).append(' ').append(line).append('\n');
+                    }
+                    Files.write(path.resolve("f" + file + ".log"), text.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                Files.write(path.resolve("empty.log"), "nothing here\n".getBytes(StandardCharsets.UTF_8));
+            }
+
+            List<String> plain = scan(scanner, root);
+            assertFalse(plain.isEmpty());
+            assertEquals(plain, scan(scanner, root, "cache=on"));
+            assertTrue(Files.exists(root.resolve("out.txt.cache").resolve("entries")));
+            assertEquals(plain, scan(scanner, root, "cache=on"));
+
+            //Файл с тем же размером, временем изменения и идентификатором повторно не открывается
+            Path file = root.resolve("d1").resolve("f2.log");
+            FileTime modified = Files.getLastModifiedTime(file);
+            byte[] text = Files.readAllBytes(file);
+            Files.write(file, new String(text, StandardCharsets.UTF_8).replace("Error", "Fixed")
+                    .getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, modified);
+            assertEquals(plain, scan(scanner, root, "cache=on"));
+            assertNotEquals(plain, scan(scanner, root));
+        } finally {
+            delete(root);
+        }
+    }
+}
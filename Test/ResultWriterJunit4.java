@@ -0,0 +1,34 @@
+import org.junit.Assert;
+import org.junit.Test;
+import ts.tsc.logScanner.output.ResultWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class ResultWriterJunit4 extends Assert {
+
+    /**
+     * Ошибочный символ заменяется, остаток строки и следующие строки записываются
+     */
+    @Test
+    public void malformedCharacterTest() throws IOException {
+        Path path = Files.createTempFile("writer", ".txt");
+        try {
+            Files.delete(path);
+            ResultWriter writer = new ResultWriter(path);
+            writer.start();
+            writer.submit(Arrays.asList("first \uD800 line", "second line"));
+            writer.close();
+
+            assertTrue(writer.isWritten());
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            assertEquals(Arrays.asList("first ? line", "second line"), lines);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ts.tsc.logScanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.InputOptions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный поиск по дереву директорий: обход, поиск в файлах и запись результатов
+ * в выходной файл или передача их обработчику программного интерфейса
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int threads;
+
+    @Param({"1048576", "16777216"})
+    public long fileSize;
+
+    @Param({"0.001", "0.1"})
+    public double hitDensity;
+
+    @Param({"sequential", "parallel"})
+    public String walk;
+
+    private Path root;
+    private Path output;
+    private InputLine line;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("endToEnd");
+        LogGenerator.createTree(root.resolve("logs"), 4, 2, 4, fileSize, hitDensity, "timeout");
+        output = root.resolve("result.txt");
+        InputOptions options = new InputOptions();
+        options.set("walk", walk);
+        options.set("progress", "off");
+        line = new InputLine(String.valueOf(threads), "timeout", root.resolve("logs").toString(),
+                output.toString(), new String[] {"log"}, options);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        LogGenerator.deleteTree(root);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public boolean search() {
+        return SearchRunner.search(line);
+    }
+
+    /**
+     * Встраивание в другую программу: строки передаются обработчику без записи в файл
+     */
+    @Benchmark
+    public boolean searchToListener(Blackhole blackhole) {
+        return SearchRunner.search(line, blackhole::consume);
+    }
+}
@@ -0,0 +1,63 @@
+package ts.tsc.logScanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ts.tsc.logScanner.inputLine.inputParser.InputParser;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фильтрация файлов по расширению при обходе директории
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtensionBenchmark {
+
+    private static final String[] NAMES = {"app.log", "app.log.1.gz", "trace.txt", "image.png",
+            "archive.zip", "data.bin", "server.out", "error.err", "app.log.20240101", "notes.md"};
+
+    @Param({"1", "4", "16"})
+    public int extensionCount;
+
+    private String[] extensions;
+    private Path[] paths;
+
+    @Setup
+    public void setUp() {
+        extensions = new String[extensionCount];
+        String[] known = {"log", "txt", "out", "err"};
+        for(int index = 0; index < extensionCount; index++) {
+            extensions[index] = index < known.length ? known[index] : "ext" + index;
+        }
+        paths = new Path[NAMES.length * 10];
+        for(int index = 0; index < paths.length; index++) {
+            paths[index] = Paths.get("logs", "node" + index % 7, "service" + index, NAMES[index % NAMES.length]);
+        }
+    }
+
+    @Benchmark
+    public int isRightExtension() {
+        int count = 0;
+        for(Path path : paths) {
+            if(InputParser.isRightExtension(path, extensions)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
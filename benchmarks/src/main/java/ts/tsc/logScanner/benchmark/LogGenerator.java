@@ -0,0 +1,114 @@
+package ts.tsc.logScanner.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * Генерация синтетических логов для бенчмарков
+ */
+final class LogGenerator {
+
+    private static final byte[] WORDS = ("INFO request processed user session cache "
+            + "db query ok started finished handler worker pool ").getBytes(StandardCharsets.ISO_8859_1);
+
+    private LogGenerator() {
+    }
+
+    /**
+     * Создание файла лога
+     * @param file путь к файлу
+     * @param size примерный размер файла в байтах
+     * @param lineLength средняя длина строки
+     * @param hitDensity доля строк, содержащих подстроку needle
+     * @param needle подстрока, которую будет искать бенчмарк
+     * @param seed начальное значение генератора случайных чисел
+     * @throws IOException ошибка записи файла
+     */
+    static void writeLog(Path file, long size, int lineLength, double hitDensity,
+                         String needle, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] hit = (" " + needle + " ").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] line = new byte[Math.max(lineLength * 2, hit.length + 2)];
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            long written = 0;
+            while (written < size) {
+                //Длина строки случайно отклоняется от средней в пределах половины
+                int length = Math.max(hit.length + 1, lineLength / 2 + random.nextInt(lineLength + 1));
+                for(int index = 0; index < length - 1; index++) {
+                    line[index] = WORDS[random.nextInt(WORDS.length)];
+                }
+                if(random.nextDouble() < hitDensity) {
+                    int position = random.nextInt(length - hit.length);
+                    System.arraycopy(hit, 0, line, position, hit.length);
+                }
+                line[length - 1] = '\n';
+                output.write(line, 0, length);
+                written += length;
+            }
+        }
+    }
+
+    /**
+     * Создание дерева директорий с логами
+     * @param root корневая директория
+     * @param fanOut количество поддиректорий в каждой директории
+     * @param depth глубина дерева
+     * @param filesPerDirectory количество файлов в каждой директории
+     * @param fileSize размер каждого файла
+     * @param hitDensity доля строк, содержащих подстроку needle
+     * @param needle подстрока, которую будет искать бенчмарк
+     * @return количество созданных файлов
+     * @throws IOException ошибка записи файлов
+     */
+    static int createTree(Path root, int fanOut, int depth, int filesPerDirectory, long fileSize,
+                          double hitDensity, String needle) throws IOException {
+        Files.createDirectories(root);
+        int count = 0;
+        for(int file = 0; file < filesPerDirectory; file++) {
+            writeLog(root.resolve("app" + file + ".log"), fileSize, 120, hitDensity, needle,
+                    root.hashCode() * 31L + file);
+            //Файлы с другим расширением проверяют фильтрацию при обходе
+            Files.write(root.resolve("app" + file + ".bin"), new byte[16]);
+            count++;
+        }
+        if(depth > 0) {
+            for(int directory = 0; directory < fanOut; directory++) {
+                count += createTree(root.resolve("dir" + directory), fanOut, depth - 1,
+                        filesPerDirectory, fileSize, hitDensity, needle);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Удаление дерева директорий
+     * @param root корневая директория
+     * @throws IOException ошибка удаления
+     */
+    static void deleteTree(Path root) throws IOException {
+        if(!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package ts.tsc.logScanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ts.tsc.logScanner.dispatch.FileQueue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Передача путей через очередь файлов между потоками.
+ * Каждый поток добавляет путь и сразу извлекает путь из общей очереди, поэтому
+ * потоки никогда не ждут друг друга бесконечно, а измеряется именно конкуренция за очередь
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueueBenchmark {
+
+    private static final Path PATH = Paths.get("logs", "app.log");
+
+    private final FileQueue queue = new FileQueue(4096);
+
+    @Benchmark
+    @Threads(1)
+    public Path handoffSingleThread() throws InterruptedException {
+        queue.put(PATH);
+        return queue.take();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Path handoffEightThreads() throws InterruptedException {
+        queue.put(PATH);
+        return queue.take();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Path handoffAllCores() throws InterruptedException {
+        queue.put(PATH);
+        return queue.take();
+    }
+}
@@ -0,0 +1,43 @@
+package ts.tsc.logScanner.benchmark;
+
+import ts.tsc.logScanner.dispatch.DispatchInterface;
+import ts.tsc.logScanner.dispatch.FileQueue;
+
+import java.nio.file.Path;
+
+/**
+ * Очередь файлов без состояния запроса: для измерения обхода директории отдельно от поиска
+ */
+class QueueDispatch implements DispatchInterface {
+
+    private final FileQueue queue;
+
+    QueueDispatch(int capacity) {
+        this.queue = new FileQueue(capacity);
+    }
+
+    @Override
+    public Path popListElement() {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @Override
+    public void addListElement(Path path) throws InterruptedException {
+        queue.put(path);
+    }
+
+    @Override
+    public boolean isSearchFinished() {
+        return queue.isFinished();
+    }
+
+    @Override
+    public void setDirEndTrue() {
+        queue.close();
+    }
+}
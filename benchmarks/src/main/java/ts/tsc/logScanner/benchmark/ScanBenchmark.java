@@ -0,0 +1,101 @@
+package ts.tsc.logScanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ts.tsc.logScanner.fileParser.searcher.ByteMatcher;
+import ts.tsc.logScanner.fileParser.searcher.MappedFileSearcher;
+import ts.tsc.logScanner.fileParser.searcher.StreamSearcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск строк в одном файле: отображение в память и потоковое чтение
+ * при разной длине строк и доле найденных строк
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"16777216", "268435456"})
+    public long fileSize;
+
+    @Param({"80", "400"})
+    public int lineLength;
+
+    @Param({"0", "0.001", "0.1", "0.9"})
+    public double hitDensity;
+
+    @Param({"1", "8"})
+    public int patterns;
+
+    private Path file;
+    private MappedFileSearcher searcher;
+    private StreamSearcher streamSearcher;
+    private long[] counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("scan", ".log");
+        LogGenerator.writeLog(file, fileSize, lineLength, hitDensity, "timeout", 42);
+
+        String[] needles = new String[patterns];
+        needles[0] = "timeout";
+        for(int index = 1; index < patterns; index++) {
+            needles[index] = "signature" + index;
+        }
+        searcher = new MappedFileSearcher(ByteMatcher.of(needles));
+        streamSearcher = new StreamSearcher(searcher);
+        counter = new long[1];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long mappedScan() throws IOException {
+        counter[0] = 0;
+        searcher.search(file, (buffer, start, end, pattern) -> counter[0]++);
+        return counter[0];
+    }
+
+    @Benchmark
+    public long streamScan() throws IOException {
+        counter[0] = 0;
+        try (InputStream input = Files.newInputStream(file)) {
+            streamSearcher.search(input, (buffer, start, end, pattern) -> counter[0]++);
+        }
+        return counter[0];
+    }
+
+    /**
+     * Поиск с созданием строк для найденных вхождений, как при записи результатов
+     */
+    @Benchmark
+    public long mappedScanDecode() throws IOException {
+        counter[0] = 0;
+        searcher.search(file, (buffer, start, end, pattern) ->
+                counter[0] += MappedFileSearcher.decode(buffer, start, end).length());
+        return counter[0];
+    }
+}
@@ -0,0 +1,35 @@
+package ts.tsc.logScanner.benchmark;
+
+import ts.tsc.logScanner.api.LogScanner;
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.output.ResultListener;
+
+/**
+ * Полный поиск без ввода с клавиатуры: запрос выполняется через программный интерфейс
+ * в общем пуле потоков, как в {@link ts.tsc.logScanner.console.Console}
+ */
+final class SearchRunner {
+
+    //Пул используется всеми измерениями, как всеми запросами в консоли
+    private static final LogScanner SCANNER = new LogScanner();
+
+    private SearchRunner() {
+    }
+
+    /**
+     * @param line параметры поиска
+     * @return true - если была найдена хотя бы одна строка
+     */
+    static boolean search(InputLine line) {
+        return search(line, null);
+    }
+
+    /**
+     * @param line параметры поиска
+     * @param listener обработчик найденных строк; null - строки записываются в выходной файл
+     * @return true - если была найдена хотя бы одна строка
+     */
+    static boolean search(InputLine line, ResultListener listener) {
+        return SCANNER.submit(line, listener).getResult().join();
+    }
+}
@@ -0,0 +1,74 @@
+package ts.tsc.logScanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ts.tsc.logScanner.directory.CheckDirectory;
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.InputOptions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обход дерева директорий: последовательный и параллельный
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({"4", "16"})
+    public int fanOut;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"sequential", "parallel"})
+    public String walk;
+
+    private Path root;
+    private InputLine line;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("traversal");
+        LogGenerator.createTree(root, fanOut, depth, 4, 0, 0, "timeout");
+        InputOptions options = new InputOptions();
+        options.set("walk", walk);
+        line = new InputLine("1", "timeout", root.toString(),
+                root.resolve("out.txt").toString(), new String[] {"log"}, options);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        LogGenerator.deleteTree(root);
+    }
+
+    @Benchmark
+    public int traverse() {
+        QueueDispatch queue = new QueueDispatch(4096);
+        Thread walker = new Thread(new CheckDirectory(queue, line));
+        walker.start();
+        int count = 0;
+        while (queue.popListElement() != null) {
+            count++;
+        }
+        return count;
+    }
+}
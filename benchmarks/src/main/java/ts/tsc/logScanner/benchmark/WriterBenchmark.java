@@ -0,0 +1,79 @@
+package ts.tsc.logScanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ts.tsc.logScanner.output.ResultWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись найденных строк в выходной файл через поток записи
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriterBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int batchSize;
+
+    @Param({"120", "1000"})
+    public int lineLength;
+
+    private static final int TOTAL_LINES = 200000;
+
+    private Path output;
+    private List<String> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder line = new StringBuilder("[1] .\\service - app.log: ");
+        while (line.length() < lineLength) {
+            line.append("request timeout ");
+        }
+        batch = new ArrayList<>();
+        for(int index = 0; index < batchSize; index++) {
+            batch.add(line.toString());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createOutput() throws IOException {
+        output = Files.createTempFile("writer", ".txt");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public boolean writeResults() {
+        ResultWriter writer = new ResultWriter(output);
+        writer.start();
+        for(int written = 0; written < TOTAL_LINES; written += batchSize) {
+            writer.submit(batch);
+        }
+        writer.close();
+        return writer.isWritten();
+    }
+}
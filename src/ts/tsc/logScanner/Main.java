@@ -1,11 +1,61 @@
 package ts.tsc.logScanner;
 
+import ts.tsc.logScanner.api.HttpService;
+import ts.tsc.logScanner.api.LogScanner;
 import ts.tsc.logScanner.console.Console;
 import ts.tsc.logScanner.console.ConsoleInterface;
+import ts.tsc.logScanner.distributed.ScanWorker;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 
 class Main {
     public static void main(String[] args) {
+        //Запуск узла распределенного поиска: worker [адрес:]порт корень
+        if(args.length == 3 && args[0].equals("worker")) {
+            startWorker(args[1], args[2]);
+            return;
+        }
+        //Запуск HTTP-сервиса поиска: http порт
+        if(args.length == 2 && args[0].equals("http")) {
+            try {
+                new HttpService(new LogScanner(), Integer.parseInt(args[1])).start();
+                System.out.println("> HTTP-сервис поиска запущен: http://localhost:" + args[1] + "/search");
+            } catch (NumberFormatException e) {
+                System.out.println("> Неверный номер порта: " + args[1]);
+            } catch (IOException e) {
+                System.out.println("> Не удалось запустить HTTP-сервис на порту " + args[1] + ": " + e.getMessage());
+            }
+            return;
+        }
         ConsoleInterface console = new Console();
         console.main();
     }
+
+    /**
+     * Запуск узла распределенного поиска
+     * @param address адрес и порт для подключений координатора; без адреса - только локальные подключения
+     * @param root корень директорий, в которых узел выполняет поиск
+     */
+    private static void startWorker(String address, String root) {
+        String token = ScanWorker.configuredToken();
+        if(token == null) {
+            System.out.println("> Не задан общий ключ узлов: переменная окружения LOGSCANNER_TOKEN "
+                    + "или системное свойство logscanner.token");
+            return;
+        }
+        int delimiter = address.lastIndexOf(':');
+        try {
+            InetAddress host = delimiter < 0 ? InetAddress.getLoopbackAddress()
+                    : InetAddress.getByName(address.substring(0, delimiter));
+            int port = Integer.parseInt(address.substring(delimiter + 1));
+            new ScanWorker(host, port, Paths.get(root), token).run();
+        } catch (NumberFormatException e) {
+            System.out.println("> Неверный номер порта: " + address);
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("> Не удалось запустить узел на " + address + " с корнем " + root + ": " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package ts.tsc.logScanner.aggregate;
+
+import ts.tsc.logScanner.inputLine.InputOptions;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Подсчет найденных строк одного запроса вместо их вывода (параметр count).
+ *
+ * Каждый поток поиска ведет свои счетчики {@link WorkerCounts}, после окончания поиска
+ * они объединяются, и в выходной файл записывается только итоговая таблица.
+ * Память зависит от количества групп, а не от количества найденных строк
+ */
+public class Aggregation {
+
+    public static final long NO_TIME = Long.MIN_VALUE;     //Ключ строк без отметки времени
+    private static final long HOUR_MS = 60L * 60 * 1000;
+    private static final String SEPARATOR = "\t";
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final InputOptions.Aggregate group;
+    private final List<WorkerCounts> workers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param group группировка найденных строк
+     */
+    public Aggregation(InputOptions.Aggregate group) {
+        this.group = group;
+    }
+
+    public InputOptions.Aggregate getGroup() {
+        return group;
+    }
+
+    /**
+     * Создание счетчиков потока поиска
+     * @return счетчики, которые должен изменять только этот поток
+     */
+    public WorkerCounts newWorker() {
+        WorkerCounts worker = new WorkerCounts();
+        workers.add(worker);
+        return worker;
+    }
+
+    /**
+     * @param millis время строки, мс; Long.MIN_VALUE - строка без отметки времени
+     * @return ключ часа для счетчиков по часам (час местного времени)
+     */
+    public static long hourOf(long millis) {
+        return hourOf(millis, ZoneId.systemDefault());
+    }
+
+    /**
+     * Номер часа местного времени: время сдвигается на смещение часового пояса в этот момент,
+     * поэтому часы совпадают с подписями таблицы и в часовых поясах со смещением не на целое число часов
+     * @param millis время строки, мс; Long.MIN_VALUE - строка без отметки времени
+     * @param zone часовой пояс
+     * @return ключ часа для счетчиков по часам
+     */
+    public static long hourOf(long millis, ZoneId zone) {
+        if(millis == Long.MIN_VALUE) {
+            return NO_TIME;
+        }
+        long offset = zone.getRules().getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds() * 1000L;
+        return Math.floorDiv(millis + offset, HOUR_MS);
+    }
+
+    /**
+     * Объединение счетчиков всех потоков в итоговую таблицу.
+     * Файлы и поддиректории упорядочены по убыванию количества строк, часы - по времени
+     * @return строки таблицы (заголовок, группы, итог); пустой список - если ничего не найдено
+     */
+    public List<String> summary() {
+        List<Map.Entry<String, Long>> rows = new ArrayList<>();
+        long total = 0;
+        if(group == InputOptions.Aggregate.HOUR) {
+            LongCountTable hours = new LongCountTable();
+            for(WorkerCounts worker : workers) {
+                hours.addAll(worker.getHours());
+            }
+            List<long[]> sorted = new ArrayList<>(hours.size());
+            hours.forEach((key, count) -> sorted.add(new long[] {key, count}));
+            //Строки без отметки времени выводятся последними
+            sorted.sort(Comparator.comparingLong((long[] row) -> row[0] == NO_TIME ? Long.MAX_VALUE : row[0]));
+            for(long[] row : sorted) {
+                rows.add(new AbstractMap.SimpleEntry<>(formatHour(row[0]), row[1]));
+                total += row[1];
+            }
+        } else {
+            CountTable groups = new CountTable();
+            for(WorkerCounts worker : workers) {
+                groups.addAll(worker.getGroups());
+            }
+            groups.forEach((key, count) -> rows.add(new AbstractMap.SimpleEntry<>(key, count)));
+            rows.sort(Map.Entry.<String, Long>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+            for(Map.Entry<String, Long> row : rows) {
+                total += row.getValue();
+            }
+        }
+
+        List<String> lines = new ArrayList<>(rows.size() + 2);
+        if(rows.isEmpty()) {
+            return lines;
+        }
+        lines.add(header() + SEPARATOR + "Количество строк");
+        for(Map.Entry<String, Long> row : rows) {
+            lines.add(row.getKey() + SEPARATOR + row.getValue());
+        }
+        lines.add("Всего" + SEPARATOR + total);
+        return lines;
+    }
+
+    private String header() {
+        switch (group) {
+            case FILE:
+                return "Файл";
+            case DIRECTORY:
+                return "Поддиректория";
+            default:
+                return "Час";
+        }
+    }
+
+    private static String formatHour(long hour) {
+        if(hour == NO_TIME) {
+            return "Без отметки времени";
+        }
+        return LocalDateTime.ofEpochSecond(hour * HOUR_MS / 1000, 0, ZoneOffset.UTC).format(HOUR_FORMAT);
+    }
+}
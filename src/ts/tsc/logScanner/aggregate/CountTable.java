@@ -0,0 +1,89 @@
+package ts.tsc.logScanner.aggregate;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Счетчики по строковым ключам (файл, поддиректория).
+ *
+ * Открытая адресация с линейным пробированием: ключи и счетчики хранятся
+ * в параллельных массивах, счетчики - примитивами, без упаковки в Long
+ */
+public class CountTable {
+
+    private static final int INITIAL_CAPACITY = 64;    //Начальный размер (степень двойки)
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Увеличение счетчика ключа
+     * @param key ключ
+     * @param count добавляемое значение
+     */
+    public void add(String key, long count) {
+        int mask = keys.length - 1;
+        int slot = mix(key.hashCode()) & mask;
+        while (keys[slot] != null) {
+            if(keys[slot].equals(key)) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        counts[slot] = count;
+        //Заполнение не больше половины, чтобы цепочки пробирования оставались короткими
+        if(++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Добавление всех счетчиков другой таблицы
+     */
+    public void addAll(CountTable other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * Обход всех ключей и их счетчиков
+     */
+    public void forEach(ObjLongConsumer<String> consumer) {
+        for(int slot = 0; slot < keys.length; slot++) {
+            if(keys[slot] != null) {
+                consumer.accept(keys[slot], counts[slot]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new String[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for(int old = 0; old < oldKeys.length; old++) {
+            if(oldKeys[old] != null) {
+                int slot = mix(oldKeys[old].hashCode()) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[old];
+                counts[slot] = oldCounts[old];
+            }
+        }
+    }
+
+    /**
+     * Перемешивание битов хеша: младшие биты String.hashCode() для похожих путей мало различаются
+     */
+    static int mix(int hash) {
+        int value = hash * 0x9E3779B9;
+        return value ^ (value >>> 16);
+    }
+}
@@ -0,0 +1,99 @@
+package ts.tsc.logScanner.aggregate;
+
+/**
+ * Счетчики по числовым ключам (номер часа).
+ *
+ * Открытая адресация с линейным пробированием по примитивным массивам: ни ключи, ни счетчики
+ * не упаковываются в объекты. Любое значение long может быть ключом, поэтому занятые
+ * ячейки отмечаются отдельным массивом
+ */
+public class LongCountTable {
+
+    private static final int INITIAL_CAPACITY = 64;    //Начальный размер (степень двойки)
+
+    /**
+     * Получатель пар ключ-счетчик при обходе таблицы
+     */
+    public interface Consumer {
+        void accept(long key, long count);
+    }
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Увеличение счетчика ключа
+     * @param key ключ
+     * @param count добавляемое значение
+     */
+    public void add(long key, long count) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (used[slot]) {
+            if(keys[slot] == key) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        counts[slot] = count;
+        if(++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Добавление всех счетчиков другой таблицы
+     */
+    public void addAll(LongCountTable other) {
+        for(int slot = 0; slot < other.keys.length; slot++) {
+            if(other.used[slot]) {
+                add(other.keys[slot], other.counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Обход всех ключей и их счетчиков
+     */
+    public void forEach(Consumer consumer) {
+        for(int slot = 0; slot < keys.length; slot++) {
+            if(used[slot]) {
+                consumer.accept(keys[slot], counts[slot]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        boolean[] oldUsed = used;
+        keys = new long[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for(int old = 0; old < oldKeys.length; old++) {
+            if(oldUsed[old]) {
+                int slot = mix(oldKeys[old]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[old];
+                counts[slot] = oldCounts[old];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        return CountTable.mix((int) (key ^ (key >>> 32)));
+    }
+}
@@ -0,0 +1,41 @@
+package ts.tsc.logScanner.aggregate;
+
+/**
+ * Счетчики найденных строк одного потока поиска.
+ *
+ * Изменяются только потоком-владельцем и читаются после окончания всех потоков поиска,
+ * поэтому синхронизация не нужна
+ */
+public class WorkerCounts {
+
+    private final CountTable groups = new CountTable();         //Счетчики по файлам или поддиректориям
+    private final LongCountTable hours = new LongCountTable();  //Счетчики по часам
+
+    WorkerCounts() {
+    }
+
+    /**
+     * @param key файл или поддиректория
+     * @param count количество найденных строк
+     */
+    public void add(String key, long count) {
+        if(count > 0) {
+            groups.add(key, count);
+        }
+    }
+
+    /**
+     * @param counts счетчики по номерам часов, собранные при просмотре одного файла
+     */
+    public void addHours(LongCountTable counts) {
+        hours.addAll(counts);
+    }
+
+    CountTable getGroups() {
+        return groups;
+    }
+
+    LongCountTable getHours() {
+        return hours;
+    }
+}
@@ -0,0 +1,63 @@
+package ts.tsc.logScanner.api;
+
+import ts.tsc.logScanner.dispatch.QueryInterface;
+import ts.tsc.logScanner.dispatch.SearchTask;
+import ts.tsc.logScanner.fileParser.fileParser;
+import ts.tsc.logScanner.follow.DirectoryFollower;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Наблюдение за директорией (mode=follow) как запрос: новые строки передаются потоку записи,
+ * пока запрос не будет отменен. Результат завершается после записи оставшихся строк
+ */
+class FollowQuery implements QueryInterface {
+
+    private final SearchTask task;              //Состояние запроса: поток записи и позиции просмотра
+    private final DirectoryFollower follower;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+    /**
+     * @param task запрос в режиме наблюдения
+     */
+    FollowQuery(SearchTask task) {
+        this.task = task;
+        this.follower = new DirectoryFollower(task.getInputLine(), new fileParser(task, 1), task.getCheckpoints());
+    }
+
+    /**
+     * Запуск потока записи и потока наблюдения
+     * @return результат: true - если была найдена хотя бы одна строка
+     */
+    CompletableFuture<Boolean> start() {
+        task.getWriter().start();
+        Thread thread = new Thread(() -> {
+            try {
+                follower.run();
+            } finally {
+                task.getWriter().close();
+                result.complete(task.getWriter().isWritten());
+            }
+        }, "directory-follower-" + task.getId());
+        thread.start();
+        return result;
+    }
+
+    /**
+     * Остановка наблюдения
+     */
+    @Override
+    public void cancel() {
+        follower.stop();
+    }
+
+    @Override
+    public int getId() {
+        return task.getId();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> getResult() {
+        return result;
+    }
+}
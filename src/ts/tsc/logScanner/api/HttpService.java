@@ -0,0 +1,234 @@
+package ts.tsc.logScanner.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ts.tsc.logScanner.dispatch.QueryInterface;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Локальный HTTP-сервис поиска поверх {@link LogScanner}: запросы выполняются одновременно
+ * в общем пуле потоков, найденные строки передаются в ответе по мере обнаружения.
+ *
+ * GET или POST /search?message=timeout&amp;dir=/var/log&amp;ext=log+txt&amp;threads=4&amp;match=regex...
+ * - параметры message, dir, ext (через пробел или запятую), threads и output (основа путей позиций
+ * просмотра и индекса), остальные параметры - те же, что и в консоли (ключ=значение).
+ * Номер запроса передается в заголовке X-Query-Id.
+ * Если потоков поиска недостаточно (общий предел {@link LogScanner}), запрос отклоняется с кодом 503.
+ * POST /cancel?id=3 - отмена запроса. Если клиент закрыл соединение, запрос отменяется
+ * при следующей передаче строк. Сервис принимает подключения только с этого компьютера
+ */
+public class HttpService {
+
+    private static final int STREAM_BUFFER = 64 * 1024;
+
+    private final LogScanner scanner;
+    private final HttpServer server;
+    private final ExecutorService handlers;     //Потоки обработки HTTP-запросов
+
+    /**
+     * @param scanner выполнение запросов
+     * @param port порт сервиса
+     * @throws IOException порт занят
+     */
+    public HttpService(LogScanner scanner, int port) throws IOException {
+        this.scanner = scanner;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.handlers = Executors.newCachedThreadPool();
+        server.createContext("/search", this::search);
+        server.createContext("/cancel", this::cancel);
+        server.setExecutor(handlers);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Остановка сервиса; выполняющиеся запросы не отменяются
+     */
+    public void stop() {
+        server.stop(0);
+        handlers.shutdown();
+    }
+
+    /**
+     * Запуск запроса и передача найденных строк в ответе
+     */
+    private void search(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> parameters = parameters(exchange);
+            Query query;
+            try {
+                query = query(parameters);
+            } catch (IllegalArgumentException e) {
+                reply(exchange, 400, e.getMessage());
+                return;
+            }
+
+            //Строки передаются только после отправки заголовков ответа
+            CountDownLatch headersSent = new CountDownLatch(1);
+            AtomicReference<QueryInterface> running = new AtomicReference<>();
+            Writer body = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                    StandardCharsets.UTF_8), STREAM_BUFFER);
+            query.setListener(lines -> {
+                try {
+                    headersSent.await();
+                    for(String line : lines) {
+                        body.write(line);
+                        body.write('\n');
+                    }
+                    body.flush();
+                } catch (IOException e) {
+                    //Клиент закрыл соединение - результат больше не нужен
+                    running.get().cancel();
+                    throw new UncheckedIOException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            QueryInterface task;
+            try {
+                task = scanner.submit(query);
+            } catch (IllegalArgumentException e) {
+                reply(exchange, 400, e.getMessage());
+                return;
+            } catch (IllegalStateException e) {
+                //Все потоки поиска заняты - клиент может повторить запрос позже
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                reply(exchange, 503, e.getMessage());
+                return;
+            }
+            running.set(task);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.getResponseHeaders().set("X-Query-Id", String.valueOf(task.getId()));
+            try {
+                exchange.sendResponseHeaders(200, 0);
+            } finally {
+                headersSent.countDown();
+            }
+            task.getResult().join();
+            body.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Отмена запроса по номеру
+     */
+    private void cancel(HttpExchange exchange) throws IOException {
+        try {
+            QueryInterface task = null;
+            try {
+                task = scanner.get(Integer.parseInt(parameters(exchange).getOrDefault("id", "").trim()));
+            } catch (NumberFormatException e) {
+                //Номер запроса задан неверно
+            }
+            if(task == null) {
+                reply(exchange, 404, "Запрос не выполняется");
+                return;
+            }
+            task.cancel();
+            reply(exchange, 200, "Запрос " + task.getId() + " отменен");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Параметры запроса из строки адреса и тела POST-запроса (application/x-www-form-urlencoded)
+     */
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        decode(exchange.getRequestURI().getRawQuery(), parameters);
+        if(exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+            try (InputStream in = exchange.getRequestBody()) {
+                StringBuilder form = new StringBuilder();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    form.append(new String(buffer, 0, read, StandardCharsets.ISO_8859_1));
+                }
+                decode(form.toString(), parameters);
+            }
+        }
+        return parameters;
+    }
+
+    private static void decode(String raw, Map<String, String> parameters) throws UnsupportedEncodingException {
+        if(raw == null || raw.isEmpty()) {
+            return;
+        }
+        for(String pair : raw.split("&")) {
+            int delimiter = pair.indexOf('=');
+            if(delimiter < 1) {
+                continue;
+            }
+            parameters.put(URLDecoder.decode(pair.substring(0, delimiter), "UTF-8"),
+                    URLDecoder.decode(pair.substring(delimiter + 1), "UTF-8"));
+        }
+    }
+
+    /**
+     * @param parameters параметры HTTP-запроса
+     * @return параметры запроса поиска
+     * @throws IllegalArgumentException не указан обязательный параметр или задан неизвестный параметр
+     */
+    private static Query query(Map<String, String> parameters) {
+        Map<String, String> options = new LinkedHashMap<>(parameters);
+        String message = options.remove("message");
+        String dir = options.remove("dir");
+        String ext = options.remove("ext");
+        String threads = options.remove("threads");
+        String output = options.remove("output");
+        if(message == null || dir == null || ext == null) {
+            throw new IllegalArgumentException("Обязательные параметры: message, dir, ext");
+        }
+        Query query = new Query(message, dir, ext.trim().split("[\\s,]+"));
+        if(threads != null) {
+            try {
+                query.setThreads(Integer.parseInt(threads.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Указан неверный формат для количества потоков");
+            }
+        }
+        if(output != null) {
+            query.setOutputPath(output);
+        }
+        for(Map.Entry<String, String> option : options.entrySet()) {
+            if(!query.set(option.getKey(), option.getValue())) {
+                throw new IllegalArgumentException("Неизвестный параметр или неверное значение: "
+                        + option.getKey() + "=" + option.getValue());
+            }
+        }
+        return query;
+    }
+
+    private static void reply(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package ts.tsc.logScanner.api;
+
+import ts.tsc.logScanner.dispatch.QueryInterface;
+import ts.tsc.logScanner.dispatch.SearchTask;
+import ts.tsc.logScanner.dispatch.WorkerPool;
+import ts.tsc.logScanner.distributed.DistributedSearch;
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.InputOptions;
+import ts.tsc.logScanner.output.ResultListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Программный интерфейс поиска для встраивания в другие программы без консоли.
+ *
+ * Запросы выполняются в фоне в общем {@link WorkerPool}, одновременно может выполняться
+ * несколько запросов. Для каждого запроса возвращается {@link QueryInterface}:
+ * номер, отмена и результат, который завершается после записи всех найденных строк.
+ * Общее количество потоков всех запросов ограничено: запрос, которому не хватает потоков,
+ * не запускается ({@link IllegalStateException}), и его можно повторить после окончания других запросов.
+ * Пример:
+ * <pre>
+ *     Query query = new Query("timeout|refused", "/var/log/app", "log");
+ *     query.setListener(lines -&gt; lines.forEach(System.out::println));
+ *     boolean found = scanner.submit(query).getResult().join();
+ * </pre>
+ */
+public class LogScanner implements AutoCloseable {
+
+    private static final int FOLLOW_THREADS = 2;        //Потоки записи и наблюдения за директорией
+
+    private final WorkerPool pool;                      //Потоки поиска, общие для всех запросов
+    private final Map<Integer, QueryInterface> running = new ConcurrentHashMap<>();    //Выполняющиеся запросы
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    public LogScanner() {
+        this(WorkerPool.DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * @param maxThreads наибольшее количество потоков всех выполняющихся запросов
+     */
+    public LogScanner(int maxThreads) {
+        this.pool = new WorkerPool(maxThreads);
+    }
+
+    /**
+     * Запуск запроса
+     * @param query параметры запроса
+     * @return выполняющийся запрос
+     * @throws IllegalArgumentException параметры запроса заданы неверно или несовместимы
+     * @throws IllegalStateException недостаточно свободных потоков для запуска запроса
+     */
+    public QueryInterface submit(Query query) {
+        int id = nextId.getAndIncrement();
+        return start(id, query.toInputLine(id), query.getListener());
+    }
+
+    /**
+     * Запуск запроса с уже проверенными параметрами (например, введенными в консоли)
+     * @param inputLine параметры поиска
+     * @param listener обработчик найденных строк; null - строки записываются в выходной файл
+     * @return выполняющийся запрос
+     * @throws IllegalStateException недостаточно свободных потоков для запуска запроса
+     */
+    public QueryInterface submit(InputLine inputLine, ResultListener listener) {
+        return start(nextId.getAndIncrement(), inputLine, listener);
+    }
+
+    private QueryInterface start(int id, InputLine inputLine, ResultListener listener) {
+        QueryInterface query;
+        CompletableFuture<Boolean> result;
+        int auxiliary = 0;      //Потоки запроса вне пула поиска
+        if(inputLine.getOptions().getWorkers() != null) {
+            //Распределенный поиск: фрагменты директории просматриваются узлами
+            auxiliary = inputLine.getOptions().getWorkers().size() + 1;
+            admit(auxiliary);
+            try {
+                DistributedSearch search = new DistributedSearch(id, inputLine, listener);
+                query = search;
+                running.put(id, query);
+                result = search.start();
+            } catch (RuntimeException e) {
+                abort(id, auxiliary);
+                throw e;
+            }
+        } else if(inputLine.getOptions().getMode() == InputOptions.Mode.FOLLOW) {
+            auxiliary = FOLLOW_THREADS;
+            admit(auxiliary);
+            try {
+                FollowQuery follow = new FollowQuery(new SearchTask(id, inputLine, listener));
+                query = follow;
+                running.put(id, query);
+                result = follow.start();
+            } catch (RuntimeException e) {
+                abort(id, auxiliary);
+                throw e;
+            }
+        } else {
+            SearchTask task = new SearchTask(id, inputLine, listener);
+            result = task.start(pool);
+            query = task;
+            running.put(id, query);
+        }
+        int released = auxiliary;
+        result.whenComplete((found, error) -> {
+            running.remove(id);
+            if(released > 0) {
+                pool.release(0, released);
+            }
+        });
+        return query;
+    }
+
+    /**
+     * Допуск запроса, потоки которого выполняются вне пула поиска
+     * @param auxiliary количество потоков запроса
+     * @throws IllegalStateException потоков запроса вместе с уже занятыми больше предела
+     */
+    private void admit(int auxiliary) {
+        if(!pool.tryReserve(0, auxiliary)) {
+            throw new IllegalStateException("Недостаточно свободных потоков поиска: "
+                    + pool.describeUsage(0, auxiliary));
+        }
+    }
+
+    /**
+     * Освобождение потоков запроса, который не удалось запустить
+     * @param id номер запроса
+     * @param auxiliary количество потоков запроса
+     */
+    private void abort(int id, int auxiliary) {
+        running.remove(id);
+        pool.release(0, auxiliary);
+    }
+
+    /**
+     * @param id номер запроса
+     * @return выполняющийся запрос; null - если запрос с таким номером не выполняется
+     */
+    public QueryInterface get(int id) {
+        return running.get(id);
+    }
+
+    /**
+     * @return выполняющиеся запросы
+     */
+    public Collection<QueryInterface> getRunning() {
+        return new ArrayList<>(running.values());
+    }
+
+    /**
+     * Ожидание окончания выполняющихся запросов (наблюдение за директорией нужно отменить)
+     * и остановка потоков поиска
+     */
+    @Override
+    public void close() {
+        for(QueryInterface query : getRunning()) {
+            query.getResult().join();
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,126 @@
+package ts.tsc.logScanner.api;
+
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.InputOptions;
+import ts.tsc.logScanner.inputLine.inputParser.InputParser;
+import ts.tsc.logScanner.output.ResultListener;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Параметры запроса для программного интерфейса {@link LogScanner} вместо строки,
+ * вводимой в консоли: текст для поиска, начальная директория, расширения
+ * и дополнительные параметры в виде ключ=значение (те же, что и в консоли).
+ *
+ * Найденные строки записываются в выходной файл или передаются обработчику {@link ResultListener}.
+ * По умолчанию прогресс в консоль не выводится (как и в консоли, включается параметром progress)
+ */
+public class Query {
+
+    private final String message;               //Текст для поиска
+    private final String inputDir;              //Начальная директория
+    private final String[] extensions;          //Расширения файлов
+    private final InputOptions options = new InputOptions();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String outputPath = null;           //Выходной файл; null - строки передаются только обработчику
+    private ResultListener listener = null;     //Обработчик найденных строк; null - строки записываются в файл
+
+    /**
+     * @param message текст для поиска (несколько подстрок разделяются символом |,
+     *                сам символ задается как \|)
+     * @param inputDir начальная директория
+     * @param extensions расширения файлов, в которых выполняется поиск
+     */
+    public Query(String message, String inputDir, String... extensions) {
+        this.message = message;
+        this.inputDir = inputDir;
+        this.extensions = new String[extensions.length];
+        for(int iterator = 0; iterator < extensions.length; iterator++) {
+            this.extensions[iterator] = extensions[iterator].trim().toLowerCase();
+        }
+    }
+
+    /**
+     * Установка дополнительного параметра, например: set("match", "regex")
+     * @param key название параметра
+     * @param value значение параметра
+     * @return true - если параметр известен и значение корректно; иначе - false
+     */
+    public boolean set(String key, String value) {
+        return options.add(key.trim().toLowerCase(), value.trim());
+    }
+
+    /**
+     * @param threads количество потоков поиска
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param outputPath выходной файл; при заданном обработчике - основа путей позиций просмотра,
+     *                   индекса, кэша результатов и временных сегментов
+     */
+    public void setOutputPath(String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * @param listener обработчик найденных строк вместо выходного файла
+     */
+    public void setListener(ResultListener listener) {
+        this.listener = listener;
+    }
+
+    public ResultListener getListener() {
+        return listener;
+    }
+
+    public InputOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Проверка параметров и преобразование в параметры поиска
+     * @param id номер запроса (для имени временных файлов, если выходной файл не задан)
+     * @return параметры поиска
+     * @throws IllegalArgumentException параметры заданы неверно или несовместимы
+     */
+    InputLine toInputLine(int id) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть больше нуля");
+        }
+        if(message == null || message.trim().isEmpty()) {
+            throw new IllegalArgumentException("Не указан текст для поиска");
+        }
+        if(inputDir == null || !Files.isDirectory(Paths.get(inputDir))) {
+            throw new IllegalArgumentException("Начальная директория не существует: " + inputDir);
+        }
+        if(extensions.length == 0) {
+            throw new IllegalArgumentException("Не указаны расширения");
+        }
+        String error = InputParser.checkOptions(options);
+        if(error == null) {
+            error = InputParser.checkMessage(message, options);
+        }
+        if(error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        String output = outputPath;
+        if(output == null) {
+            if(listener == null) {
+                throw new IllegalArgumentException("Не указан выходной файл или обработчик найденных строк");
+            }
+            //Позиции просмотра, индекс и кэш хранятся рядом с выходным файлом, поэтому без него не сохраняются
+            if(options.getMode() == InputOptions.Mode.INCREMENTAL || options.isIndexed() || options.isCached()) {
+                throw new IllegalArgumentException("Для mode=incremental, index=on и cache=on нужен выходной файл");
+            }
+            //Выходной файл не создается, в его директории создаются только временные сегменты
+            Path base = Paths.get(System.getProperty("java.io.tmpdir"), ".logscanner-query-" + id);
+            output = base.toAbsolutePath().toString();
+        }
+        return new InputLine(String.valueOf(threads), message, inputDir, output, extensions, options);
+    }
+}
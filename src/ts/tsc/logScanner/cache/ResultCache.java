@@ -0,0 +1,418 @@
+package ts.tsc.logScanner.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш результатов поиска по файлам для повторных запросов (параметр cache=on).
+ *
+ * Для каждого просмотренного файла сохраняются найденные строки (без начала строки с номером потока
+ * и путем) или отметка, что строк не найдено. Запись привязана к запросу (подстроки, способ
+ * сопоставления, контекст, интервал времени, расширения) и к состоянию файла: идентификатору,
+ * размеру и времени изменения. Файл, который не изменился, повторно не открывается.
+ *
+ * Кэш хранится в директории рядом с выходным файлом: список записей и по одному файлу строк
+ * на каждую запись с найденными строками. Записи разных запросов хранятся вместе, при превышении
+ * размера удаляются записи, которые дольше всего не использовались
+ */
+public class ResultCache {
+
+    private static final int MAGIC = 0x4C534331;            //Признак файлов кэша ("LSC1")
+    private static final String ENTRIES = "entries";        //Файл списка записей
+    private static final String LINES = ".lines";           //Окончание имени файла строк
+    private static final long ENTRY_OVERHEAD = 128;         //Примерный размер записи в списке, байт
+    private static final long MAX_ENTRY = 8L * 1024 * 1024; //Наибольший размер строк одного файла, байт
+    private static final long ORPHAN_AGE_MS = 3600_000L;    //Возраст файла строк без записи для удаления
+    private static final Object SAVE_LOCK = new Object();   //Сохранение списка запросами этой программы
+
+    private final Path directory;                           //Директория кэша
+    private final String query;                             //Хеш текста запроса
+    private final long capacity;                            //Наибольший размер кэша, байт
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();   //Записи запроса по путям файлов
+    private final Map<String, Entry> touched = new ConcurrentHashMap<>();   //Новые и использованные записи
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Строки одного файла
+     */
+    public static class FileResult {
+        private final int matches;
+        private final List<String> lines;
+
+        /**
+         * @param matches количество найденных строк (без строк контекста)
+         * @param lines найденные строки и строки контекста без начала выходной строки
+         */
+        public FileResult(int matches, List<String> lines) {
+            this.matches = matches;
+            this.lines = lines;
+        }
+
+        public int getMatches() {
+            return matches;
+        }
+
+        public List<String> getLines() {
+            return lines;
+        }
+    }
+
+    /**
+     * Запись кэша: состояние файла на момент просмотра и размер его строк
+     */
+    private static class Entry {
+        final String query;
+        final String file;
+        final String fileKey;
+        final long size;
+        final long lastModified;
+        final int matches;
+        final long bytes;               //Размер файла строк; 0 - строк не найдено, файла строк нет
+        volatile long lastUsed;
+
+        Entry(String query, String file, String fileKey, long size, long lastModified,
+              int matches, long bytes, long lastUsed) {
+            this.query = query;
+            this.file = file;
+            this.fileKey = fileKey;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.matches = matches;
+            this.bytes = bytes;
+            this.lastUsed = lastUsed;
+        }
+
+        boolean isActual(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && lastModified == attrs.lastModifiedTime().toMillis()
+                    && fileKey.equals(fileKey(attrs));
+        }
+
+        String key() {
+            return query + "\n" + file;
+        }
+
+        /**
+         * Имя файла строк зависит от состояния файла, поэтому строки измененного файла
+         * записываются в новый файл и не смешиваются со строками, которые читает другой запрос
+         */
+        String linesName() {
+            return sha1(key() + "\n" + fileKey + "\n" + size + "\n" + lastModified) + LINES;
+        }
+    }
+
+    /**
+     * @param directory директория кэша
+     * @param query текст запроса: все параметры, от которых зависят найденные строки
+     * @param capacity наибольший размер кэша, байт
+     */
+    public ResultCache(Path directory, String query, long capacity) {
+        this.directory = directory;
+        this.query = sha1(query);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Загрузка записей запроса. Отсутствующий или поврежденный кэш считается пустым
+     */
+    public void load() {
+        entries.clear();
+        touched.clear();
+        for(Entry entry : readEntries()) {
+            if(entry.query.equals(query)) {
+                entries.put(entry.file, entry);
+            }
+        }
+    }
+
+    /**
+     * Получение строк файла, если файл не изменился с момента сохранения записи
+     * @param file путь к файлу
+     * @param attrs текущие атрибуты файла
+     * @return строки файла; null - если записи нет, она устарела или файл строк не прочитан
+     */
+    public FileResult get(Path file, BasicFileAttributes attrs) {
+        Entry entry = entries.get(file.toString());
+        if(entry == null || !entry.isActual(attrs)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        List<String> lines;
+        if(entry.bytes == 0) {
+            lines = Collections.emptyList();
+        } else {
+            lines = readLines(directory.resolve(entry.linesName()));
+            if(lines == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        touched.put(entry.file, entry);
+        hits.incrementAndGet();
+        return new FileResult(entry.matches, lines);
+    }
+
+    /**
+     * Сохранение строк просмотренного файла
+     * @param file путь к файлу
+     * @param attrs атрибуты файла, прочитанные до начала просмотра
+     * @param result найденные строки
+     */
+    public void put(Path file, BasicFileAttributes attrs, FileResult result) {
+        Entry entry = new Entry(query, file.toString(), fileKey(attrs), attrs.size(),
+                attrs.lastModifiedTime().toMillis(), result.getMatches(), 0, System.currentTimeMillis());
+        if(!result.getLines().isEmpty()) {
+            long bytes = writeLines(directory.resolve(entry.linesName()), result.getLines());
+            if(bytes <= 0) {
+                return;
+            }
+            entry = new Entry(entry.query, entry.file, entry.fileKey, entry.size, entry.lastModified,
+                    entry.matches, bytes, entry.lastUsed);
+        }
+        entries.put(entry.file, entry);
+        touched.put(entry.file, entry);
+    }
+
+    /**
+     * Сохранение списка записей через временный файл. Список перечитывается с диска,
+     * чтобы не потерять записи других запросов, затем удаляются записи, которые дольше
+     * всего не использовались, пока размер кэша не станет меньше наибольшего
+     */
+    public void save() {
+        if(touched.isEmpty()) {
+            return;
+        }
+        synchronized (SAVE_LOCK) {
+            Map<String, Entry> merged = new HashMap<>();
+            for(Entry entry : readEntries()) {
+                merged.put(entry.key(), entry);
+            }
+            List<Path> obsolete = new ArrayList<>();
+            for(Entry entry : touched.values()) {
+                Entry previous = merged.put(entry.key(), entry);
+                if(previous != null && previous.bytes > 0 && !previous.linesName().equals(entry.linesName())) {
+                    //Строки прежнего состояния файла больше не нужны
+                    obsolete.add(directory.resolve(previous.linesName()));
+                }
+            }
+
+            List<Entry> kept = new ArrayList<>(merged.values());
+            kept.sort(Comparator.comparingLong((Entry entry) -> entry.lastUsed).reversed());
+            long total = 0;
+            int count = 0;
+            while (count < kept.size() && total + kept.get(count).bytes + ENTRY_OVERHEAD <= capacity) {
+                total += kept.get(count).bytes + ENTRY_OVERHEAD;
+                count++;
+            }
+            for(Entry evicted : kept.subList(count, kept.size())) {
+                if(evicted.bytes > 0) {
+                    obsolete.add(directory.resolve(evicted.linesName()));
+                }
+            }
+            kept = kept.subList(0, count);
+
+            if(!writeEntries(kept)) {
+                return;
+            }
+            for(Path lines : obsolete) {
+                try {
+                    Files.deleteIfExists(lines);
+                } catch (IOException e) {
+                    //Файл будет удален при следующем сохранении
+                }
+            }
+            removeOrphans(kept);
+            touched.clear();
+        }
+    }
+
+    /**
+     * @return количество файлов, строки которых получены из кэша
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return количество файлов, которых не было в кэше или которые изменились
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return наибольший размер строк одного файла, которые сохраняются в кэше, байт
+     */
+    public long getEntryLimit() {
+        return Math.min(capacity / 16, MAX_ENTRY);
+    }
+
+    private List<Entry> readEntries() {
+        List<Entry> result = new ArrayList<>();
+        Path path = directory.resolve(ENTRIES);
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if(input.readInt() != MAGIC) {
+                return result;
+            }
+            int count = input.readInt();
+            for(int entry = 0; entry < count; entry++) {
+                result.add(new Entry(input.readUTF(), input.readUTF(), input.readUTF(), input.readLong(),
+                        input.readLong(), input.readInt(), input.readLong(), input.readLong()));
+            }
+        } catch (NoSuchFileException e) {
+            //Кэш еще не создан
+        } catch (IOException e) {
+            System.out.println("> Список записей кэша " + path + " поврежден, кэш будет заполнен заново");
+            result.clear();
+        }
+        return result;
+    }
+
+    private boolean writeEntries(List<Entry> kept) {
+        Path path = directory.resolve(ENTRIES);
+        Path temp = directory.resolve(ENTRIES + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                output.writeInt(MAGIC);
+                output.writeInt(kept.size());
+                for(Entry entry : kept) {
+                    output.writeUTF(entry.query);
+                    output.writeUTF(entry.file);
+                    output.writeUTF(entry.fileKey);
+                    output.writeLong(entry.size);
+                    output.writeLong(entry.lastModified);
+                    output.writeInt(entry.matches);
+                    output.writeLong(entry.bytes);
+                    output.writeLong(entry.lastUsed);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            System.out.println("> Ошибка в ходе сохранения кэша результатов в " + directory);
+            return false;
+        }
+    }
+
+    /**
+     * Удаление файлов строк, на которые не ссылается ни одна запись (остались после прерванного
+     * запуска или после одновременного сохранения из разных программ). Недавно созданные файлы
+     * не удаляются: их записи может еще не сохранить выполняющийся запрос
+     */
+    private void removeOrphans(List<Entry> kept) {
+        Map<String, Boolean> referenced = new HashMap<>();
+        for(Entry entry : kept) {
+            if(entry.bytes > 0) {
+                referenced.put(entry.linesName(), Boolean.TRUE);
+            }
+        }
+        long border = System.currentTimeMillis() - ORPHAN_AGE_MS;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + LINES)) {
+            for(Path lines : files) {
+                if(!referenced.containsKey(lines.getFileName().toString())
+                        && Files.getLastModifiedTime(lines).toMillis() < border) {
+                    Files.deleteIfExists(lines);
+                }
+            }
+        } catch (IOException e) {
+            //Файлы будут удалены при следующем сохранении
+        }
+    }
+
+    /**
+     * Запись строк файла через временный файл
+     * @return размер файла строк; 0 - если строки не записаны
+     */
+    private long writeLines(Path path, List<String> lines) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, ".", LINES + ".tmp");
+            try {
+                try (DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                    output.writeInt(MAGIC);
+                    output.writeInt(lines.size());
+                    for(String line : lines) {
+                        //Строка может быть длиннее 64 КБ, поэтому writeUTF не подходит
+                        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                        output.writeInt(bytes.length);
+                        output.write(bytes);
+                    }
+                }
+                long bytes = Files.size(temp);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                return bytes;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.out.println("> Ошибка в ходе записи строк в кэш результатов " + directory);
+            return 0;
+        }
+    }
+
+    /**
+     * @return строки файла; null - если файл строк отсутствует или поврежден
+     */
+    private static List<String> readLines(Path path) {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if(input.readInt() != MAGIC) {
+                return null;
+            }
+            int count = input.readInt();
+            List<String> lines = new ArrayList<>(count);
+            for(int line = 0; line < count; line++) {
+                byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                lines.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            return lines;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String fileKey(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key != null ? key.toString() : "created:" + attrs.creationTime().toMillis();
+    }
+
+    private static String sha1(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for(byte value : digest) {
+                hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package ts.tsc.logScanner.checkpoint;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Хранилище позиций, до которых файлы уже были просмотрены.
+ *
+ * Для каждого файла хранятся путь, идентификатор файла в файловой системе, размер,
+ * позиция окончания просмотра, время изменения и контрольная сумма начала файла и данных перед позицией.
+ * По контрольной сумме распознается ротация, которую не видно по идентификатору и размеру: усечение
+ * (copytruncate) с последующим ростом файла дальше старой позиции или новый файл с тем же временем создания
+ * (в Windows идентификатора файла нет, а время создания наследуется при замене файла).
+ * Хранилище сохраняется рядом с выходным файлом и привязано к тексту запроса:
+ * при другом запросе все файлы просматриваются заново
+ */
+public class CheckpointStore {
+
+    private static final String SEPARATOR = "\t";
+    private static final int FINGERPRINT_SIZE = 4096;  //Размер начала файла и данных перед позицией для контрольной суммы
+
+    private final Path path;                //Файл хранилища
+    private final String query;             //Запрос, для которого сохранены позиции
+    private final Map<String, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Сохраненное состояние одного файла
+     */
+    private static class Checkpoint {
+        final String fileKey;
+        final long size;
+        final long offset;
+        final long modified;
+        final long fingerprint;
+
+        Checkpoint(String fileKey, long size, long offset, long modified, long fingerprint) {
+            this.fileKey = fileKey;
+            this.size = size;
+            this.offset = offset;
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * Хранилище, существующее только в памяти (без загрузки и сохранения)
+     */
+    public CheckpointStore() {
+        this(null, "");
+    }
+
+    /**
+     * @param path файл хранилища
+     * @param query текст запроса (подстроки и расширения)
+     */
+    public CheckpointStore(Path path, String query) {
+        this.path = path;
+        this.query = query;
+    }
+
+    /**
+     * Загрузка сохраненных позиций. Если хранилище отсутствует, повреждено
+     * или создано для другого запроса, оно считается пустым
+     */
+    public void load() {
+        checkpoints.clear();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            if(!query.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR);
+                //Строки без контрольной суммы (прежний формат) пропускаются - файлы просматриваются заново
+                if(fields.length != 6) {
+                    continue;
+                }
+                checkpoints.put(fields[0], new Checkpoint(fields[1], Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5])));
+            }
+        } catch (NoSuchFileException e) {
+            //Первый запуск - позиций еще нет
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("> Файл позиций " + path + " поврежден, файлы будут просмотрены заново");
+            checkpoints.clear();
+        }
+    }
+
+    /**
+     * Сохранение позиций через временный файл, чтобы прерванная запись не повредила хранилище.
+     * Позиции удаленных файлов не сохраняются
+     */
+    public void save() {
+        prune();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(query);
+                writer.newLine();
+                for(Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+                    Checkpoint checkpoint = entry.getValue();
+                    writer.write(entry.getKey() + SEPARATOR + checkpoint.fileKey + SEPARATOR
+                            + checkpoint.size + SEPARATOR + checkpoint.offset + SEPARATOR
+                            + checkpoint.modified + SEPARATOR + checkpoint.fingerprint);
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("> Ошибка в ходе сохранения позиций просмотра файлов в " + path);
+        }
+    }
+
+    /**
+     * Удаление позиций файлов, которых больше нет
+     */
+    public void prune() {
+        checkpoints.keySet().removeIf(file -> Files.notExists(Paths.get(file)));
+    }
+
+    /**
+     * Определение позиции, с которой нужно продолжить просмотр файла
+     * @param file путь к файлу
+     * @param attrs текущие атрибуты файла
+     * @param channel открытый канал файла для проверки контрольной суммы
+     * @return сохраненная позиция; 0 - если файл новый, был усечен или заменен другим файлом (ротация)
+     * @throws IOException ошибка чтения файла
+     */
+    public long startOffset(Path file, BasicFileAttributes attrs, FileChannel channel) throws IOException {
+        Checkpoint checkpoint = checkpoints.get(file.toString());
+        if(checkpoint == null) {
+            return 0;
+        }
+        if(!checkpoint.fileKey.equals(fileKey(attrs)) || attrs.size() < checkpoint.offset) {
+            return 0;
+        }
+        //Файл не изменялся с прошлого просмотра - данные перед позицией можно не читать
+        if(attrs.size() == checkpoint.size && attrs.lastModifiedTime().toMillis() == checkpoint.modified) {
+            return checkpoint.offset;
+        }
+        if(fingerprint(channel, checkpoint.offset) != checkpoint.fingerprint) {
+            return 0;
+        }
+        return checkpoint.offset;
+    }
+
+    /**
+     * Сохранение позиции окончания просмотра файла
+     * @param file путь к файлу
+     * @param attrs атрибуты файла на момент просмотра
+     * @param offset позиция, до которой файл просмотрен
+     * @param channel открытый канал файла для вычисления контрольной суммы
+     * @throws IOException ошибка чтения файла
+     */
+    public void update(Path file, BasicFileAttributes attrs, long offset, FileChannel channel) throws IOException {
+        checkpoints.put(file.toString(), new Checkpoint(fileKey(attrs), attrs.size(), offset,
+                attrs.lastModifiedTime().toMillis(), fingerprint(channel, offset)));
+    }
+
+    /**
+     * Контрольная сумма начала файла и данных перед позицией (не более 4 КБ каждого фрагмента)
+     * @param channel открытый канал файла
+     * @param offset позиция окончания просмотра
+     * @return контрольная сумма; -1 - если файл короче позиции
+     * @throws IOException ошибка чтения файла
+     */
+    public static long fingerprint(FileChannel channel, long offset) throws IOException {
+        CRC32 crc = new CRC32();
+        long headEnd = Math.min(offset, FINGERPRINT_SIZE);
+        long tailStart = Math.max(headEnd, offset - FINGERPRINT_SIZE);
+        if(!update(crc, channel, 0, headEnd) || !update(crc, channel, tailStart, offset)) {
+            return -1;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Добавление диапазона файла в контрольную сумму
+     * @return false - если файл закончился раньше конца диапазона
+     */
+    private static boolean update(CRC32 crc, FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        while (buffer.hasRemaining()) {
+            if(channel.read(buffer, from + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        crc.update(buffer.array(), 0, buffer.position());
+        return true;
+    }
+
+    /**
+     * Идентификатор файла: номер inode (или аналог), а если файловая система его не предоставляет -
+     * время создания файла. Новый файл после ротации получает другой идентификатор
+     */
+    private static String fileKey(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        if(key != null) {
+            return key.toString().replace(SEPARATOR, " ");
+        }
+        return "created:" + attrs.creationTime().toMillis();
+    }
+}
@@ -1,113 +1,80 @@
 package ts.tsc.logScanner.console;
 
-import ts.tsc.logScanner.directory.CheckDirectory;
+import ts.tsc.logScanner.api.LogScanner;
+import ts.tsc.logScanner.dispatch.QueryInterface;
 import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.InputOptions;
 import ts.tsc.logScanner.inputLine.inputParser.InputParser;
-import ts.tsc.logScanner.fileParser.fileParser;
 
 import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.LinkedList;
 
 public class Console implements ConsoleInterface{
 
-    private static InputLine inputLine;                 //Структура для хранения строки
-    private static final
-    LinkedList<Path> filesList = new LinkedList<>();    //Список для хранения путей к файлам
-    private static boolean found  = false;              /* Флаг, показывающий,
-                                                         * были ли найдены подстроки в указанных файлах
-                                                         * */
-    private static boolean dirEnd;                      //Флаг окончания обхода начальной директории
+    private final LogScanner scanner = new LogScanner();   //Выполнение запросов в общем пуле потоков
 
     /**
-     * Проверка выходной строки на корректность
-     * @param inputString строка
-     * @return true - корректа, иначе - false
-     * результат зависит от метода
-     * {@link ts.tsc.logScanner.inputLine.inputParser.InputParser#validateLine(String)} ;}
+     * Запуск поиска подстроки в файлах из директории. Поиск выполняется в фоне,
+     * одновременно может выполняться несколько запросов
+     * @param inputLine параметры поиска
      */
-    private static boolean validateLine(String inputString) {
-        inputLine = InputParser.validateLine(inputString);
-        return inputLine != null;
-    }
-
-    public static void setFoundTrue() {
-        found = true;
-    }
-    private static void setFoundFalse() {
-        found = false;
+    private void search(InputLine inputLine) {
+        QueryInterface task;
+        try {
+            task = scanner.submit(inputLine, null);
+        } catch (IllegalStateException e) {
+            System.out.println("> " + e.getMessage() + ", повторите запрос после окончания других запросов");
+            return;
+        }
+        System.out.println("> Запрос " + task.getId() + " запущен, для отмены введите команду cancel "
+                + task.getId());
     }
-    public static boolean getFound() {return found;}
 
     /**
-     * Поиск подстроки в списке файлов из директории
+     * Отмена выполняющегося запроса
+     * @param argument номер запроса
      */
-    private void search() {
-
-        fileParser[] fileParsers = new fileParser[inputLine.getNumberOfThreads()];
-        for(int iterator = 0; iterator < fileParsers.length; iterator++) {
-            fileParsers[iterator] =
-                    new fileParser(this, inputLine, iterator+1);
+    private void cancel(String argument) {
+        QueryInterface task = null;
+        try {
+            task = scanner.get(Integer.parseInt(argument.trim()));
+        } catch (NumberFormatException e) {
+            //Номер запроса задан неверно
         }
-
-        Thread dirThread = new Thread(
-                new CheckDirectory(this,
-                inputLine,
-                fileParsers));
-        dirThread.start();
-
-        //Установка времени начала поиска
-        double startTime = System.nanoTime();
-
-        //Создание необходимого количества потоков с заданными параметрами
-        Thread[] parseThreads = new Thread[fileParsers.length];
-        for(int iterator = 0; iterator < parseThreads.length; iterator++) {
-            parseThreads[iterator] = new Thread(fileParsers[iterator]);
-            parseThreads[iterator].start();
+        if(task == null) {
+            System.out.println("> Запрос с номером " + argument.trim() + " не выполняется");
+            return;
         }
+        task.cancel();
+    }
 
-        //Ожидание выполнения потоков в главном потока
-        for (Thread parseThread : parseThreads) {
-            try {
-                parseThread.join();
-            } catch (InterruptedException e) {
-                System.out.println("> Ошибка в ходе работы потоков");
-            }
+    /**
+     * Наблюдение за директорией: новые строки, содержащие подстроку, записываются
+     * в выходной файл по мере появления, пока пользователь не введет команду stop
+     * @param inputLine параметры поиска
+     * @param inputBuffer ввод с консоли
+     * @throws IOException ошибка чтения с консоли
+     */
+    private void follow(InputLine inputLine, BufferedReader inputBuffer) throws IOException {
+        QueryInterface task;
+        try {
+            task = scanner.submit(inputLine, null);
+        } catch (IllegalStateException e) {
+            System.out.println("> " + e.getMessage() + ", повторите запрос после окончания других запросов");
+            return;
         }
+        System.out.println("> Наблюдение за директорией " + inputLine.getInputDir()
+                + " запущено, новые строки записываются в файл " + inputLine.getOutputPath()
+                + "\n> Для остановки введите команду stop");
 
-        //Вычисление времени выполнения поиска
-        double timeSpent = System.nanoTime() - startTime;
-
-        //Запись в файл списка строк, если они были найдены и файл существует
-        File file = new File(inputLine.getOutputPath());
-        if(file.exists() && found) {
-            try(BufferedWriter writer = Files.newBufferedWriter(Paths.get(inputLine.getOutputPath()),
-                    Charset.forName("UTF-8"), StandardOpenOption.APPEND)){
-                writer.newLine();
-                String time = "Поиск длился всего: " + timeSpent/1000000000 + " секунд";
-                writer.write(time);
-                writer.newLine();
-                writer.newLine();
-                System.out.println("> Данные записаны в файл " + file);
-            } catch(IOException ex){
-                System.out.println("> Ошибка в ходе записи в файл");
-                ex.printStackTrace();
-            }
-        }
-        if(!found) {
-            System.out.println("> В указанной директории не было найдено файлов, содержащих данную подстроку "
-                    + inputLine.getErrorMessage());
-        }
-        if(!file.exists() && found) {
-            System.out.println("> Выходной файл с результатами поиска не найден, возможно он был удален");
+        String input;
+        while ((input = inputBuffer.readLine()) != null && !input.trim().equalsIgnoreCase("stop")) {
+            System.out.println("> Для остановки наблюдения введите команду stop");
         }
 
-        //Установление флага в состояние false
-        setFoundFalse();
+        //Остановка наблюдения и запись оставшихся строк
+        task.cancel();
+        task.getResult().join();
+        System.out.println("> Наблюдение за директорией остановлено");
     }
 
     /**
@@ -115,10 +82,53 @@ public class Console implements ConsoleInterface{
      */
     public void main() {
         System.out.println("> Введите через точку с запятой (;) данные для поиска в логах в указанном формате:\n" +
-                "количество потоков; текст для поиска (более одного символа); начальный каталог; путь до выходного файла; " +
-                "список расширений, в которых будет осуществляться поиск (одно или более)\n" +
+                "количество потоков; текст для поиска (более одного символа, несколько подстрок разделяются символом |, " +
+                "сам символ задается как \\|); " +
+                "начальный каталог; путь до выходного файла; " +
+                "список расширений, в которых будет осуществляться поиск (одно или более, " +
+                "файлы .gz и .zip распаковываются в ходе поиска)\n" +
                 "Пример: 15; password; c:\\logs; c:\\temp\\out.txt; txt log out err\n" +
-                "для выхода введите команду exit");
+                "далее через точку с запятой можно указать дополнительные параметры в виде ключ=значение:\n" +
+                "walk=parallel - параллельный обход директории\n" +
+                "mode=incremental - поиск только в строках, добавленных после предыдущего запуска\n" +
+                "mode=follow - наблюдение за директорией и запись новых строк по мере их появления " +
+                "(сжатые файлы .gz и .zip при наблюдении не просматриваются)\n" +
+                "index=on - построение и использование индекса триграмм для ускорения повторных запросов " +
+                "(при выводе контекста индекс не используется)\n" +
+                "cache=on - кэш найденных строк по файлам: при повторном запросе неизменившиеся файлы " +
+                "не просматриваются, cachesize=256 - наибольший размер кэша в МБ\n" +
+                "progress=10 - выводить прогресс каждые 10 секунд (по умолчанию прогресс не выводится, " +
+                "чтобы не перемешиваться с вводом следующего запроса)\n" +
+                "match=regex - текст для поиска является регулярным выражением (с учетом регистра, (?i) - без учета), " +
+                "prefilter=ERROR - проверять выражение только в строках, содержащих подстроку\n" +
+                "io=device - отдельная очередь файлов для каждого диска в порядке путей, количество файлов, " +
+                "одновременно читаемых с диска, подбирается по скорости чтения (для дисков разной скорости)\n" +
+                "exec=virtual - поиск в виртуальных потоках (Java 21 и новее) для сетевых дисков: количество потоков - " +
+                "число одновременно читаемых файлов (не больше jdk.virtualThreadScheduler.maxPoolSize, по умолчанию 256), " +
+                "cpu=8 - число потоков, одновременно выполняющих поиск\n" +
+                "from=2024-01-01 10:00:00, to=2024-01-01 12:00:00 - поиск только в строках интервала времени " +
+                "(для логов, строки которых начинаются с отметки времени), timeformat=dd.MM.yyyy HH:mm:ss - " +
+                "формат отметки (по умолчанию yyyy-MM-dd HH:mm:ss)\n" +
+                "before=3, after=10, context=5 - вывод строк перед найденной строкой, после нее или с обеих сторон " +
+                "(строки контекста помечаются \"- \", группы разделяются строкой \"--\")\n" +
+                "count=file, count=dir, count=hour - вместо найденных строк записать количество строк " +
+                "по файлам, поддиректориям или часам (по отметке времени в начале строки, формат timeformat)\n" +
+                "max=5 - не больше 5 найденных строк в каждом файле, после них просмотр файла прекращается, " +
+                "list=files - вывод только имен файлов, содержащих подстроку (просмотр файла - до первой строки)\n" +
+                "limit=100 - не больше 100 найденных строк всего, после них обход директории и поиск " +
+                "останавливаются, limit=1 - быстрая проверка наличия строки (не используется вместе с order=path)\n" +
+                "order=path - вывод строк в порядке путей файлов и номеров строк (без номера потока), " +
+                "чтобы результаты разных запусков можно было сравнивать\n" +
+                "workers=host1:7001,host2:7001 - распределенный поиск: поддиректории первого уровня " +
+                "просматриваются узлами, запущенными командой java ts.tsc.logScanner.Main worker 0.0.0.0:7001 " +
+                "c:\\logs (без адреса узел принимает только локальные подключения, поиск - только внутри корня; " +
+                "начальная директория должна быть доступна узлам по тому же пути, каждая поддиректория " +
+                "просматривается узлами, у которых она есть; узлы и координатор должны " +
+                "иметь одинаковый ключ в переменной окружения LOGSCANNER_TOKEN)\n" +
+                "stats=c:\\temp\\stats.json - запись итоговой статистики поиска в файл в формате JSON\n" +
+                "запросы выполняются в фоне, для отмены запроса введите команду cancel и номер запроса, " +
+                "например: cancel 2\n" +
+                "для выхода введите команду exit (программа дождется окончания выполняющихся запросов)");
 
         //Считывание ввода данных с консоли
         try(BufferedReader inputBuffer = new BufferedReader(new InputStreamReader(System.in))) {
@@ -129,15 +139,26 @@ public class Console implements ConsoleInterface{
                 //Считывание из буфера в строку
                 String input = inputBuffer.readLine();
 
-                //Выход, если введено ключевое слово exit
-                if (input.toLowerCase().equals("exit")) {
+                //Выход, если введено ключевое слово exit или ввод закончен
+                if (input == null || input.toLowerCase().equals("exit")) {
                     break;
                 }
 
+                //Отмена выполняющегося запроса
+                if(input.trim().toLowerCase().startsWith("cancel ")) {
+                    cancel(input.trim().substring("cancel ".length()));
+                    continue;
+                }
+
                 //Проверка введенных данных
-                if(validateLine(input)) {
+                InputLine inputLine = InputParser.validateLine(input);
+                if(inputLine != null) {
                     //Поиск в директории если введена верная строка
-                    search();
+                    if(inputLine.getOptions().getMode() == InputOptions.Mode.FOLLOW) {
+                        follow(inputLine, inputBuffer);
+                    } else {
+                        search(inputLine);
+                    }
                     System.out.println("> Введите новый запрос для поиска " +
                             "или введите слово exit  для выхода");
                 }
@@ -146,36 +167,12 @@ public class Console implements ConsoleInterface{
         } catch (IOException e) {
             System.out.println("> Ошибка в ходе чтения с консоли");
         }
-        System.out.println("> Выполнение программы закончено");
-    }
 
-    @Override
-    public synchronized Path popListElement() {
-        if(filesList.size() > 0) {
-            return filesList.pop();
-        } else {
-            return null;
+        //Ожидание окончания выполняющихся запросов
+        if(!scanner.getRunning().isEmpty()) {
+            System.out.println("> Ожидание окончания выполняющихся запросов");
         }
+        scanner.close();
+        System.out.println("> Выполнение программы закончено");
     }
-
-    @Override
-    public synchronized void addListElement(Path list) {
-        filesList.add(list);
-    }
-
-    @Override
-    public synchronized boolean isSearchFinished() {
-        return dirEnd && filesList.size() == 0;
-    }
-
-    @Override
-    public synchronized void setDirEndTrue() {
-        dirEnd = true;
-    }
-
-    @Override
-    public synchronized void setDirEndFalse() {
-        dirEnd = false;
-    }
-
 }
@@ -1,41 +1,65 @@
 package ts.tsc.logScanner.directory;
 
-import ts.tsc.logScanner.console.ConsoleInterface;
+import ts.tsc.logScanner.dispatch.DispatchInterface;
 import ts.tsc.logScanner.inputLine.LineInterface;
 import ts.tsc.logScanner.inputLine.inputParser.InputParser;
-import ts.tsc.logScanner.observing.Observable;
 
 import java.io.IOException;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Класс для обхода начальной директории
  */
 public class CheckDirectory implements Runnable {
-    private final ConsoleInterface console;     //Интерфейс класс Console для доступа к списку путей
+
+    //Количество потоков параллельного обхода: обход сетевых файловых систем ограничен задержками, а не процессором
+    public static final int WALK_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final DispatchInterface console;    //Интерфейс запроса для доступа к очереди путей
     private final LineInterface line;
-    private final Observable[] observables;     /*Массив "наблюдателей", которых надо оповестить
-                                                о добавлении элемента в список*/
+    private volatile boolean stopped = false;   //Параллельный обход прерван, задачи пула больше не просматривают директории
 
-    public CheckDirectory(ConsoleInterface console,
-                          LineInterface line,
-                          Observable[] observables) {
+    public CheckDirectory(DispatchInterface console,
+                          LineInterface line) {
         this.console = console;
         this.line = line;
-        this.observables = observables;
     }
 
     /**
      * Поиск в директории файлов, имеющих заданные расширения.
      * @param path директория
+     * @throws InterruptedException если ожидание места в очереди было прервано
+     */
+    private void search(Path path) throws InterruptedException {
+        search(path, true);
+    }
+
+    /**
+     * Поиск в директории файлов, имеющих заданные расширения.
+     * @param path директория
+     * @param recursive true - с просмотром поддиректорий; false - только файлы самой директории
+     * @throws InterruptedException если ожидание места в очереди было прервано
      */
-    private void search(Path path) {
+    private void search(Path path, boolean recursive) throws InterruptedException {
         try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(path)) {
-            for(Path entry : dirStream) {
+            for(Path entry : entries(dirStream)) {
 
                 //Проверка доступности файла
                 if(Files.isReadable(entry)) {
@@ -44,14 +68,12 @@ public class CheckDirectory implements Runnable {
 
                     /*
                      * Если файл является обычным и его расширение есть в списке заданных,
-                     * то осуществляется добавление пути к нему в список и оповещение наблюдателей
+                     * то осуществляется добавление пути к нему в очередь
+                     * (с ожиданием, если очередь заполнена)
                      */
-                    if(attrs.isRegularFile()
-                            && InputParser.isRightExtension(entry, line.getExtensions())
-                            && !(entry.toString()).equals(line.getOutputPath())) {
+                    if(isSearchable(entry, attrs, line)) {
                         console.addListElement(entry);
-                        updateObservers();
-                    } else if(attrs.isDirectory()) {
+                    } else if(recursive && attrs.isDirectory()) {
                         //Если файл является папкой, то осуществялется рекурсивный вызов для нее
                         search(entry);
                     }
@@ -62,25 +84,228 @@ public class CheckDirectory implements Runnable {
         }
     }
 
+    /**
+     * Элементы директории: при упорядоченном выводе - по возрастанию имени, чтобы файлы
+     * попадали в очередь в порядке относительных путей; иначе - в порядке чтения директории
+     */
+    private Iterable<Path> entries(DirectoryStream<Path> dirStream) {
+        if(!line.getOptions().isSortedOutput()) {
+            return dirStream;
+        }
+        List<Path> entries = new ArrayList<>();
+        for(Path entry : dirStream) {
+            entries.add(entry);
+        }
+        entries.sort(Comparator.comparing(entry -> entry.getFileName().toString()));
+        return entries;
+    }
+
+    /**
+     * Проверка, нужно ли искать в файле: обычный файл с заданным расширением,
+     * не являющийся выходным файлом
+     * @param entry путь к файлу
+     * @param attrs атрибуты файла
+     * @param line параметры поиска
+     * @return true - файл подходит для поиска; иначе - false
+     */
+    public static boolean isSearchable(Path entry, BasicFileAttributes attrs, LineInterface line) {
+        return attrs.isRegularFile()
+                && InputParser.isRightExtension(entry, line.getExtensions())
+                && !(entry.toString()).equals(line.getOutputPath());
+    }
+
     @Override
     public void run() {
-        //Установка флага окончания обхода директории в состояние false
-        console.setDirEndFalse();
+        try {
+            Path root = Paths.get(line.getInputDir());
+            String shard = line.getOptions().getShard();
+            if(shard != null) {
+                //Узел распределенного поиска просматривает только назначенный ему фрагмент директории
+                if(shard.isEmpty()) {
+                    search(root, false);
+                } else {
+                    search(root.resolve(shard));
+                }
+                return;
+            }
+            //Параллельный обход не сохраняет порядок путей, поэтому вместе с упорядоченным выводом не задается
+            if(line.getOptions().isParallelWalk()) {
+                parallelSearch(root);
+            } else {
+                search(root);
+            }
+        } catch (InterruptedException e) {
+            System.out.println("> Обход директории был прерван");
+        } finally {
+            //Установка признака окончания обхода директории, ожидающие потоки поиска будут разбужены
+            console.setDirEndTrue();
+        }
+    }
 
-        search(Paths.get(line.getInputDir()));
+    /**
+     * Параллельный обход директории: каждая поддиректория обрабатывается отдельной задачей
+     * пула с постоянным количеством потоков {@link #WALK_THREADS}. Задачи не ожидают друг друга,
+     * а добавление пути в заполненную очередь просто блокирует поток, поэтому обход замедляется
+     * вместе с потоками поиска и не создает новых потоков
+     * @param root начальная директория
+     * @throws InterruptedException если ожидание места в очереди было прервано
+     */
+    private void parallelSearch(Path root) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(WALK_THREADS, task -> {
+            Thread thread = new Thread(task, "parallel-walker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ParallelWalk walk = new ParallelWalk(pool);
+        try {
+            walk.submit(root);
+            walk.await();
+        } finally {
+            //Оставшиеся задачи после прерывания обхода не выполняются
+            stopped = true;
+            pool.shutdownNow();
+        }
+    }
 
-        //Установка флага окончания обхода директории в состояние false
-        console.setDirEndTrue();
-        //Оповещение наблюдателей об окончании обхода директории
-        updateObservers();
+    /**
+     * Состояние параллельного обхода: количество задач, которые еще не закончены, и первая ошибка
+     */
+    private class ParallelWalk {
+        private final ExecutorService pool;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Exception failure;
+
+        ParallelWalk(ExecutorService pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Добавление задачи обхода директории
+         * @param directory директория
+         */
+        void submit(Path directory) {
+            pending.incrementAndGet();
+            try {
+                pool.execute(() -> {
+                    try {
+                        walk(directory);
+                    } catch (InterruptedRuntimeException e) {
+                        fail(e.getCause());
+                    } catch (RuntimeException e) {
+                        fail(e);
+                    } finally {
+                        finished();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                //Обход уже остановлен
+                finished();
+            }
+        }
+
+        /**
+         * Ожидание окончания всех задач или первой ошибки
+         * @throws InterruptedException ожидание или добавление пути в очередь было прервано
+         */
+        void await() throws InterruptedException {
+            done.await();
+            Exception error = failure;
+            if(error instanceof InterruptedException) {
+                throw (InterruptedException) error;
+            }
+            if(error != null) {
+                throw (RuntimeException) error;
+            }
+        }
+
+        private void fail(Exception error) {
+            //Запрос отменен или очередь закрыта: остальные задачи заканчивают обход
+            stopped = true;
+            if(failure == null) {
+                failure = error;
+            }
+            done.countDown();
+        }
+
+        private void finished() {
+            if(pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Обход одной директории.
+         *
+         * Элементы директории перебираются через {@link Files#walkFileTree} с глубиной 1: в Windows атрибуты
+         * берутся из результата чтения директории, в остальных системах для каждого элемента выполняется
+         * один вызов stat (JDK не передает тип файла из readdir). Проверка доступности выполняется только
+         * для файлов, подходящих для поиска, а недоступные директории пропускаются при открытии.
+         * Поддиректории добавляются в пул отдельными задачами
+         */
+        private void walk(Path directory) {
+            if(stopped) {
+                return;
+            }
+            try {
+                Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1,
+                        new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path entry, BasicFileAttributes attrs) {
+                        if(stopped) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        if(isSearchable(entry, attrs, line)) {
+                            if(Files.isReadable(entry)) {
+                                put(entry);
+                            }
+                        } else if(attrs.isDirectory() && !entry.equals(directory)) {
+                            submit(entry);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path entry, IOException e) {
+                        /*
+                         * Недоступная директория пропускается, как и при последовательном обходе;
+                         * элемент, атрибуты которого не прочитаны (например, битая ссылка), тоже
+                         */
+                        if(entry.equals(directory) && !(e instanceof AccessDeniedException)) {
+                            System.out.println("> Ошибка в ходе просмотра директории");
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                System.out.println("> Ошибка в ходе просмотра директории");
+            }
+        }
+
+        /**
+         * Добавление пути в очередь с ожиданием свободного места
+         * @param entry путь к файлу
+         */
+        private void put(Path entry) {
+            try {
+                console.addListElement(entry);
+            } catch (InterruptedException e) {
+                throw new InterruptedRuntimeException(e);
+            }
+        }
     }
 
     /**
-     * Оповещение наблюдателей об изменении состояния
+     * Передача прерывания из обработчика элементов директории в задачу обхода
      */
-    private void updateObservers() {
-        for(Observable observable : observables) {
-            observable.update();
+    private static class InterruptedRuntimeException extends RuntimeException {
+        InterruptedRuntimeException(InterruptedException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized InterruptedException getCause() {
+            return (InterruptedException) super.getCause();
         }
     }
 }
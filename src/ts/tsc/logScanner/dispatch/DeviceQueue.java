@@ -0,0 +1,273 @@
+package ts.tsc.logScanner.dispatch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Очередь файлов с раздельным планированием чтения по устройствам (параметр io=device).
+ *
+ * Файлы группируются по файловому хранилищу ({@link FileStore}), у каждого устройства своя очередь,
+ * упорядоченная по пути (файлы одной директории обычно лежат на диске рядом), и свое ограничение
+ * количества одновременно читаемых файлов. Поток поиска получает файл устройства, у которого
+ * ограничение еще не достигнуто, поэтому медленный диск не занимает все потоки, а диски с вращением
+ * не получают одновременных запросов к разным местам. Размер очереди тоже ограничен для каждого устройства:
+ * обход директории ожидает места, только если заполнена очередь устройства добавляемого файла,
+ * поэтому очередь медленного диска не вытесняет файлы других устройств.
+ *
+ * Начальное ограничение зависит от типа устройства (в Linux - по /sys/class/block), затем оно
+ * подбирается по измеренной скорости чтения: если после изменения ограничения скорость упала
+ * или ограничение достигло 1 или наибольшего значения, направление изменения меняется на обратное
+ */
+public class DeviceQueue implements FileQueueInterface {
+
+    private static final long WINDOW_NANOS = 500_000_000L; //Интервал измерения скорости устройства
+    private static final int WINDOW_FILES = 4;              //Минимальное количество файлов в интервале
+    private static final double TOLERANCE = 0.1;            //Падение скорости, после которого направление меняется
+    private static final Object UNKNOWN = new Object();     //Ключ файлов, хранилище которых не определено
+
+    private final int capacity;                             //Максимальное количество путей в очереди устройства
+    private final int maxLimit;                             //Наибольшее ограничение устройства
+    private final Object lock = new Object();
+    private final Map<Object, Device> devices = new HashMap<>();    //Устройства по хранилищу
+    private final List<Device> order = new ArrayList<>();   //Устройства в порядке обнаружения
+    private final Map<Path, Device> reading = new HashMap<>();      //Файлы, читаемые потоками поиска
+    private final Map<Path, Object> stores = new ConcurrentHashMap<>();     //Хранилища по директориям
+    private int size = 0;                                   //Количество путей во всех очередях
+    private int next = 0;                                   //Устройство, с которого начинается выбор файла
+    private volatile boolean closed = false;
+
+    /**
+     * @param capacity максимальное количество путей в очереди одного устройства
+     * @param maxLimit наибольшее количество файлов одного устройства, читаемых одновременно
+     */
+    public DeviceQueue(int capacity, int maxLimit) {
+        if(capacity < 1 || maxLimit < 1) {
+            throw new IllegalArgumentException("Размер очереди и ограничение устройства должны быть больше нуля");
+        }
+        this.capacity = capacity;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public void put(Path path) throws InterruptedException {
+        Object store = storeOf(path);
+        synchronized (lock) {
+            Device device = devices.get(store);
+            if(device == null) {
+                device = new Device(store);
+                devices.put(store, device);
+                order.add(device);
+            }
+            while (device.files.size() >= capacity && !closed) {
+                lock.wait();
+            }
+            if(closed) {
+                throw new IllegalStateException("Очередь файлов закрыта");
+            }
+            device.files.add(path);
+            size++;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public Path take() throws InterruptedException {
+        synchronized (lock) {
+            while (true) {
+                Device device = nextReady();
+                if(device != null) {
+                    Path path = device.files.poll();
+                    device.active++;
+                    size--;
+                    reading.put(path, device);
+                    lock.notifyAll();
+                    return path;
+                }
+                if(closed && size == 0) {
+                    return null;
+                }
+                //Файлы есть только у устройств, достигших ограничения, или очередь пуста
+                lock.wait();
+            }
+        }
+    }
+
+    @Override
+    public void done(Path path, long bytes, long nanos) {
+        synchronized (lock) {
+            Device device = reading.remove(path);
+            if(device == null) {
+                return;
+            }
+            device.active--;
+            device.record(bytes);
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        synchronized (lock) {
+            return closed && size == 0;
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    /**
+     * @return ограничение и объем прочитанных данных каждого устройства
+     */
+    public String summary() {
+        StringBuilder line = new StringBuilder("Устройства:");
+        synchronized (lock) {
+            for(Device device : order) {
+                line.append(String.format(Locale.ROOT, " %s - одновременно файлов %d, прочитано %.1f МБ;",
+                        device.name, device.limit, device.totalBytes / (1024.0 * 1024)));
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Выбор устройства по кругу, чтобы файлы всех устройств читались одновременно
+     * @return устройство с файлами в очереди и свободным местом; null - если такого нет
+     */
+    private Device nextReady() {
+        for(int iterator = 0; iterator < order.size(); iterator++) {
+            Device device = order.get((next + iterator) % order.size());
+            if(!device.files.isEmpty() && device.active < device.limit) {
+                next = (next + iterator + 1) % order.size();
+                return device;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Хранилище файла; определяется один раз для каждой директории
+     */
+    private Object storeOf(Path path) {
+        Path directory = path.toAbsolutePath().getParent();
+        if(directory == null) {
+            return UNKNOWN;
+        }
+        return stores.computeIfAbsent(directory, dir -> {
+            try {
+                return Files.getFileStore(dir);
+            } catch (IOException e) {
+                return UNKNOWN;
+            }
+        });
+    }
+
+    /**
+     * Определение диска с вращением по имени устройства хранилища (только в Linux)
+     * @return true - диск с вращением, false - твердотельный; null - не удалось определить
+     */
+    private static Boolean rotational(Object store) {
+        if(!(store instanceof FileStore)) {
+            return null;
+        }
+        String name = ((FileStore) store).name();
+        if(!name.startsWith("/dev/")) {
+            return null;
+        }
+        try {
+            //Раздел (sda1) описан внутри директории диска (sda), параметры очереди есть только у диска
+            Path block = Paths.get("/sys/class/block", name.substring("/dev/".length())).toRealPath();
+            for(Path dir = block; dir != null && dir.startsWith("/sys"); dir = dir.getParent()) {
+                Path flag = dir.resolve("queue").resolve("rotational");
+                if(Files.exists(flag)) {
+                    return new String(Files.readAllBytes(flag), StandardCharsets.US_ASCII).trim().equals("1");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            //Нет сведений об устройстве
+        }
+        return null;
+    }
+
+    /**
+     * Очередь и ограничение одного устройства. Изменяется только под общей блокировкой
+     */
+    private class Device {
+        private final String name;
+        private final PriorityQueue<Path> files = new PriorityQueue<>();   //Файлы в порядке путей
+        private int active = 0;                 //Количество читаемых файлов
+        private int limit;                      //Наибольшее количество одновременно читаемых файлов
+        private int direction = 1;              //Направление следующего изменения ограничения
+        private double lastRate = 0;            //Скорость в предыдущем интервале, байт/нс
+        private long windowStart = System.nanoTime();
+        private long windowBytes = 0;
+        private int windowFiles = 0;
+        private long totalBytes = 0;
+
+        Device(Object store) {
+            this.name = store instanceof FileStore ? ((FileStore) store).name() : "?";
+            Boolean spinning = rotational(store);
+            if(spinning == null) {
+                limit = Math.max(1, maxLimit / 2);
+            } else {
+                limit = spinning ? 1 : maxLimit;
+            }
+        }
+
+        /**
+         * Учет прочитанного файла и изменение ограничения в конце интервала измерения.
+         * Ограничение меняется, только если у устройства остались файлы в очереди:
+         * иначе скорость зависит от обхода директории, а не от ограничения
+         */
+        void record(long bytes) {
+            windowBytes += bytes;
+            totalBytes += bytes;
+            windowFiles++;
+            long now = System.nanoTime();
+            long elapsed = now - windowStart;
+            if(elapsed < WINDOW_NANOS || windowFiles < WINDOW_FILES) {
+                return;
+            }
+            double rate = windowBytes / (double) elapsed;
+            if(!files.isEmpty()) {
+                if(lastRate > 0 && rate < lastRate * (1 - TOLERANCE)) {
+                    direction = -direction;
+                }
+                int step = Math.max(1, limit / 4);
+                int changed = Math.max(1, Math.min(maxLimit, limit + direction * step));
+                if(changed == limit) {
+                    //Ограничение достигло границы: проверяется изменение в обратном направлении
+                    direction = -direction;
+                    changed = Math.max(1, Math.min(maxLimit, limit + direction * step));
+                }
+                limit = changed;
+                lastRate = rate;
+            }
+            windowStart = now;
+            windowBytes = 0;
+            windowFiles = 0;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ts.tsc.logScanner.dispatch;
+
+import java.nio.file.Path;
+
+/**
+ * Интерфейс очереди путей одного поиска между обходом директории и потоками поиска
+ */
+public interface DispatchInterface {
+
+    /**
+     * Получение элемента из начала очереди.
+     * Если очередь пуста, ожидание добавления элемента или окончания обхода директории
+     *
+     * @return Путь к файлу; null - если обход директории закончен и очередь пуста или поиск отменен
+     */
+    Path popListElement();
+
+    /**
+     * Окончание просмотра файла, полученного из очереди
+     *
+     * @param path Путь к файлу
+     * @param bytes Количество прочитанных байт
+     * @param nanos Время просмотра файла
+     */
+    default void fileDone(Path path, long bytes, long nanos) {
+    }
+
+    /**
+     * Добавление элемента. Если очередь заполнена, ожидание освобождения места
+     *
+     * @param path Путь к файлу
+     * @throws InterruptedException если ожидание было прервано или поиск отменен
+     */
+    void addListElement(Path path) throws InterruptedException;
+
+    /**
+     * Проверка завершения поиска файло в директории
+     *
+     * @return true - поиск закончен, иначе - false
+     */
+    boolean isSearchFinished();
+
+    /**
+     * Установка признака окончания обхода директории:
+     * новых элементов в очереди больше не будет
+     */
+    void setDirEndTrue();
+}
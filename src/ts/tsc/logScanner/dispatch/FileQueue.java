@@ -0,0 +1,109 @@
+package ts.tsc.logScanner.dispatch;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ограниченная очередь путей к файлам между обходчиком директории и потоками поиска.
+ *
+ * Сами пути хранятся в неблокирующей {@link ConcurrentLinkedQueue}, а ограничение размера
+ * и ожидание реализованы двумя семафорами (свободные места и доступные элементы),
+ * поэтому производитель и потребители не конкурируют за один общий монитор.
+ * Если очередь заполнена, обходчик директории ждет, пока потоки поиска не разберут файлы.
+ */
+public class FileQueue implements FileQueueInterface {
+
+    private final ConcurrentLinkedQueue<Path> queue = new ConcurrentLinkedQueue<>();
+    private final int capacity;                                 //Максимальное количество путей в очереди
+    private final Semaphore freeSlots;                          //Количество свободных мест в очереди
+    private final Semaphore available = new Semaphore(0);  //Количество элементов, доступных для извлечения
+    private volatile boolean closed = false;                    //Признак окончания потока путей
+
+    /**
+     * @param capacity максимальное количество путей в очереди
+     */
+    public FileQueue(int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Размер очереди должен быть больше нуля");
+        }
+        this.capacity = capacity;
+        this.freeSlots = new Semaphore(capacity);
+    }
+
+    /**
+     * Добавление пути в конец очереди. Если очередь заполнена, ожидание свободного места
+     * @param path путь к файлу
+     * @throws InterruptedException если ожидание было прервано
+     * @throws IllegalStateException если очередь уже закрыта
+     */
+    @Override
+    public void put(Path path) throws InterruptedException {
+        if(closed) {
+            throw new IllegalStateException("Очередь файлов закрыта");
+        }
+        freeSlots.acquire();
+        if(closed) {
+            //Разрешение выдано закрытием очереди, возвращаем его следующему ожидающему производителю
+            freeSlots.release();
+            throw new IllegalStateException("Очередь файлов закрыта");
+        }
+        queue.offer(path);
+        available.release();
+    }
+
+    /**
+     * Извлечение пути из начала очереди. Если очередь пуста, ожидание нового элемента
+     * или закрытия очереди
+     * @return путь к файлу; null - если очередь закрыта и все элементы разобраны
+     * @throws InterruptedException если ожидание было прервано
+     */
+    @Override
+    public Path take() throws InterruptedException {
+        available.acquire();
+        Path path = queue.poll();
+        if(path == null) {
+            /*
+             * Разрешение без элемента выдается только при закрытии очереди,
+             * возвращаем его, чтобы проснулся следующий ожидающий поток
+             */
+            available.release();
+            return null;
+        }
+        freeSlots.release();
+        return path;
+    }
+
+    /**
+     * Закрытие очереди: новых элементов не будет, ожидающие потоки
+     * после разбора оставшихся путей получат null.
+     * Производители, ожидающие свободного места, просыпаются и получают {@link IllegalStateException}
+     */
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        available.release();
+        freeSlots.release(capacity);
+    }
+
+    /**
+     * @return true - если очередь закрыта и пуста; иначе - false
+     */
+    @Override
+    public boolean isFinished() {
+        return closed && queue.isEmpty();
+    }
+
+    /**
+     * @return приблизительное количество путей в очереди (без обхода элементов)
+     */
+    @Override
+    public int size() {
+        //После закрытия свободные места выданы ожидающим производителям, поэтому считаются доступные элементы
+        int items = available.availablePermits();
+        return closed ? Math.max(0, items - 1) : items;
+    }
+}
@@ -0,0 +1,49 @@
+package ts.tsc.logScanner.dispatch;
+
+import java.nio.file.Path;
+
+/**
+ * Интерфейс ограниченной очереди путей к файлам между обходом директории и потоками поиска
+ */
+public interface FileQueueInterface {
+
+    /**
+     * Добавление пути. Если очередь заполнена, ожидание свободного места
+     * @param path путь к файлу
+     * @throws InterruptedException если ожидание было прервано
+     * @throws IllegalStateException если очередь уже закрыта
+     */
+    void put(Path path) throws InterruptedException;
+
+    /**
+     * Извлечение пути. Если подходящих путей нет, ожидание нового элемента или закрытия очереди
+     * @return путь к файлу; null - если очередь закрыта и все элементы разобраны
+     * @throws InterruptedException если ожидание было прервано
+     */
+    Path take() throws InterruptedException;
+
+    /**
+     * Окончание просмотра файла, полученного из очереди
+     * @param path путь к файлу
+     * @param bytes количество прочитанных байт
+     * @param nanos время просмотра файла
+     */
+    default void done(Path path, long bytes, long nanos) {
+    }
+
+    /**
+     * Закрытие очереди: новых элементов не будет, ожидающие потоки
+     * после разбора оставшихся путей получат null
+     */
+    void close();
+
+    /**
+     * @return true - если очередь закрыта и пуста; иначе - false
+     */
+    boolean isFinished();
+
+    /**
+     * @return приблизительное количество путей в очереди
+     */
+    int size();
+}
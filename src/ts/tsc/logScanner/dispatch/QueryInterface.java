@@ -0,0 +1,24 @@
+package ts.tsc.logScanner.dispatch;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Интерфейс выполняющегося запроса: поиска на этом узле или распределенного поиска
+ */
+public interface QueryInterface {
+
+    /**
+     * @return номер запроса
+     */
+    int getId();
+
+    /**
+     * Отмена запроса
+     */
+    void cancel();
+
+    /**
+     * @return результат запроса: true - если была найдена хотя бы одна строка
+     */
+    CompletableFuture<Boolean> getResult();
+}
@@ -0,0 +1,552 @@
+package ts.tsc.logScanner.dispatch;
+
+import ts.tsc.logScanner.aggregate.Aggregation;
+import ts.tsc.logScanner.cache.ResultCache;
+import ts.tsc.logScanner.checkpoint.CheckpointStore;
+import ts.tsc.logScanner.directory.CheckDirectory;
+import ts.tsc.logScanner.fileParser.fileParser;
+import ts.tsc.logScanner.fileParser.searcher.ByteMatcher;
+import ts.tsc.logScanner.fileParser.searcher.EveryLineMatcher;
+import ts.tsc.logScanner.fileParser.searcher.HorspoolMatcher;
+import ts.tsc.logScanner.fileParser.searcher.LineFilter;
+import ts.tsc.logScanner.fileParser.searcher.RegexLineFilter;
+import ts.tsc.logScanner.index.TrigramIndex;
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.InputOptions;
+import ts.tsc.logScanner.metrics.ProgressReporter;
+import ts.tsc.logScanner.metrics.ScanMetrics;
+import ts.tsc.logScanner.output.ResultListener;
+import ts.tsc.logScanner.output.ResultWriter;
+import ts.tsc.logScanner.output.SortedOutput;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Состояние одного запроса: очередь файлов, поток записи, позиции просмотра, индекс и счетчики.
+ *
+ * Несколько запросов могут выполняться одновременно в общем {@link WorkerPool},
+ * каждый со своим состоянием. Запрос можно отменить: обход директории прерывается,
+ * потоки поиска заканчивают текущий файл и больше не берут файлы из очереди.
+ * При ограничении количества найденных строк (limit) запрос останавливается так же,
+ * но потоки поиска прекращают и просмотр текущего файла.
+ *
+ * В режиме виртуальных потоков (exec=virtual) количество потоков запроса - это количество
+ * файлов, читаемых одновременно, а поиск в прочитанных данных одновременно выполняют
+ * не больше потоков, чем задано параметром cpu
+ */
+public class SearchTask implements DispatchInterface, QueryInterface {
+
+    private static final int QUEUE_CAPACITY = 4096;     //Максимальное количество путей в очереди
+    private static final long FOLLOW_FLUSH_MS = 200;    //Задержка записи найденных строк при наблюдении
+    private static final int AUXILIARY_THREADS = 3;     //Потоки записи, прогресса и обхода директории
+
+    private final int id;                               //Номер запроса
+    private final InputLine inputLine;
+    private final FileQueueInterface filesList;         //Очередь файлов: общая или по устройствам
+    private final ResultWriter writer;                  //Единственный поток записи в выходной файл
+    private final CheckpointStore checkpoints;          //Позиции просмотра файлов; null - просмотр целиком
+    private final TrigramIndex index;                   //Индекс триграмм; null - поиск без индекса
+    private final ResultCache cache;                    //Кэш результатов по файлам; null - не используется
+    private final ScanMetrics metrics = new ScanMetrics();
+    private final ByteMatcher matcher;                  //Поиск подстрок, общий для всех потоков запроса
+    private final LineFilter filter;                    //Проверка регулярным выражением; null - не используется
+    private final int[][] indexQuery;                   //Триграммы для проверки по индексу; null - индекс не поможет
+    private final Aggregation aggregation;              //Подсчет найденных строк; null - строки выводятся
+    private final SortedOutput sortedOutput;            //Упорядоченный вывод; null - в порядке обработки файлов
+    private final AtomicLong matchesLeft;               //Остаток ограничения найденных строк; null - без ограничения
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+    private volatile boolean cancelled = false;
+    private volatile boolean limitReached = false;      //Найдено заданное количество строк, поиск остановлен
+    private volatile Future<?> walker;                  //Обход директории
+    private volatile boolean virtual = false;           //Поиск выполняется в виртуальных потоках
+    private Semaphore matchPermits;                     //Разрешения на поиск в виртуальном режиме
+    private ProgressReporter reporter;
+
+    /**
+     * @param id номер запроса
+     * @param inputLine параметры поиска
+     */
+    public SearchTask(int id, InputLine inputLine) {
+        this(id, inputLine, null);
+    }
+
+    /**
+     * @param id номер запроса
+     * @param inputLine параметры поиска
+     * @param listener обработчик найденных строк; null - строки записываются в выходной файл,
+     *                 иначе выходной файл используется только как основа путей позиций, индекса
+     *                 и временных сегментов
+     */
+    public SearchTask(int id, InputLine inputLine, ResultListener listener) {
+        this.id = id;
+        this.inputLine = inputLine;
+        InputOptions options = inputLine.getOptions();
+        //Строки контекста могут лежать в блоках, пропускаемых по индексу, поэтому с контекстом индекс не используется
+        if(options.getMatchMode() == InputOptions.MatchMode.REGEX) {
+            /*
+             * Регулярное выражение проверяется только в строках, содержащих подстроку prefilter,
+             * а если она не задана - в каждой строке. По индексу можно отобрать блоки только по подстроке
+             */
+            String prefilter = options.getPrefilter();
+            this.matcher = prefilter != null ? new HorspoolMatcher(prefilter) : new EveryLineMatcher();
+            this.filter = new RegexLineFilter(Pattern.compile(inputLine.getErrorMessage().trim()));
+            this.indexQuery = prefilter != null && !options.hasContext()
+                    ? TrigramIndex.compile(new String[] {prefilter}) : null;
+        } else {
+            this.matcher = ByteMatcher.of(inputLine.getPatterns());
+            this.filter = null;
+            this.indexQuery = options.hasContext() ? null : TrigramIndex.compile(inputLine.getPatterns());
+        }
+        this.aggregation = options.getAggregate() != null ? new Aggregation(options.getAggregate()) : null;
+        this.matchesLeft = options.getMatchLimit() > 0 ? new AtomicLong(options.getMatchLimit()) : null;
+        InputOptions.Mode mode = options.getMode();
+        Path output = Paths.get(inputLine.getOutputPath());
+        //При подсчете строки не выводятся, поэтому упорядочивать нечего
+        this.sortedOutput = options.isSortedOutput() && aggregation == null
+                ? new SortedOutput(output.toAbsolutePath().getParent())
+                : null;
+        //Очереди устройств выдают файлы не в порядке обхода, поэтому вместе с упорядоченным выводом не задаются
+        this.filesList = options.isDeviceScheduling()
+                ? new DeviceQueue(QUEUE_CAPACITY, inputLine.getNumberOfThreads())
+                : new FileQueue(QUEUE_CAPACITY);
+
+        //При наблюдении строки записываются в файл не позднее чем через 200 мс после обнаружения
+        if(listener != null) {
+            this.writer = new ResultWriter(listener);
+        } else {
+            this.writer = mode == InputOptions.Mode.FOLLOW
+                    ? new ResultWriter(output, FOLLOW_FLUSH_MS)
+                    : new ResultWriter(output);
+        }
+
+        if(mode == InputOptions.Mode.INCREMENTAL) {
+            //Позиции, с которых продолжается просмотр файлов в инкрементальном режиме
+            checkpoints = new CheckpointStore(Paths.get(inputLine.getOutputPath() + ".checkpoint"),
+                    inputLine.getErrorMessage() + ";" + String.join(" ", inputLine.getExtensions())
+                            + ";" + options.getMatchMode() + ";" + options.getPrefilter()
+                            + ";" + options.getTimeRange());
+        } else if(mode == InputOptions.Mode.FOLLOW) {
+            //Позиции просмотра хранятся только в памяти на время наблюдения
+            checkpoints = new CheckpointStore();
+        } else {
+            checkpoints = null;
+        }
+
+        //Индекс триграмм хранится рядом с выходным файлом и не зависит от запроса
+        index = options.isIndexed() && mode != InputOptions.Mode.FOLLOW
+                ? new TrigramIndex(Paths.get(inputLine.getOutputPath() + ".index"))
+                : null;
+
+        //Кэш хранится рядом с выходным файлом и содержит записи разных запросов
+        cache = options.isCached() && mode == InputOptions.Mode.FULL && aggregation == null
+                ? new ResultCache(Paths.get(inputLine.getOutputPath() + ".cache"), cacheQuery(inputLine),
+                        options.getCacheSize())
+                : null;
+    }
+
+    /**
+     * Текст запроса для кэша результатов: все параметры, от которых зависят найденные строки файла.
+     * Подстроки ищутся без учета регистра, поэтому единственная подстрока приводится к нижнему регистру;
+     * при нескольких подстроках их текст выводится в найденных строках и сохраняется как есть
+     */
+    private static String cacheQuery(InputLine inputLine) {
+        InputOptions options = inputLine.getOptions();
+        String[] patterns = inputLine.getPatterns();
+        String text;
+        if(options.getMatchMode() == InputOptions.MatchMode.REGEX) {
+            text = patterns[0] + ";" + (options.getPrefilter() == null
+                    ? "" : options.getPrefilter().toLowerCase(Locale.ROOT));
+        } else {
+            text = patterns.length == 1 ? patterns[0].toLowerCase(Locale.ROOT) : String.join("|", patterns);
+        }
+        String[] extensions = inputLine.getExtensions().clone();
+        Arrays.sort(extensions);
+        return options.getMatchMode() + ";" + text + ";" + String.join(" ", extensions)
+                + ";" + options.getBeforeContext() + ";" + options.getAfterContext()
+                + ";" + options.getTimeRange() + ";" + options.getFileMatchLimit() + ";" + options.isFilesOnly();
+    }
+
+    /**
+     * Запуск обхода директории и потоков поиска в пуле. Запрос допускается, только если в пуле
+     * достаточно свободных потоков; иначе ни один поток запроса не запускается
+     * @param pool общий пул потоков
+     * @return результат запроса: true - если была найдена хотя бы одна строка
+     * @throws IllegalStateException потоков запроса вместе с уже занятыми больше предела пула
+     */
+    public CompletableFuture<Boolean> start(WorkerPool pool) {
+        int threads = inputLine.getNumberOfThreads();
+        boolean useVirtual = inputLine.getOptions().isVirtualThreads() && pool.supportsVirtualThreads();
+        int reserved = useVirtual ? 0 : threads;
+        //Параллельный обход директории выполняется собственным пулом потоков
+        int auxiliary = AUXILIARY_THREADS + (inputLine.getOptions().isParallelWalk()
+                && inputLine.getOptions().getShard() == null ? CheckDirectory.WALK_THREADS : 0);
+        if(!pool.tryReserve(reserved, auxiliary)) {
+            throw new IllegalStateException("Недостаточно свободных потоков поиска: "
+                    + pool.describeUsage(reserved, auxiliary));
+        }
+        if(inputLine.getOptions().isVirtualThreads()) {
+            if(useVirtual) {
+                virtual = true;
+                matchPermits = new Semaphore(inputLine.getOptions().getCpuLimit());
+            } else {
+                System.out.println("> Виртуальные потоки поддерживаются начиная с Java 21, " +
+                        "поиск выполняется в обычных потоках");
+            }
+        }
+
+        if(checkpoints != null) {
+            checkpoints.load();
+        }
+        if(index != null) {
+            index.load();
+        }
+        if(cache != null) {
+            cache.load();
+        }
+        writer.start();
+
+        //Периодический вывод прогресса в консоль
+        reporter = new ProgressReporter(metrics, "[Запрос " + id + "] ", filesList::size,
+                writer::pendingBatches, inputLine.getOptions().getProgressInterval());
+        reporter.start();
+
+        walker = pool.submitWalker(new CheckDirectory(this, inputLine));
+
+        //Установка времени начала поиска
+        long startTime = System.nanoTime();
+
+        CompletableFuture<?>[] parsers = new CompletableFuture<?>[threads];
+        for(int iterator = 0; iterator < threads; iterator++) {
+            fileParser parser = new fileParser(this, iterator+1);
+            parsers[iterator] = virtual ? pool.submitVirtual(parser) : pool.submit(parser);
+        }
+        CompletableFuture.allOf(parsers).whenComplete((ignored, error) -> {
+            pool.release(reserved, auxiliary);
+            if(error != null) {
+                System.out.println("> Ошибка в ходе работы потоков");
+            }
+            finish(System.nanoTime() - startTime);
+        });
+        return result;
+    }
+
+    /**
+     * Отмена запроса
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+        stopScan();
+    }
+
+    /**
+     * Учет найденных строк при ограничении их количества в запросе (limit). Когда ограничение
+     * исчерпано, обход директории прерывается, а потоки поиска больше не берут файлы из очереди
+     * @param count количество строк
+     * @return true - строки можно выводить; false - ограничение будет превышено
+     */
+    public boolean acceptMatches(int count) {
+        if(matchesLeft == null) {
+            return true;
+        }
+        while (true) {
+            long left = matchesLeft.get();
+            if(left < count) {
+                if(left == 0) {
+                    stopByLimit();
+                }
+                return false;
+            }
+            if(matchesLeft.compareAndSet(left, left - count)) {
+                if(left == count) {
+                    stopByLimit();
+                }
+                return true;
+            }
+        }
+    }
+
+    private void stopByLimit() {
+        if(!limitReached) {
+            limitReached = true;
+            stopScan();
+        }
+    }
+
+    /**
+     * Прерывание обхода директории и закрытие очереди файлов
+     */
+    private void stopScan() {
+        Future<?> walkerFuture = walker;
+        if(walkerFuture != null) {
+            walkerFuture.cancel(true);
+        }
+        filesList.close();
+    }
+
+    /**
+     * Окончание запроса после завершения всех потоков поиска
+     * @param timeSpent время выполнения поиска, нс
+     */
+    private void finish(double timeSpent) {
+        //В режиме подсчета вместо найденных строк записывается итоговая таблица
+        if(aggregation != null) {
+            writer.submit(aggregation.summary());
+        }
+        if(sortedOutput != null && writer.hasListener()) {
+            //Обработчику упорядоченные строки передаются через объединенный сегмент
+            submitMerged();
+        }
+        //Запись оставшихся строк и закрытие выходного файла
+        writer.close();
+        reporter.stop();
+        boolean found = writer.isWritten();
+        if(sortedOutput != null && !writer.hasListener()) {
+            //Слияние упорядоченных сегментов потоков в выходной файл
+            found = sortedOutput.merge(Paths.get(inputLine.getOutputPath())) > 0 || found;
+        }
+        if(checkpoints != null) {
+            checkpoints.save();
+        }
+        if(index != null) {
+            index.save();
+        }
+        if(cache != null) {
+            cache.save();
+        }
+
+        //Итоговая статистика поиска
+        if(inputLine.getOptions().getProgressInterval() > 0) {
+            System.out.println("> [Запрос " + id + "] " + metrics.progressLine(0, 0));
+            if(filesList instanceof DeviceQueue) {
+                System.out.println("> [Запрос " + id + "] " + ((DeviceQueue) filesList).summary());
+            }
+            if(cache != null) {
+                System.out.println("> [Запрос " + id + "] Кэш результатов: файлов из кэша " + cache.getHits()
+                        + ", просмотрено " + cache.getMisses());
+            }
+        }
+        if(inputLine.getOptions().getStatsPath() != null) {
+            metrics.writeJson(Paths.get(inputLine.getOptions().getStatsPath()));
+            System.out.println("> Статистика поиска записана в файл " + inputLine.getOptions().getStatsPath());
+        }
+        if(cancelled) {
+            System.out.println("> Запрос " + id + " отменен");
+        } else if(limitReached) {
+            System.out.println("> Запрос " + id + ": найдено заданное количество строк (limit="
+                    + inputLine.getOptions().getMatchLimit() + "), поиск остановлен досрочно");
+        }
+        /*
+         * Результат фрагмента распределенного поиска передается координатору, итог записывает координатор,
+         * а при передаче строк обработчику итог получает вызывающий код
+         */
+        if(inputLine.getOptions().getShard() == null && !writer.hasListener()) {
+            writeSummary(inputLine, found, timeSpent);
+        }
+        result.complete(found);
+    }
+
+    /**
+     * Слияние упорядоченных сегментов потоков во временный сегмент и передача его потоку записи
+     */
+    private void submitMerged() {
+        Path output = Paths.get(inputLine.getOutputPath()).toAbsolutePath();
+        try {
+            Path merged = Files.createTempFile(output.getParent(), ".logscanner-", ".segment");
+            sortedOutput.merge(merged);
+            writer.submitSegment(merged);
+        } catch (IOException e) {
+            System.out.println("> Ошибка в ходе упорядочивания результатов в директории " + output.getParent());
+        }
+    }
+
+    /**
+     * Запись времени поиска в конец выходного файла и вывод итога запроса в консоль
+     * @param inputLine параметры поиска
+     * @param found true - если была найдена хотя бы одна строка
+     * @param timeSpent время выполнения поиска, нс
+     */
+    public static void writeSummary(InputLine inputLine, boolean found, double timeSpent) {
+        //Запись в файл списка строк, если они были найдены и файл существует
+        File file = new File(inputLine.getOutputPath());
+        if(file.exists() && found) {
+            try(BufferedWriter writer = Files.newBufferedWriter(Paths.get(inputLine.getOutputPath()),
+                    Charset.forName("UTF-8"), StandardOpenOption.APPEND)){
+                writer.newLine();
+                String time = "Поиск длился всего: " + timeSpent/1000000000 + " секунд";
+                writer.write(time);
+                writer.newLine();
+                writer.newLine();
+                System.out.println("> Данные записаны в файл " + file);
+            } catch(IOException ex){
+                System.out.println("> Ошибка в ходе записи в файл");
+                ex.printStackTrace();
+            }
+        }
+        if(!found) {
+            System.out.println("> В указанной директории не было найдено файлов, содержащих данную подстроку "
+                    + inputLine.getErrorMessage());
+        }
+        if(!file.exists() && found) {
+            System.out.println("> Выходной файл с результатами поиска не найден, возможно он был удален");
+        }
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    public InputLine getInputLine() {
+        return inputLine;
+    }
+
+    public ResultWriter getWriter() {
+        return writer;
+    }
+
+    public CheckpointStore getCheckpoints() {
+        return checkpoints;
+    }
+
+    public TrigramIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return кэш результатов по файлам; null - файлы всегда просматриваются
+     */
+    public ResultCache getCache() {
+        return cache;
+    }
+
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return подсчет найденных строк; null - найденные строки выводятся в файл
+     */
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * @return упорядоченный вывод; null - строки выводятся в порядке обработки файлов
+     */
+    public SortedOutput getSortedOutput() {
+        return sortedOutput;
+    }
+
+    public ByteMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * @return проверка найденных строк регулярным выражением; null - не используется
+     */
+    public LineFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return триграммы для отбора блоков по индексу; null - индекс не может помочь
+     */
+    public int[][] getIndexQuery() {
+        return indexQuery;
+    }
+
+    /**
+     * @return true - если поиск выполняется в виртуальных потоках
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return разрешения на поиск в прочитанных данных; null - без ограничения
+     */
+    public Semaphore getMatchPermits() {
+        return matchPermits;
+    }
+
+    /**
+     * @return результат запроса: true - если была найдена хотя бы одна строка
+     */
+    @Override
+    public CompletableFuture<Boolean> getResult() {
+        return result;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true - если найдено заданное количество строк и просмотр файлов нужно прекратить
+     */
+    public boolean isLimitReached() {
+        return limitReached;
+    }
+
+    @Override
+    public Path popListElement() {
+        if(cancelled || limitReached) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            return filesList.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            metrics.workerWaited(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void fileDone(Path path, long bytes, long nanos) {
+        filesList.done(path, bytes, nanos);
+    }
+
+    @Override
+    public void addListElement(Path path) throws InterruptedException {
+        if(cancelled || limitReached) {
+            throw new InterruptedException();
+        }
+        long start = System.nanoTime();
+        try {
+            filesList.put(path);
+        } catch (IllegalStateException e) {
+            //Очередь закрыта отменой запроса
+            throw new InterruptedException();
+        }
+        metrics.fileQueued(System.nanoTime() - start);
+    }
+
+    @Override
+    public boolean isSearchFinished() {
+        return filesList.isFinished();
+    }
+
+    @Override
+    public void setDirEndTrue() {
+        filesList.close();
+    }
+}
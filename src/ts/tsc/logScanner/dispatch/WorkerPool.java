@@ -0,0 +1,190 @@
+package ts.tsc.logScanner.dispatch;
+
+import ts.tsc.logScanner.fileParser.searcher.ChunkedFileSearcher;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул потоков поиска, используемый всеми запросами за время работы программы.
+ *
+ * Размер пула равен сумме потоков, зарезервированных выполняющимися запросами:
+ * при запуске запроса пул увеличивается, после окончания - уменьшается, а простаивающие
+ * потоки завершаются не сразу, а через заданное время, поэтому следующий запрос
+ * использует уже созданные потоки. Обход директорий выполняется отдельными потоками,
+ * чтобы ожидание места в очереди не занимало потоки поиска.
+ *
+ * Общее количество потоков ограничено: запрос занимает свои потоки поиска и вспомогательные потоки
+ * (запись результата, прогресс, обход директории), и если их сумма с потоками уже выполняющихся
+ * запросов превышает предел, запрос не допускается ({@link #tryReserve}) и должен быть отклонен.
+ * Потоки общего пула поиска во фрагментах больших файлов ({@link ChunkedFileSearcher#POOL_THREADS})
+ * существуют все время работы программы, поэтому считаются занятыми с самого начала.
+ *
+ * Если программа запущена на Java 21 и новее, доступны виртуальные потоки: каждая задача
+ * выполняется в отдельном виртуальном потоке. Чтение файла закрепляет поток-носитель, и JDK
+ * на время ожидания добавляет замещающие носители, но не больше jdk.virtualThreadScheduler.maxPoolSize
+ * (по умолчанию 256) - это и есть предел одновременных чтений с сетевого диска, его можно увеличить
+ * при запуске (-Djdk.virtualThreadScheduler.maxPoolSize=N). Исполнитель виртуальных потоков получается
+ * через отражение, чтобы программа собиралась и работала и на более ранних версиях Java
+ */
+public class WorkerPool {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;     //Время жизни простаивающего потока
+    //Наибольшее количество потоков всех запросов по умолчанию (задается свойством logscanner.maxThreads)
+    public static final int DEFAULT_MAX_THREADS = Integer.getInteger("logscanner.maxThreads",
+            Math.max(64, 8 * Runtime.getRuntime().availableProcessors()));
+
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService walkers;
+    private final ExecutorService virtual;                  //Виртуальные потоки; null - не поддерживаются
+    private final int maxThreads;                           //Наибольшее количество потоков всех запросов
+    private int reserved = 0;                               //Количество потоков поиска, занятых запросами
+    private int used = ChunkedFileSearcher.POOL_THREADS;   //Количество всех занятых потоков
+
+    public WorkerPool() {
+        this(DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * @param maxThreads наибольшее количество потоков всех выполняющихся запросов
+     */
+    public WorkerPool(int maxThreads) {
+        this.maxThreads = maxThreads;
+        this.workers = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonFactory("search-worker-"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.walkers = Executors.newCachedThreadPool(daemonFactory("directory-walker-"));
+        this.virtual = newVirtualExecutor();
+    }
+
+    /**
+     * Создание исполнителя, запускающего каждую задачу в новом виртуальном потоке
+     * @return исполнитель; null - если версия Java не поддерживает виртуальные потоки
+     */
+    private static ExecutorService newVirtualExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true - если доступны виртуальные потоки
+     */
+    public boolean supportsVirtualThreads() {
+        return virtual != null;
+    }
+
+    /**
+     * Допуск запроса: если потоков запроса вместе с уже занятыми не больше предела,
+     * пул увеличивается на количество потоков поиска запроса
+     * @param threads количество потоков поиска запроса в пуле (0 - поиск выполняется вне пула)
+     * @param auxiliary количество вспомогательных потоков запроса
+     * @return true - запрос допущен; false - потоков недостаточно, пул не изменен
+     */
+    public synchronized boolean tryReserve(int threads, int auxiliary) {
+        if(used + threads + auxiliary > maxThreads) {
+            return false;
+        }
+        if(threads > 0) {
+            resize(reserved + threads);
+            reserved += threads;
+        }
+        used += threads + auxiliary;
+        return true;
+    }
+
+    /**
+     * Уменьшение пула после окончания запроса
+     * @param threads количество потоков поиска запроса в пуле
+     * @param auxiliary количество вспомогательных потоков запроса
+     */
+    public synchronized void release(int threads, int auxiliary) {
+        used -= threads + auxiliary;
+        if(threads > 0) {
+            reserved -= threads;
+            resize(Math.max(reserved, 1));
+        }
+    }
+
+    /**
+     * @param threads количество потоков поиска запроса в пуле
+     * @param auxiliary количество вспомогательных потоков запроса
+     * @return описание занятых потоков для сообщения об отклоненном запросе
+     */
+    public synchronized String describeUsage(int threads, int auxiliary) {
+        return "запросу нужно потоков: " + (threads + auxiliary) + ", занято " + used + " из " + maxThreads;
+    }
+
+    /**
+     * Изменение размера пула. При увеличении сначала изменяется максимальный размер,
+     * при уменьшении - основной, чтобы основной размер не превышал максимальный
+     */
+    private void resize(int size) {
+        if(size > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(size);
+            workers.setCorePoolSize(size);
+        } else {
+            workers.setCorePoolSize(size);
+            workers.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * @param task задача поиска
+     * @return завершение задачи
+     */
+    public CompletableFuture<Void> submit(Runnable task) {
+        return CompletableFuture.runAsync(task, workers);
+    }
+
+    /**
+     * @param task задача поиска, большую часть времени ожидающая чтения
+     * @return завершение задачи
+     * @throws IllegalStateException если виртуальные потоки не поддерживаются
+     */
+    public CompletableFuture<Void> submitVirtual(Runnable task) {
+        if(virtual == null) {
+            throw new IllegalStateException("Виртуальные потоки не поддерживаются");
+        }
+        return CompletableFuture.runAsync(task, virtual);
+    }
+
+    /**
+     * @param task обход директории
+     * @return завершение обхода; отмена прерывает поток обхода
+     */
+    public Future<?> submitWalker(Runnable task) {
+        return walkers.submit(task);
+    }
+
+    /**
+     * Завершение работы пула после окончания выполняющихся задач
+     */
+    public void shutdown() {
+        workers.shutdown();
+        walkers.shutdown();
+        if(virtual != null) {
+            virtual.shutdown();
+        }
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,433 @@
+package ts.tsc.logScanner.distributed;
+
+import ts.tsc.logScanner.dispatch.QueryInterface;
+import ts.tsc.logScanner.dispatch.SearchTask;
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.output.ResultListener;
+import ts.tsc.logScanner.output.ResultWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Координатор распределенного поиска (параметр workers): начальная директория делится на фрагменты,
+ * которые просматриваются узлами {@link ScanWorker}, а найденные строки записываются в один выходной файл.
+ *
+ * Фрагменты - поддиректории первого уровня и файлы самой начальной директории. Дерево директорий
+ * координатора не используется: каждый узел после подключения сообщает фрагменты, которые есть в его дереве,
+ * и фрагмент передается только узлам, у которых он есть (фрагменты с одинаковым именем на разных узлах
+ * считаются одним фрагментом, например на общем сетевом диске). С каждым узлом
+ * открывается одно соединение, по которому узел получает следующий фрагмент из общей очереди,
+ * как только закончит предыдущий, поэтому быстрые узлы просматривают больше фрагментов.
+ * Строки фрагмента сохраняются во временный сегмент и передаются потоку записи только после
+ * получения всего результата. Если узел перестал отвечать или соединение разорвано, его сегмент удаляется,
+ * а фрагмент возвращается в очередь и просматривается другим узлом. Фрагмент, который узел не может
+ * просмотреть (ответ ERROR), также возвращается в очередь для других узлов и пропускается,
+ * только когда его не смогли просмотреть все подключенные узлы.
+ * При подключении узлу передается общий ключ (системное свойство logscanner.token
+ * или переменная окружения LOGSCANNER_TOKEN)
+ */
+public class DistributedSearch implements QueryInterface {
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;    //Время ожидания подключения к узлу
+    private static final long POLL_MS = 200;               //Ожидание фрагмента, возвращенного другим узлом
+    private static final int STREAM_BUFFER = 64 * 1024;
+
+    private final int id;                                   //Номер запроса
+    private final InputLine inputLine;
+    private final ResultWriter writer;                      //Единственный поток записи в выходной файл
+    private final Path spillDirectory;                      //Директория временных сегментов
+    private final LinkedBlockingDeque<String> shards = new LinkedBlockingDeque<>();    //Фрагменты для просмотра
+    private final AtomicInteger remaining = new AtomicInteger();   //Фрагменты, результат которых еще не получен
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private final Map<String, Set<String>> refused = new ConcurrentHashMap<>();    //Узлы, ответившие ERROR на фрагмент
+    private final Set<String> alive = ConcurrentHashMap.newKeySet();   //Узлы, соединение с которыми не закрыто
+    private final Map<String, List<String>> listed = new ConcurrentHashMap<>();   //Фрагменты в дереве каждого узла
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+    private CompletableFuture<?>[] listings;               //Получение списков фрагментов от узлов
+    private boolean queued = false;                         //Фрагменты всех узлов помещены в очередь
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param id номер запроса
+     * @param inputLine параметры поиска с адресами узлов
+     */
+    public DistributedSearch(int id, InputLine inputLine) {
+        this(id, inputLine, null);
+    }
+
+    /**
+     * @param id номер запроса
+     * @param inputLine параметры поиска с адресами узлов
+     * @param listener обработчик найденных строк; null - строки записываются в выходной файл,
+     *                 иначе в директории выходного файла создаются только временные сегменты
+     */
+    public DistributedSearch(int id, InputLine inputLine, ResultListener listener) {
+        this.id = id;
+        this.inputLine = inputLine;
+        Path output = Paths.get(inputLine.getOutputPath());
+        this.writer = listener != null ? new ResultWriter(listener) : new ResultWriter(output);
+        this.spillDirectory = output.toAbsolutePath().getParent();
+    }
+
+    /**
+     * Запуск соединений с узлами; начальная директория делится на фрагменты по спискам, полученным от узлов
+     * @return результат запроса: true - если была найдена хотя бы одна строка
+     */
+    public CompletableFuture<Boolean> start() {
+        writer.start();
+        long startTime = System.nanoTime();
+
+        List<InetSocketAddress> workers = inputLine.getOptions().getWorkers();
+        for(InetSocketAddress worker : workers) {
+            alive.add(address(worker));
+        }
+        CompletableFuture<?>[] links = new CompletableFuture<?>[workers.size()];
+        listings = new CompletableFuture<?>[workers.size()];
+        for(int iterator = 0; iterator < links.length; iterator++) {
+            CompletableFuture<Void> link = new CompletableFuture<>();
+            CompletableFuture<Void> listing = new CompletableFuture<>();
+            InetSocketAddress worker = workers.get(iterator);
+            Thread thread = new Thread(() -> {
+                try {
+                    serve(worker, listing);
+                } finally {
+                    alive.remove(address(worker));
+                    //Узел, не передавший список, не задерживает распределение фрагментов
+                    listing.complete(null);
+                    link.complete(null);
+                }
+            }, "shard-coordinator-" + address(worker));
+            thread.setDaemon(true);
+            thread.start();
+            links[iterator] = link;
+            listings[iterator] = listing;
+        }
+        CompletableFuture.allOf(links).whenComplete((ignored, error) -> finish(System.nanoTime() - startTime));
+        return result;
+    }
+
+    /**
+     * Ожидание списков фрагментов от всех узлов и заполнение очереди фрагментов
+     */
+    private void awaitShards() throws InterruptedException {
+        try {
+            CompletableFuture.allOf(listings).get();
+        } catch (ExecutionException e) {
+            //Получение списка завершается без ошибки
+        }
+        queueShards();
+    }
+
+    /**
+     * Заполнение очереди объединением фрагментов всех узлов (один раз). Фрагмент, которого нет
+     * в дереве узла, считается фрагментом, который этот узел не может просмотреть
+     */
+    private synchronized void queueShards() {
+        if(queued) {
+            return;
+        }
+        queued = true;
+        //Поддиректории просматриваются в порядке имен, файлы начальной директории - первыми
+        Set<String> all = new TreeSet<>();
+        for(List<String> list : listed.values()) {
+            all.addAll(list);
+        }
+        for(Map.Entry<String, List<String>> node : listed.entrySet()) {
+            for(String shard : all) {
+                if(!node.getValue().contains(shard)) {
+                    refused.computeIfAbsent(shard, key -> ConcurrentHashMap.newKeySet()).add(node.getKey());
+                }
+            }
+        }
+        shards.addAll(all);
+        remaining.set(all.size());
+    }
+
+    /**
+     * Передача фрагментов одному узлу, пока результаты получены не для всех фрагментов.
+     * Если узел недоступен, текущий фрагмент возвращается в очередь
+     * @param worker адрес узла
+     * @param listing завершается после получения списка фрагментов узла
+     */
+    private void serve(InetSocketAddress worker, CompletableFuture<Void> listing) {
+        String token = ShardProtocol.token();
+        if(token == null) {
+            System.out.println("> Узел " + address(worker) + " не используется: не задан общий ключ узлов "
+                    + "(LOGSCANNER_TOKEN или logscanner.token)");
+            return;
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(worker.getHostString(), worker.getPort()), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(ShardProtocol.READ_TIMEOUT_MS);
+            connections.add(socket);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if(!authenticate(worker, token, in, out)) {
+                return;
+            }
+            boolean hasShards = list(worker, in, out);
+            listing.complete(null);
+            if(!hasShards) {
+                out.writeUTF(ShardProtocol.BYE);
+                out.flush();
+                return;
+            }
+            awaitShards();
+            while (!cancelled && remaining.get() > 0) {
+                String shard = shards.pollFirst(POLL_MS, TimeUnit.MILLISECONDS);
+                if(shard == null) {
+                    continue;
+                }
+                if(isRefused(shard, worker)) {
+                    //Фрагмент остается в очереди для других узлов
+                    shards.addLast(shard);
+                    Thread.sleep(POLL_MS);
+                    continue;
+                }
+                boolean done = false;
+                try {
+                    done = scan(worker, shard, in, out);
+                } finally {
+                    if(!done) {
+                        shards.addFirst(shard);
+                    }
+                }
+            }
+            out.writeUTF(ShardProtocol.BYE);
+            out.flush();
+        } catch (IOException e) {
+            if(!cancelled) {
+                System.out.println("> Узел " + address(worker) + " недоступен ("
+                        + (e.getMessage() != null ? e.getMessage() : "соединение закрыто")
+                        + "), его фрагменты просматриваются другими узлами");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Передача общего ключа узлу
+     * @return true - если узел принял ключ
+     */
+    private static boolean authenticate(InetSocketAddress worker, String token, DataInputStream in,
+                                        DataOutputStream out) throws IOException {
+        out.writeUTF(ShardProtocol.AUTH);
+        out.writeUTF(token);
+        out.flush();
+        String reply = in.readUTF();
+        if(reply.equals(ShardProtocol.READY)) {
+            return true;
+        }
+        System.out.println("> Узел " + address(worker) + " отклонил подключение: "
+                + (reply.equals(ShardProtocol.ERROR) ? in.readUTF() : "неизвестный ответ " + reply));
+        return false;
+    }
+
+    /**
+     * Получение фрагментов начальной директории в дереве узла
+     * @return true - если узел передал список фрагментов
+     */
+    private boolean list(InetSocketAddress worker, DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeUTF(ShardProtocol.LIST);
+        out.writeUTF(inputLine.getInputDir());
+        out.flush();
+        String reply = in.readUTF();
+        if(reply.equals(ShardProtocol.ERROR)) {
+            System.out.println("> Узел " + address(worker) + " не используется: " + in.readUTF());
+            return false;
+        }
+        if(!reply.equals(ShardProtocol.SHARDS)) {
+            throw new IOException("неизвестный ответ " + reply);
+        }
+        int count = in.readInt();
+        List<String> list = new ArrayList<>(count);
+        for(int iterator = 0; iterator < count; iterator++) {
+            list.add(in.readUTF());
+        }
+        listed.put(address(worker), list);
+        return true;
+    }
+
+    /**
+     * Проверка, что фрагмент уже не смог просмотреть этот узел. Если фрагмент не смогли просмотреть
+     * все подключенные узлы, он пропускается
+     * @return true - если фрагмент не передается этому узлу
+     */
+    private boolean isRefused(String shard, InetSocketAddress worker) {
+        Set<String> nodes = refused.get(shard);
+        if(nodes == null || !nodes.contains(address(worker))) {
+            return false;
+        }
+        if(nodes.containsAll(alive) && refused.remove(shard) != null) {
+            System.out.println("> [Запрос " + id + "] Фрагмент " + shardName(shard)
+                    + " пропущен: ни один из подключенных узлов не может его просмотреть");
+            shards.remove(shard);
+            remaining.decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Поиск во фрагменте на узле и передача полученных строк потоку записи
+     * @return true - если результат фрагмента получен; false - узел не может просмотреть фрагмент
+     * @throws IOException узел недоступен; результат фрагмента не получен
+     */
+    private boolean scan(InetSocketAddress worker, String shard, DataInputStream in, DataOutputStream out)
+            throws IOException {
+        out.writeUTF(ShardProtocol.SCAN);
+        out.writeInt(inputLine.getNumberOfThreads());
+        out.writeUTF(inputLine.getErrorMessage());
+        out.writeUTF(inputLine.getInputDir());
+        out.writeUTF(String.join(" ", inputLine.getExtensions()));
+        List<String> entries = new ArrayList<>();
+        for(String entry : inputLine.getOptions().getEntries()) {
+            //Узлы не распределяют поиск дальше, статистику записывает только координатор
+            if(!entry.startsWith("workers=") && !entry.startsWith("stats=")) {
+                entries.add(entry);
+            }
+        }
+        out.writeInt(entries.size());
+        for(String entry : entries) {
+            out.writeUTF(entry);
+        }
+        out.writeUTF(shard);
+        out.flush();
+
+        while (true) {
+            String reply = in.readUTF();
+            if(reply.equals(ShardProtocol.ALIVE)) {
+                continue;
+            }
+            if(reply.equals(ShardProtocol.ERROR)) {
+                System.out.println("> Узел " + address(worker) + " не может просмотреть фрагмент " + shardName(shard)
+                        + ": " + in.readUTF() + "; фрагмент будет передан другому узлу");
+                refused.computeIfAbsent(shard, key -> ConcurrentHashMap.newKeySet()).add(address(worker));
+                return false;
+            }
+            if(!reply.equals(ShardProtocol.RESULT)) {
+                throw new IOException("неизвестный ответ " + reply);
+            }
+            receive(in, in.readLong());
+            remaining.decrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Сохранение строк фрагмента во временный сегмент и передача его потоку записи.
+     * Если данные получены не полностью, сегмент удаляется
+     * @param length длина данных
+     */
+    private void receive(DataInputStream in, long length) throws IOException {
+        if(length == 0) {
+            return;
+        }
+        Path segment = Files.createTempFile(spillDirectory, ".logscanner-", ".segment");
+        boolean received = false;
+        try {
+            try (OutputStream target = Files.newOutputStream(segment)) {
+                byte[] buffer = new byte[STREAM_BUFFER];
+                long left = length;
+                while (left > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                    if(read < 0) {
+                        throw new EOFException("соединение закрыто во время передачи результата");
+                    }
+                    target.write(buffer, 0, read);
+                    left -= read;
+                }
+            }
+            received = true;
+        } finally {
+            if(!received) {
+                Files.deleteIfExists(segment);
+            }
+        }
+        writer.submitSegment(segment);
+    }
+
+    private static String address(InetSocketAddress worker) {
+        return worker.getHostString() + ":" + worker.getPort();
+    }
+
+    private static String shardName(String shard) {
+        return shard.isEmpty() ? "." : shard;
+    }
+
+    /**
+     * Отмена запроса: соединения закрываются, узлы прекращают поиск
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+        for(Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //Соединение уже закрыто
+            }
+        }
+    }
+
+    /**
+     * Окончание запроса после закрытия соединений со всеми узлами
+     * @param timeSpent время выполнения поиска, нс
+     */
+    private void finish(double timeSpent) {
+        writer.close();
+        boolean found = writer.isWritten();
+        if(cancelled) {
+            System.out.println("> Запрос " + id + " отменен");
+        } else if(listed.isEmpty()) {
+            System.out.println("> [Запрос " + id + "] Директория не просмотрена: ни один узел не передал "
+                    + "список фрагментов");
+        } else if(remaining.get() > 0) {
+            List<String> names = new ArrayList<>();
+            for(String shard : shards) {
+                names.add(shardName(shard));
+            }
+            System.out.println("> [Запрос " + id + "] Не просмотрено фрагментов: " + remaining.get()
+                    + " - ни один узел не доступен: " + String.join(", ", names));
+        }
+        if(!writer.hasListener()) {
+            SearchTask.writeSummary(inputLine, found, timeSpent);
+        }
+        result.complete(found);
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> getResult() {
+        return result;
+    }
+}
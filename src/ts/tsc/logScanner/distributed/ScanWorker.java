@@ -0,0 +1,355 @@
+package ts.tsc.logScanner.distributed;
+
+import ts.tsc.logScanner.dispatch.SearchTask;
+import ts.tsc.logScanner.dispatch.WorkerPool;
+import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.InputOptions;
+import ts.tsc.logScanner.inputLine.inputParser.InputParser;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Узел распределенного поиска: принимает от координатора фрагменты директории
+ * и возвращает найденные в них строки.
+ *
+ * Узел ожидает подключений только на заданном адресе, принимает координатора, передавшего
+ * общий ключ, и просматривает только директории внутри заданного корня. Координатору передается список
+ * фрагментов начальной директории в дереве этого узла, поэтому деревья узлов и координатора могут различаться.
+ * Одновременно обслуживается не больше {@link #MAX_CONNECTIONS} соединений, а ключ должен быть передан
+ * за время {@link ShardProtocol#READ_TIMEOUT_MS}, иначе соединение закрывается. Параметры, при которых
+ * поиск записывает файлы на узле (stats, index, mode, cache), не принимаются.
+ * Каждый фрагмент просматривается обычным запросом {@link SearchTask} в общем пуле потоков узла,
+ * строки записываются во временный файл и после окончания поиска передаются координатору целиком.
+ * Пока идет поиск, узел сообщает координатору, что он доступен. Если соединение с координатором
+ * разорвано, поиск во фрагменте отменяется
+ */
+public class ScanWorker implements Runnable, Closeable {
+
+    private static final int STREAM_BUFFER = 64 * 1024;
+    public static final int MAX_CONNECTIONS = 16;       //Наибольшее количество одновременных соединений
+
+    private final ServerSocket server;
+    private final Path root;                            //Корень директорий, доступных координаторам
+    private final String token;                         //Общий ключ узлов и координатора
+    private final WorkerPool pool = new WorkerPool();  //Потоки поиска, общие для всех фрагментов
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Semaphore connectionPermits = new Semaphore(MAX_CONNECTIONS);
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param address адрес, на котором узел ожидает подключений координатора
+     * @param port порт; 0 - любой свободный порт
+     * @param root корень директорий, в которых узел выполняет поиск
+     * @param token общий ключ узлов и координатора
+     * @throws IOException не удалось открыть порт или корень не существует
+     */
+    public ScanWorker(InetAddress address, int port, Path root, String token) throws IOException {
+        this.root = root.toRealPath();
+        this.token = token;
+        this.server = new ServerSocket(port, 0, address);
+    }
+
+    /**
+     * @return общий ключ из системного свойства logscanner.token или переменной окружения LOGSCANNER_TOKEN;
+     *         null - если ключ не задан
+     */
+    public static String configuredToken() {
+        return ShardProtocol.token();
+    }
+
+    /**
+     * @return порт, на котором узел ожидает подключений
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        String address = server.getInetAddress().getHostAddress() + ":" + server.getLocalPort();
+        try (ServerSocket listener = server) {
+            System.out.println("> Узел распределенного поиска ожидает подключений на " + address
+                    + ", корень: " + root);
+            while (true) {
+                Socket socket = listener.accept();
+                if(!connectionPermits.tryAcquire()) {
+                    reject(socket);
+                    continue;
+                }
+                Thread connection = new Thread(() -> {
+                    try {
+                        serve(socket);
+                    } finally {
+                        connectionPermits.release();
+                    }
+                }, "shard-connection-" + getPort());
+                connection.setDaemon(true);
+                connection.start();
+            }
+        } catch (IOException e) {
+            if(!closed) {
+                System.out.println("> Ошибка в ходе ожидания подключений на " + address + ": " + e.getMessage());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Отказ в подключении, когда открыто наибольшее количество соединений
+     * @param socket новое соединение
+     */
+    private void reject(Socket socket) {
+        try (Socket connection = socket) {
+            DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+            error(out, "узел занят: открыто соединений " + MAX_CONNECTIONS);
+        } catch (IOException e) {
+            //Соединение уже закрыто координатором
+        }
+    }
+
+    /**
+     * Остановка узла: порт и все соединения с координаторами закрываются
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            //Порт уже закрыт
+        }
+        for(Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //Соединение уже закрыто
+            }
+        }
+    }
+
+    /**
+     * Обработка команд, получаемых по одному соединению, до команды BYE или разрыва соединения
+     * @param socket соединение с координатором
+     */
+    private void serve(Socket socket) {
+        connections.add(socket);
+        try (Socket connection = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(connection.getOutputStream(), STREAM_BUFFER))) {
+            connection.setSoTimeout(ShardProtocol.READ_TIMEOUT_MS);
+            if(closed || !authenticate(connection, in, out)) {
+                return;
+            }
+            //Координатор не отправляет фрагменты, пока их просматривают другие узлы, поэтому после
+            //проверки ключа время ожидания команды не ограничено
+            connection.setSoTimeout(0);
+            while (true) {
+                String command;
+                try {
+                    command = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                if(command.equals(ShardProtocol.BYE)) {
+                    break;
+                }
+                if(command.equals(ShardProtocol.LIST)) {
+                    list(in, out);
+                } else if(command.equals(ShardProtocol.SCAN)) {
+                    scan(in, out);
+                } else {
+                    System.out.println("> Неизвестная команда координатора: " + command);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            if(!closed) {
+                System.out.println("> Соединение с координатором " + socket.getRemoteSocketAddress() + " прервано");
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Проверка общего ключа, переданного координатором
+     * @return true - если ключ совпадает; иначе координатору отправляется ERROR
+     */
+    private boolean authenticate(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+        String command = in.readUTF();
+        if(!command.equals(ShardProtocol.AUTH) || !ShardProtocol.isValidToken(token, in.readUTF())) {
+            error(out, "координатор " + socket.getRemoteSocketAddress() + " передал неверный ключ");
+            return false;
+        }
+        out.writeUTF(ShardProtocol.READY);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Передача координатору фрагментов начальной директории в дереве этого узла
+     */
+    private void list(DataInputStream in, DataOutputStream out) throws IOException {
+        Path directory = Paths.get(in.readUTF());
+        if(!Files.isDirectory(directory)) {
+            error(out, "директория " + directory + " не найдена");
+            return;
+        }
+        if(!directory.toRealPath().startsWith(root)) {
+            error(out, "директория " + directory + " находится вне корня узла " + root);
+            return;
+        }
+        List<String> shards;
+        try {
+            shards = listShards(directory);
+        } catch (IOException e) {
+            error(out, "ошибка в ходе просмотра директории " + directory);
+            return;
+        }
+        out.writeUTF(ShardProtocol.SHARDS);
+        out.writeInt(shards.size());
+        for(String shard : shards) {
+            out.writeUTF(shard);
+        }
+        out.flush();
+    }
+
+    /**
+     * Фрагменты начальной директории: файлы самой директории (пустое имя) и поддиректории первого уровня
+     * @param directory начальная директория
+     * @return имена фрагментов
+     */
+    private static List<String> listShards(Path directory) throws IOException {
+        List<String> list = new ArrayList<>();
+        list.add("");
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for(Path entry : dirStream) {
+                list.add(entry.getFileName().toString());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Поиск в одном фрагменте и передача найденных строк координатору
+     */
+    private void scan(DataInputStream in, DataOutputStream out) throws IOException {
+        int threads = in.readInt();
+        String message = in.readUTF();
+        String inputDir = in.readUTF();
+        String[] extensions = in.readUTF().split(" ");
+        int count = in.readInt();
+        List<String> entries = new ArrayList<>(count);
+        for(int iterator = 0; iterator < count; iterator++) {
+            entries.add(in.readUTF());
+        }
+        String shard = in.readUTF();
+
+        InputOptions options = InputParser.parseOptions(entries);
+        if(options == null) {
+            error(out, "неверные параметры запроса " + entries);
+            return;
+        }
+        if(options.getWorkers() != null || options.getStatsPath() != null || options.getMode() != InputOptions.Mode.FULL
+                || options.isIndexed() || options.isCached()) {
+            error(out, "параметры workers, stats, mode, index и cache не принимаются узлом");
+            return;
+        }
+        Path directory = Paths.get(inputDir).resolve(shard);
+        if(!Files.isDirectory(directory)) {
+            error(out, "директория " + directory + " не найдена");
+            return;
+        }
+        if(!directory.toRealPath().startsWith(root) || !Paths.get(inputDir).toRealPath().startsWith(root)) {
+            error(out, "директория " + directory + " находится вне корня узла " + root);
+            return;
+        }
+        options.setShard(shard);
+
+        Path output = Files.createTempFile(".logscanner-", ".shard");
+        try {
+            InputLine inputLine = new InputLine(String.valueOf(threads), message, inputDir, output.toString(),
+                    extensions, options);
+            SearchTask task = new SearchTask(nextId.getAndIncrement(), inputLine);
+            CompletableFuture<Boolean> result;
+            try {
+                result = task.start(pool);
+            } catch (IllegalStateException e) {
+                //Фрагмент будет передан другому узлу
+                error(out, e.getMessage());
+                return;
+            }
+            System.out.println("> Запрос " + task.getId() + ": поиск во фрагменте " + directory);
+            try {
+                waitFor(result, out);
+            } catch (IOException e) {
+                //Координатор недоступен - результат фрагмента некому передать
+                task.cancel();
+                result.join();
+                throw e;
+            }
+
+            out.writeUTF(ShardProtocol.RESULT);
+            out.writeLong(Files.size(output));
+            Files.copy(output, out);
+            out.flush();
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    /**
+     * Ожидание окончания поиска с периодическими сообщениями ALIVE
+     * @throws IOException соединение с координатором разорвано
+     */
+    private static void waitFor(CompletableFuture<Boolean> result, DataOutputStream out) throws IOException {
+        while (true) {
+            try {
+                result.get(ShardProtocol.HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                out.writeUTF(ShardProtocol.ALIVE);
+                out.flush();
+            } catch (ExecutionException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Ожидание окончания поиска было прервано");
+            }
+        }
+    }
+
+    private static void error(DataOutputStream out, String message) throws IOException {
+        System.out.println("> Ошибка фрагмента: " + message);
+        out.writeUTF(ShardProtocol.ERROR);
+        out.writeUTF(message);
+        out.flush();
+    }
+}
@@ -0,0 +1,62 @@
+package ts.tsc.logScanner.distributed;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Протокол обмена между координатором и узлами распределенного поиска.
+ *
+ * Сообщения передаются через DataOutputStream, команда - строкой в модифицированном UTF-8.
+ * После подключения координатор отправляет {@link #AUTH} с общим ключом, узел отвечает {@link #READY}
+ * или {@link #ERROR} и закрывает соединение. Затем координатор отправляет {@link #LIST} с начальной директорией,
+ * узел отвечает {@link #SHARDS} со списком фрагментов в своем дереве директорий или {@link #ERROR}.
+ * После этого координатор отправляет {@link #SCAN} с параметрами запроса и фрагментом директории,
+ * узел во время поиска периодически отвечает {@link #ALIVE}, а после поиска -
+ * {@link #RESULT} с длиной и содержимым найденных строк или {@link #ERROR} с описанием ошибки.
+ * По одному соединению последовательно передается несколько фрагментов, {@link #BYE} завершает соединение
+ */
+final class ShardProtocol {
+
+    static final String AUTH = "AUTH";          //Общий ключ узлов и координатора
+    static final String READY = "READY";       //Ключ принят, узел ожидает фрагменты
+    static final String LIST = "LIST";          //Начальная директория, фрагменты которой есть на узле
+    static final String SHARDS = "SHARDS";      //Количество фрагментов (int), затем их имена
+
+    /**
+     * Фрагмент для поиска: количество потоков (int), текст для поиска, начальная директория,
+     * расширения через пробел, количество параметров (int), параметры вида ключ=значение,
+     * фрагмент директории (пустая строка - файлы самой директории, иначе - имя поддиректории)
+     */
+    static final String SCAN = "SCAN";
+    static final String ALIVE = "ALIVE";        //Поиск во фрагменте продолжается
+    static final String RESULT = "RESULT";      //Длина данных (long), затем найденные строки в UTF-8
+    static final String ERROR = "ERROR";        //Описание ошибки; фрагмент не может быть просмотрен узлом
+    static final String BYE = "BYE";            //Фрагментов больше нет
+
+    static final int HEARTBEAT_MS = 5000;       //Интервал сообщений ALIVE
+    static final int READ_TIMEOUT_MS = 30000;   //Время ожидания сообщения, после которого узел считается недоступным
+
+    static final String TOKEN_PROPERTY = "logscanner.token";   //Системное свойство с общим ключом
+    static final String TOKEN_VARIABLE = "LOGSCANNER_TOKEN";   //Переменная окружения с общим ключом
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Общий ключ узлов и координатора: системное свойство logscanner.token
+     * или переменная окружения LOGSCANNER_TOKEN
+     * @return ключ; null - если ключ не задан
+     */
+    static String token() {
+        String token = System.getProperty(TOKEN_PROPERTY, System.getenv(TOKEN_VARIABLE));
+        return token == null || token.isEmpty() ? null : token;
+    }
+
+    /**
+     * Сравнение ключей за время, не зависящее от совпадающей части
+     */
+    static boolean isValidToken(String expected, String received) {
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                received.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,54 @@
+package ts.tsc.logScanner.fileParser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Поток чтения, считающий прочитанные байты и время чтения с диска
+ */
+class MeteredInputStream extends FilterInputStream {
+
+    private long bytes = 0;
+    private long nanos = 0;
+
+    MeteredInputStream(InputStream input) {
+        super(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int value = super.read();
+        nanos += System.nanoTime() - start;
+        if(value >= 0) {
+            bytes++;
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        int count = super.read(buffer, offset, length);
+        nanos += System.nanoTime() - start;
+        if(count > 0) {
+            bytes += count;
+        }
+        return count;
+    }
+
+    /**
+     * @return количество прочитанных байт
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return время чтения, нс
+     */
+    long getNanos() {
+        return nanos;
+    }
+}
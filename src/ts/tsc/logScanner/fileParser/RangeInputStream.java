@@ -0,0 +1,53 @@
+package ts.tsc.logScanner.fileParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Поток чтения диапазона файла обычными вызовами чтения, без отображения в память.
+ *
+ * Чтение файла в виртуальном потоке занимает (закрепляет) поток-носитель на все время ожидания.
+ * Планировщик JDK видит такой вызов и на время ожидания добавляет замещающий поток-носитель,
+ * но не больше jdk.virtualThreadScheduler.maxPoolSize (по умолчанию 256), поэтому одновременно
+ * ожидать чтения могут не больше потоков, а остальные ждут свободного носителя.
+ * Подкачку страниц отображенного файла планировщик не видит совсем, и замещающий носитель не создается
+ */
+class RangeInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private long position;      //Текущая позиция в файле
+    private final long end;     //Конец диапазона
+
+    /**
+     * @param channel канал файла (не закрывается)
+     * @param from начало диапазона
+     * @param to конец диапазона
+     */
+    RangeInputStream(FileChannel channel, long from, long to) {
+        this.channel = channel;
+        this.position = from;
+        this.end = to;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if(position >= end) {
+            return -1;
+        }
+        int count = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, end - position)),
+                position);
+        if(count < 0) {
+            return -1;
+        }
+        position += count;
+        return count;
+    }
+}
@@ -1,56 +1,141 @@
 package ts.tsc.logScanner.fileParser;
 
-import ts.tsc.logScanner.console.Console;
-import ts.tsc.logScanner.console.ConsoleInterface;
+import ts.tsc.logScanner.aggregate.Aggregation;
+import ts.tsc.logScanner.aggregate.LongCountTable;
+import ts.tsc.logScanner.aggregate.WorkerCounts;
+import ts.tsc.logScanner.cache.ResultCache;
+import ts.tsc.logScanner.checkpoint.CheckpointStore;
+import ts.tsc.logScanner.dispatch.SearchTask;
+import ts.tsc.logScanner.fileParser.searcher.ChunkedFileSearcher;
+import ts.tsc.logScanner.fileParser.searcher.LineTooLongException;
+import ts.tsc.logScanner.fileParser.searcher.MappedFileSearcher;
+import ts.tsc.logScanner.fileParser.searcher.StreamSearcher;
+import ts.tsc.logScanner.fileParser.searcher.TimeWindow;
+import ts.tsc.logScanner.index.TrigramIndex;
+import ts.tsc.logScanner.inputLine.InputOptions;
 import ts.tsc.logScanner.inputLine.LineInterface;
-import ts.tsc.logScanner.observing.Observable;
+import ts.tsc.logScanner.inputLine.inputParser.InputParser;
+import ts.tsc.logScanner.metrics.WorkerMetrics;
+import ts.tsc.logScanner.output.ResultBuffer;
+import ts.tsc.logScanner.output.ResultWriter;
+import ts.tsc.logScanner.output.SortedOutput;
+import ts.tsc.logScanner.output.WorkerSegment;
 
-import java.io.*;
-import java.nio.charset.Charset;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.LinkedList;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * Поиск в файле указанной подстроки
  */
-public class fileParser implements Runnable, Observable {
+public class fileParser implements Runnable {
 
-    private final ConsoleInterface console;     //Интерфейс для доступа к списку
+    private static final long CHUNK_SIZE = 64L * 1024 * 1024;  //Размер фрагмента для параллельного поиска
+    private static final int DECOMPRESS_BUFFER = 256 * 1024;    //Размер буфера чтения сжатых файлов
+    private static final int VIRTUAL_BUFFER = 128 * 1024;       //Начальный буфер чтения в виртуальном потоке
+    private static final int RESULT_BUFFER = 512 * 1024;        //Строки файла в памяти потока (символов)
+    private static final int CHUNK_BUFFER = 128 * 1024;         //Строки фрагмента в памяти (символов)
+    private static final int VIRTUAL_RESULT_BUFFER = 64 * 1024; //Строки файла в памяти виртуального потока
+    private static final String CONTEXT_SEPARATOR = "- ";       //Разделитель перед текстом строки контекста
+    private static final String GROUP_SEPARATOR = "--";         //Строка между несмежными группами строк
+
+    private final SearchTask task;              //Запрос, к очереди которого обращается поток
     private final LineInterface inputLine;
     private final int threadNumber;             //Номер потока
+    private final ResultWriter writer;          //Поток записи результатов
+    private final CheckpointStore checkpoints;  //Позиции просмотра файлов; null - если режим не инкрементальный
+    private final TrigramIndex index;           //Индекс триграмм; null - если индекс не используется
+    private final int[][] indexQuery;           //Триграммы подстрок для проверки по индексу
+    private final MappedFileSearcher searcher;  //Поиск подстроки в байтах файла
+    private final ChunkedFileSearcher chunkedSearcher;  //Параллельный поиск во фрагментах больших файлов
+    private final StreamSearcher streamSearcher;        //Поиск в распаковываемых сжатых файлах
+    private final String[] separators;          //Разделители перед текстом строки с пометкой найденной подстроки
+    private final WorkerMetrics metrics;        //Счетчики потока
+    private final TimeWindow timeWindow;        //Интервал времени; null - строки не отбираются по времени
+    private final WorkerCounts counts;          //Счетчики потока в режиме подсчета; null - строки выводятся
+    private final TimeWindow timeParser;        //Разбор отметки времени для подсчета по часам
+    private final Path spillDirectory;          //Директория временных сегментов результатов
+    private final ResultBuffer results;         //Найденные строки текущего файла
+    private final WorkerSegment sortedSegment;  //Сегмент упорядоченного вывода; null - строки передаются потоку записи
+    private final ResultCache cache;            //Кэш результатов по файлам; null - не используется
+    private final int fileLimit;                //Наибольшее количество найденных строк в файле; 0 - без ограничения
+    private final boolean filesOnly;            //Вывод только имен файлов, содержащих подстроку
+    private int fileMatches;                    //Количество найденных строк в текущем файле
+    private List<String> cacheLines;            //Строки текущего файла для кэша; null - не сохраняются
+    private long cacheChars;                    //Количество символов в строках для кэша
 
     /**
-     * @param inputLine структура, в которой хранится входная строка
+     * @param task запрос: параметры поиска, очередь файлов, поток записи результатов,
+     *             позиции просмотра файлов и индекс триграмм
      * @param threadNumber номер потока
      */
-    public fileParser(ConsoleInterface console, LineInterface inputLine, int threadNumber) {
-        this.console = console;
-        this.inputLine = inputLine;
+    public fileParser(SearchTask task, int threadNumber) {
+        this.task = task;
+        this.inputLine = task.getInputLine();
         this.threadNumber = threadNumber;
+        this.writer = task.getWriter();
+        this.checkpoints = task.getCheckpoints();
+        this.index = task.getIndex();
+        this.cache = task.getCache();
+        this.metrics = task.getMetrics().newWorker(threadNumber);
+        this.timeWindow = inputLine.getOptions().getTimeWindow();
+        //Временные сегменты создаются рядом с выходным файлом
+        this.spillDirectory = Paths.get(inputLine.getOutputPath()).toAbsolutePath().getParent();
+        this.sortedSegment = task.getSortedOutput() != null ? task.getSortedOutput().newWorker() : null;
+        this.results = new ResultBuffer(task.isVirtual() ? VIRTUAL_RESULT_BUFFER : RESULT_BUFFER, spillDirectory);
+        String[] patterns = inputLine.getPatterns();
+        this.indexQuery = task.getIndexQuery();
+        this.counts = task.getAggregation() != null ? task.getAggregation().newWorker() : null;
+        this.timeParser = inputLine.getOptions().getTimeParser();
+        this.fileLimit = inputLine.getOptions().getFileMatchLimit();
+        this.filesOnly = inputLine.getOptions().isFilesOnly();
+        //При подсчете и выводе имен файлов строки не выводятся, поэтому контекст не нужен
+        this.searcher = counts != null || filesOnly
+                ? new MappedFileSearcher(task.getMatcher(), task.getFilter())
+                : new MappedFileSearcher(task.getMatcher(), task.getFilter(),
+                        inputLine.getOptions().getBeforeContext(), inputLine.getOptions().getAfterContext());
+        this.chunkedSearcher = new ChunkedFileSearcher(searcher, CHUNK_SIZE);
+
+        //Виртуальных потоков может быть несколько сотен, поэтому их буферы меньше
+        this.streamSearcher = task.isVirtual()
+                ? new StreamSearcher(searcher, VIRTUAL_BUFFER, task.getMatchPermits())
+                : new StreamSearcher(searcher);
+
+        //При поиске нескольких подстрок каждая строка помечается найденной подстрокой
+        this.separators = new String[patterns.length];
+        for(int iterator = 0; iterator < patterns.length; iterator++) {
+            separators[iterator] = patterns.length == 1 ? ": " : " [" + patterns[iterator] + "]: ";
+        }
     }
 
     /**
-     * Пока список путей к файлам не будет пуст и начальная директория не будет
-     * полностью просканирована (проверка по флагу), попытка получить элемент из списка.
-     * Если объект получен, парсинг файла с указанным путем,
-     * иначе если список пуст - ожидание оповещения о том, что в список добавлен элемент
+     * Получение путей из очереди и парсинг файлов, пока очередь не будет закрыта
+     * и полностью разобрана или запрос не будет отменен. Ожидание новых элементов происходит внутри очереди
      */
     @Override
-    public synchronized void run() {
-        while (!console.isSearchFinished()) {
-            Path path = console.popListElement();
-            if(path == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    System.out.print("Ошибка в ходе работы потока");
-                }
-            } else {
+    public void run() {
+        Path path;
+        while ((path = task.popListElement()) != null) {
+            long start = System.nanoTime();
+            long bytesBefore = metrics.getBytes();
+            try {
                 parseFile(path);
+            } finally {
+                //Освобождение места устройства при раздельном планировании чтения
+                task.fileDone(path, metrics.getBytes() - bytesBefore, System.nanoTime() - start);
             }
         }
     }
@@ -59,92 +144,443 @@ public class fileParser implements Runnable, Observable {
      * Поиск подстроки в файле
      * @param path путь к файлу
      */
-    private void parseFile(Path path) {
-        List<String> lines = new LinkedList<>();
-
-        //Начнаем считывать файл в буфер по строкам
-        try (BufferedReader bufferedReader = Files.newBufferedReader(path, Charset.forName("ISO-8859-1"))) {
-            String line;
-
-            String directory = inputLine.getInputDir();
-            String pathString = path.toString();
-
-            //Преобразование путей в необходимый формат
-            int index = pathString.lastIndexOf("\\");
-            String subDirectory = pathString.substring(directory.length(), index+1);
-            String fileName = pathString.substring(index+1);
-            if(subDirectory.equals("\\")) {
-                subDirectory = ".\\";
-            } else {
-                subDirectory = "." + subDirectory.substring(0, subDirectory.length()-1);
-            }
+    public void parseFile(Path path) {
+        fileMatches = 0;
+        cacheLines = null;
+        cacheChars = 0;
 
-            try {
-                //Считываем, пока не будет найден конец файла
-                while ((line = bufferedReader.readLine()) != null) {
-                    //Проверяем считанную строку на содержание подстроки
-                    if(line.toLowerCase().contains(inputLine.getErrorMessage().toLowerCase())) {
-                        //Запись строки в список
-                        lines.add("[" + threadNumber + "] "
-                                + subDirectory + " - "
-                                + fileName + ": "
-                                + line);
-                    }
+        //Преобразование путей в необходимый формат: .\ для начальной директории, иначе .\поддиректория
+        String separator = path.getFileSystem().getSeparator();
+        String pathString = path.toString();
+        int index = pathString.lastIndexOf(separator);
+        String subDirectory = pathString.substring(inputLine.getInputDir().length(), index+1);
+        String fileName = pathString.substring(index+1);
+        if(!subDirectory.startsWith(separator)) {
+            subDirectory = separator + subDirectory;
+        }
+        if(subDirectory.equals(separator)) {
+            subDirectory = "." + separator;
+        } else {
+            subDirectory = "." + subDirectory.substring(0, subDirectory.length()-1);
+        }
+        //При упорядоченном выводе номер потока не выводится, чтобы результаты разных запусков совпадали
+        String prefix = (sortedSegment != null ? "" : "[" + threadNumber + "] ")
+                + subDirectory + " - "
+                + fileName;
+
+        long start = System.nanoTime();
+        long bytesBefore = metrics.getBytes();
+        long matchBefore = metrics.getMatchNanos();
+        try {
+            //Строки неизменившегося файла берутся из кэша, файл не открывается
+            BasicFileAttributes attrs = null;
+            ResultCache.FileResult cached = null;
+            if(cache != null) {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                cached = cache.get(path, attrs);
+                //При ограничении строк запроса файл просматривается, если все его строки вывести нельзя
+                if(cached != null && cached.getMatches() > 0 && !task.acceptMatches(cached.getMatches())) {
+                    cached = null;
                 }
-            } catch (OutOfMemoryError e) {
-                System.out.println("В файле " + path +
-                        " не удалось произвести поиск подстроки в строке, " +
-                        "так как она имеет слишком большой размер");
+                cacheLines = cached == null ? new ArrayList<>() : null;
             }
-
+            if(cached != null) {
+                replay(cached, prefix);
+            } else if(InputParser.isCompressed(path)) {
+                parseCompressed(path, prefix);
+            } else {
+                parseMapped(path, prefix);
+            }
+            //Строки сохраняются, только если файл просмотрен без ошибок, целиком или до ограничения max,
+            //и строк не слишком много
+            if(cacheLines != null && !task.isLimitReached()) {
+                cache.put(path, attrs, new ResultCache.FileResult(fileMatches, cacheLines));
+            }
+        } catch (LineTooLongException e) {
+            System.out.println("В файле " + path +
+                    " не удалось произвести поиск подстроки в строке, " +
+                    "так как она имеет слишком большой размер");
         } catch (IOException e) {
             System.out.println("Ошибка в ходе чтения файла " + path.toString());
             //e.printStackTrace();
-            return;
+            results.clear();
+        } catch (UncheckedIOException e) {
+            System.out.println("Ошибка в ходе записи временного файла результатов для файла " + path);
+            results.clear();
+        }
+        //Все время просмотра файла, кроме поиска, относится к чтению (открытие, атрибуты, индекс)
+        long elapsed = System.nanoTime() - start;
+        metrics.io(elapsed - (metrics.getMatchNanos() - matchBefore));
+        metrics.fileDone(path, elapsed, metrics.getBytes() - bytesBefore, fileMatches);
+        if(counts != null && timeParser == null) {
+            //Счетчики по файлам и поддиректориям увеличиваются один раз на файл
+            counts.add(inputLine.getOptions().getAggregate() == InputOptions.Aggregate.FILE
+                    ? subDirectory + (subDirectory.endsWith(separator) ? "" : separator) + fileName
+                    : subDirectory, fileMatches);
+        }
+
+        //Передача найденных строк потоку записи в выходной файл или в сегмент упорядоченного вывода
+        long submitStart = System.nanoTime();
+        try {
+            if(sortedSegment != null) {
+                sortedSegment.write(SortedOutput.key(Paths.get(inputLine.getInputDir()), path), results);
+            } else {
+                results.submitTo(writer);
+            }
+        } catch (IOException e) {
+            System.out.println("Ошибка в ходе записи временного файла результатов для файла " + path);
+            results.clear();
         }
-        //Вызов метода для записи в списка в файл
-        writeToFile(lines, Paths.get(inputLine.getOutputPath()));
+        metrics.writerWaited(System.nanoTime() - submitStart);
     }
 
     /**
-     * Синхронизированный метод для записи списка строк в файл
-     * @param lines список строк
+     * Поиск по байтам отображенного в память файла (дописываемые логи и файлы виртуальных потоков
+     * читаются в буфер), строки создаются только для найденных вхождений
      * @param path путь к файлу
+     * @param prefix начало выходной строки (номер потока, поддиректория и имя файла)
+     * @throws IOException ошибка чтения файла
      */
-    private synchronized void writeToFile(List<String> lines, Path path) {
-        //Если список не пуст начинаем запись
-        if(lines.size() > 0) {
+    private void parseMapped(Path path, String prefix) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long from = 0;
+            long to = channel.size();
+
             /*
-            * Запись в файл через буферный вывод.
-            * Если он существует, режим добавления в конец,
-            * иначе создание нового и запись в него
-            */
-            try(BufferedWriter writer = Files.newBufferedWriter(path, Charset.forName("UTF-8"),
-                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)){
-
-                // Запись списка строковых значений в файл
-                for(String line : lines) {
-                    writer.write(line);
-                    writer.newLine();
+             * В инкрементальном режиме просмотр продолжается с сохраненной позиции
+             * и только до конца последней полной строки: недописанная строка будет
+             * просмотрена при следующем запуске
+             */
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if(checkpoints != null) {
+                from = checkpoints.startOffset(path, attrs, channel);
+                to = MappedFileSearcher.completeLinesEnd(channel, from, to);
+            }
+
+            //Границы просмотра: в упорядоченном по времени логе - только строки заданного интервала
+            long searchFrom = from;
+            long searchTo = to;
+            if(timeWindow != null) {
+                if(timeWindow.isBefore(attrs.lastModifiedTime().toMillis())) {
+                    //Файл не изменялся с начала интервала - в нем нет подходящих строк
+                    searchTo = searchFrom;
+                } else {
+                    long[] range = timeWindow.range(channel, from, to);
+                    searchFrom = range[0];
+                    searchTo = range[1];
                 }
+            }
 
-                /*
-                 * Установка флага, хранящего состояние поиска, в состояние true,
-                 * если он еще не в этом состоянии
-                 */
-                if(!Console.getFound()) {
-                    Console.setFoundTrue();
+            if(index != null && indexQuery != null && checkpoints == null) {
+                //Просмотр только тех блоков, в которых по индексу может быть подстрока
+                long[] ranges = index.candidateRanges(path, attrs, channel, indexQuery);
+                for(int range = 0; range < ranges.length; range += 2) {
+                    long rangeFrom = Math.max(ranges[range], searchFrom);
+                    long rangeTo = Math.min(ranges[range + 1], searchTo);
+                    if(rangeFrom < rangeTo) {
+                        searchRange(channel, rangeFrom, rangeTo, prefix);
+                    }
                 }
+            } else if(searchFrom < searchTo) {
+                searchRange(channel, searchFrom, searchTo, prefix);
+            }
 
-            }catch(IOException ex){
-                System.out.println("Ошибка в ходе записи в файл");
-                //ex.printStackTrace();
+            if(checkpoints != null) {
+                checkpoints.update(path, attrs, to, channel);
             }
         }
     }
 
-    @Override
-    public synchronized void update() {
-        notify();
+    /**
+     * Поиск в диапазоне файла, начинающемся с новой строки
+     * @param channel открытый канал файла
+     * @param from начало диапазона
+     * @param to конец диапазона
+     * @param prefix начало выходной строки (номер потока, поддиректория и имя файла)
+     * @throws IOException ошибка чтения файла
+     */
+    private void searchRange(FileChannel channel, long from, long to,
+                             String prefix) throws IOException {
+        /*
+         * Дописываемые логи (инкрементальный режим и наблюдение) читаются позиционным чтением:
+         * отображение освобождается только сборщиком мусора и в Windows мешает ротации файла
+         */
+        if(task.isVirtual() || checkpoints != null) {
+            streamRange(channel, from, to, prefix);
+            return;
+        }
+        //Подкачка страниц отображенного файла происходит в ходе поиска и учитывается в его времени
+        long start = System.nanoTime();
+        if(to - from > 2 * CHUNK_SIZE && !searcher.hasContext() && fileLimit == 0) {
+            //Большой диапазон просматривается по фрагментам параллельно, результаты собираются по порядку.
+            //Контекст не переносится между фрагментами, поэтому при его выводе диапазон просматривается целиком,
+            //а при ограничении строк файла просмотр по порядку прекращается на последней нужной строке
+            for(Collector collector : chunkedSearcher.search(channel, from, to,
+                    () -> newCollector(prefix, "", true))) {
+                collector.drain();
+            }
+        } else {
+            Collector collector = newCollector(prefix, "", false);
+            searcher.search(channel, from, to, collector);
+            collector.drain();
+        }
+        metrics.match(System.nanoTime() - start);
+        metrics.read(to - from);
+    }
+
+    /**
+     * Поиск в диапазоне файла с чтением в буфер, без отображения файла в память.
+     * В виртуальном потоке поиск выполняется только при наличии разрешения
+     * @param channel открытый канал файла
+     * @param from начало диапазона
+     * @param to конец диапазона
+     * @param prefix начало выходной строки (номер потока, поддиректория и имя файла)
+     * @throws IOException ошибка чтения файла
+     */
+    private void streamRange(FileChannel channel, long from, long to,
+                             String prefix) throws IOException {
+        long start = System.nanoTime();
+        MeteredInputStream input = new MeteredInputStream(new RangeInputStream(channel, from, to));
+        Collector collector = newCollector(prefix, "", false);
+        streamSearcher.search(input, collector);
+        collector.drain();
+        metrics.match(System.nanoTime() - start - input.getNanos());
+        metrics.read(input.getBytes());
+    }
+
+    /**
+     * Поиск в сжатом файле с распаковкой в памяти, без временных файлов.
+     * Каждый элемент zip-архива выводится как отдельный файл: архив.zip!элемент
+     * @param path путь к файлу .gz или .zip
+     * @param prefix начало выходной строки (номер потока, поддиректория и имя файла)
+     * @throws IOException ошибка чтения или распаковки файла
+     */
+    private void parseCompressed(Path path, String prefix) throws IOException {
+        //Архив не дописывается, а заменяется целиком, поэтому в инкрементальном режиме
+        //он пропускается, если не изменился, иначе просматривается заново
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        if(checkpoints != null && isUnchanged(path, attrs)) {
+            return;
+        }
+        //Сжатые данные не позволяют искать по позиции, поэтому архив пропускается только по времени изменения
+        if(timeWindow != null && timeWindow.isBefore(attrs.lastModifiedTime().toMillis())) {
+            if(checkpoints != null) {
+                markScanned(path, attrs);
+            }
+            return;
+        }
+
+        //Время распаковки относится к поиску, время чтения сжатых данных с диска - к чтению
+        long start = System.nanoTime();
+        MeteredInputStream file = new MeteredInputStream(Files.newInputStream(path));
+        if(path.toString().toLowerCase().endsWith(".gz")) {
+            try (InputStream input = new GZIPInputStream(file, DECOMPRESS_BUFFER)) {
+                Collector collector = newCollector(prefix, "", false);
+                streamSearcher.search(input, collector);
+                collector.drain();
+            }
+        } else {
+            try (ZipInputStream zip = new ZipInputStream(
+                    new BufferedInputStream(file, DECOMPRESS_BUFFER))) {
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null && !isFileDone(0)) {
+                    if(!entry.isDirectory() && InputParser.isRightEntry(entry.getName(), inputLine.getExtensions())) {
+                        Collector collector = newCollector(prefix, "!" + entry.getName(), false);
+                        streamSearcher.search(zip, collector);
+                        collector.drain();
+                    }
+                }
+            }
+        }
+        metrics.match(System.nanoTime() - start - file.getNanos());
+        metrics.read(file.getBytes());
+
+        if(checkpoints != null) {
+            markScanned(path, attrs);
+        }
+    }
+
+    /**
+     * @return true - если архив не изменился после прошлого просмотра
+     */
+    private boolean isUnchanged(Path path, BasicFileAttributes attrs) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return checkpoints.startOffset(path, attrs, channel) == attrs.size();
+        }
+    }
+
+    /**
+     * Сохранение позиции конца архива: архив просмотрен целиком
+     */
+    private void markScanned(Path path, BasicFileAttributes attrs) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            checkpoints.update(path, attrs, attrs.size(), channel);
+        }
+    }
+
+    /**
+     * @param matches строки, найденные в просматриваемой части файла и еще не учтенные в файле
+     * @return true - если найдено заданное количество строк файла или запроса и просмотр нужно прекратить
+     */
+    private boolean isFileDone(int matches) {
+        return fileLimit > 0 && fileMatches + matches >= fileLimit || task.isLimitReached();
+    }
+
+    /**
+     * Вывод строк файла, сохраненных в кэше
+     * @param cached строки файла без начала выходной строки
+     * @param prefix начало выходной строки (номер потока, поддиректория и имя файла)
+     */
+    private void replay(ResultCache.FileResult cached, String prefix) {
+        for(String line : cached.getLines()) {
+            results.add(line.equals(GROUP_SEPARATOR) ? line : prefix + line);
+        }
+        fileMatches = cached.getMatches();
+    }
+
+    /**
+     * @param prefix начало выходной строки (номер потока, поддиректория и имя файла)
+     * @param part продолжение начала строки для элемента архива (!элемент); пустая строка - для файла
+     * @param chunk true - фрагмент просматривается в другом потоке и накапливает строки в своем буфере
+     * @return обработчик строк одной части файла: накопление строк или подсчет
+     */
+    private Collector newCollector(String prefix, String part, boolean chunk) {
+        if(counts != null) {
+            return new CountingCollector();
+        }
+        return new LinesCollector(prefix, part, chunk ? new ResultBuffer(CHUNK_BUFFER, spillDirectory) : results,
+                cacheLines != null);
+    }
+
+    /**
+     * Обработчик строк одной части файла (фрагмента, диапазона или элемента архива).
+     * Фрагменты просматриваются в других потоках, поэтому результат передается
+     * в поток поиска и учитывается в нем
+     */
+    private abstract class Collector implements ChunkedFileSearcher.ChunkHandler<Collector> {
+
+        /**
+         * Передача результата в поток поиска
+         */
+        abstract void drain();
+
+        @Override
+        public Collector result() {
+            return this;
+        }
+    }
+
+    /**
+     * Накопление найденных строк в буфере ограниченного размера.
+     * Строки контекста помечаются разделителем "- ", несмежные группы разделяются строкой "--".
+     * При выводе имен файлов вместо строки выводится только начало выходной строки.
+     * Для кэша строки дополнительно накапливаются без начала выходной строки, пока их не слишком много
+     */
+    private class LinesCollector extends Collector {
+        private final String prefix;
+        private final String part;
+        private final ResultBuffer output;      //Буфер потока поиска или отдельный буфер фрагмента
+        private List<String> recorded;          //Строки для кэша; null - не сохраняются
+        private long recordedChars = 0;
+        private boolean overflow = false;       //Строк для кэша слишком много
+        private int matches = 0;
+
+        LinesCollector(String prefix, String part, ResultBuffer output, boolean record) {
+            this.prefix = prefix;
+            this.part = part;
+            this.output = output;
+            this.recorded = record ? new ArrayList<>() : null;
+        }
+
+        @Override
+        public void onLine(ByteBuffer buffer, int start, int end, int pattern) {
+            if(!task.acceptMatches(1)) {
+                //Найдено заданное количество строк запроса
+                return;
+            }
+            add(filesOnly ? part : part + separators[pattern] + MappedFileSearcher.decode(buffer, start, end));
+            matches++;
+        }
+
+        @Override
+        public boolean isDone() {
+            return isFileDone(matches);
+        }
+
+        @Override
+        public void onContext(ByteBuffer buffer, int start, int end) {
+            add(part + CONTEXT_SEPARATOR + MappedFileSearcher.decode(buffer, start, end));
+        }
+
+        @Override
+        public void onBreak() {
+            //Перед первой группой файла разделитель не нужен
+            if(!output.isEmpty()) {
+                output.add(GROUP_SEPARATOR);
+                record(GROUP_SEPARATOR);
+            }
+        }
+
+        private void add(String line) {
+            output.add(prefix + line);
+            record(line);
+        }
+
+        private void record(String line) {
+            if(recorded == null) {
+                return;
+            }
+            recordedChars += line.length();
+            if(recordedChars > cache.getEntryLimit()) {
+                recorded = null;
+                overflow = true;
+                return;
+            }
+            recorded.add(line);
+        }
+
+        @Override
+        void drain() {
+            if(output != results) {
+                results.addAll(output);
+            }
+            fileMatches += matches;
+            if(cacheLines != null) {
+                cacheChars += recordedChars;
+                if(overflow || cacheChars > cache.getEntryLimit()) {
+                    cacheLines = null;
+                } else {
+                    cacheLines.addAll(recorded);
+                }
+            }
+        }
+    }
+
+    /**
+     * Подсчет найденных строк без создания объектов String.
+     * При подсчете по часам строка относится к часу по отметке времени в ее начале
+     */
+    private class CountingCollector extends Collector {
+        private int matches = 0;
+        private LongCountTable hours;           //Счетчики по часам; создаются при первой строке
+
+        @Override
+        public void onLine(ByteBuffer buffer, int start, int end, int pattern) {
+            matches++;
+            if(timeParser != null) {
+                if(hours == null) {
+                    hours = new LongCountTable();
+                }
+                hours.add(Aggregation.hourOf(timeParser.timeOf(buffer, start, end)), 1);
+            }
+        }
+
+        @Override
+        void drain() {
+            fileMatches += matches;
+            if(hours != null) {
+                counts.addHours(hours);
+            }
+        }
     }
 }
@@ -0,0 +1,125 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Регистронезависимый поиск нескольких подстрок за один проход (алгоритм Ахо-Корасик).
+ *
+ * Автомат строится заранее в виде полной таблицы переходов по 256 значениям байта,
+ * поэтому на каждый байт файла приходится ровно один переход.
+ * Поиск не изменяет состояние объекта, экземпляр можно использовать из нескольких потоков
+ */
+public class AhoCorasickMatcher implements ByteMatcher {
+
+    private static final int ALPHABET = 256;
+
+    private final int[] transitions;    //Таблица переходов: состояние * 256 + байт
+    private final int[] matchLength;    //Длина самой длинной подстроки, оканчивающейся в состоянии; 0 - нет
+    private final int[] matchPattern;   //Номер этой подстроки в списке
+
+    /**
+     * @param patterns подстроки для поиска
+     */
+    public AhoCorasickMatcher(String[] patterns) {
+        //Подстроки в нижнем регистре; null - если подстрока не может быть найдена
+        byte[][] needles = new byte[patterns.length][];
+        int maxStates = 1;
+        for(int index = 0; index < patterns.length; index++) {
+            needles[index] = CaseFolding.foldNeedle(patterns[index]);
+            if(needles[index] != null) {
+                maxStates += needles[index].length;
+            }
+        }
+
+        //Построение бора
+        int[] table = new int[maxStates * ALPHABET];
+        Arrays.fill(table, -1);
+        int[] lengths = new int[maxStates];
+        int[] indexes = new int[maxStates];
+        int states = 1;
+        for(int index = 0; index < needles.length; index++) {
+            byte[] needle = needles[index];
+            if(needle == null) {
+                continue;
+            }
+            int state = 0;
+            for(byte value : needle) {
+                int cell = state * ALPHABET + (value & 0xFF);
+                if(table[cell] < 0) {
+                    table[cell] = states++;
+                }
+                state = table[cell];
+            }
+            //При повторяющихся подстроках выводится первая из них
+            if(lengths[state] == 0) {
+                lengths[state] = needle.length;
+                indexes[state] = index;
+            }
+        }
+
+        //Достраивание переходов по суффиксным ссылкам обходом в ширину
+        int[] fail = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for(int code = 0; code < ALPHABET; code++) {
+            if(table[code] < 0) {
+                table[code] = 0;
+            } else {
+                fail[table[code]] = 0;
+                queue.add(table[code]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            if(lengths[fail[state]] > lengths[state]) {
+                lengths[state] = lengths[fail[state]];
+                indexes[state] = indexes[fail[state]];
+            }
+            for(int code = 0; code < ALPHABET; code++) {
+                int cell = state * ALPHABET + code;
+                int next = table[cell];
+                if(next < 0) {
+                    table[cell] = table[fail[state] * ALPHABET + code];
+                } else {
+                    fail[next] = table[fail[state] * ALPHABET + code];
+                    queue.add(next);
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(table, states * ALPHABET);
+        this.matchLength = Arrays.copyOf(lengths, states);
+        this.matchPattern = Arrays.copyOf(indexes, states);
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        int state = 0;
+        for(int position = from; position < to; position++) {
+            state = transitions[state * ALPHABET + CaseFolding.fold(buffer.get(position))];
+            if(matchLength[state] > 0) {
+                return position - matchLength[state] + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Номер подстроки берется из состояния автомата, в котором найдено вхождение. Повторный проход
+     * начинается с позиции вхождения: более раннего окончания подстроки после нее нет (иначе оно
+     * было бы найдено первым), а самая длинная подстрока в этом состоянии начинается именно с нее
+     */
+    @Override
+    public int patternAt(ByteBuffer buffer, int position) {
+        int state = 0;
+        for(int index = position; index < buffer.limit(); index++) {
+            state = transitions[state * ALPHABET + CaseFolding.fold(buffer.get(index))];
+            if(matchLength[state] > 0) {
+                return matchPattern[state];
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,50 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Представление диапазона буфера в виде последовательности символов без копирования.
+ * Каждый байт - один символ ISO-8859-1, как при декодировании найденных строк.
+ * Объект можно перенастраивать на другой диапазон, поэтому для проверки каждой строки
+ * не создаются новые объекты
+ */
+class ByteCharSequence implements CharSequence {
+
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+
+    /**
+     * Настройка на диапазон буфера
+     * @param buffer буфер
+     * @param start начало диапазона (включительно)
+     * @param end конец диапазона (не включительно)
+     */
+    void set(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        ByteCharSequence result = new ByteCharSequence();
+        result.set(buffer, start + from, start + to);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return MappedFileSearcher.decode(buffer, start, end);
+    }
+}
@@ -0,0 +1,40 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Интерфейс поиска подстроки непосредственно в байтах файла
+ */
+public interface ByteMatcher {
+
+    /**
+     * Поиск первого вхождения в заданном диапазоне буфера
+     * @param buffer буфер с содержимым файла
+     * @param from начальная позиция (включительно)
+     * @param to конечная позиция (не включительно)
+     * @return позиция начала вхождения; -1 - если вхождение не найдено
+     */
+    int indexOf(ByteBuffer buffer, int from, int to);
+
+    /**
+     * Определение подстроки, вхождение которой начинается в заданной позиции
+     * @param buffer буфер с содержимым файла
+     * @param position позиция, возвращенная методом {@link #indexOf(ByteBuffer, int, int)}
+     * @return номер подстроки в списке искомых
+     */
+    default int patternAt(ByteBuffer buffer, int position) {
+        return 0;
+    }
+
+    /**
+     * Выбор алгоритма поиска по количеству подстрок
+     * @param patterns подстроки для поиска
+     * @return алгоритм Бойера-Мура-Хорспула для одной подстроки, Ахо-Корасик - для нескольких
+     */
+    static ByteMatcher of(String[] patterns) {
+        if(patterns.length == 1) {
+            return new HorspoolMatcher(patterns[0]);
+        }
+        return new AhoCorasickMatcher(patterns);
+    }
+}
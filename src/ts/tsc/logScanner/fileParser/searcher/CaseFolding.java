@@ -0,0 +1,46 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+/**
+ * Таблица приведения байтов к нижнему регистру.
+ * Файлы читаются в кодировке ISO-8859-1, поэтому каждый байт соответствует
+ * одному символу, и для него достаточно таблицы из 256 элементов
+ */
+public final class CaseFolding {
+
+    private static final byte[] TABLE = new byte[256];
+
+    static {
+        for(int code = 0; code < TABLE.length; code++) {
+            TABLE[code] = (byte) Character.toLowerCase((char) code);
+        }
+    }
+
+    private CaseFolding() {
+    }
+
+    /**
+     * @param value байт из файла
+     * @return код символа в нижнем регистре (0..255)
+     */
+    public static int fold(byte value) {
+        return TABLE[value & 0xFF] & 0xFF;
+    }
+
+    /**
+     * Приведение строки для поиска к последовательности байтов в нижнем регистре
+     * @param text строка для поиска
+     * @return массив байтов; null - если строка содержит символы вне ISO-8859-1
+     * (такая строка не может встретиться в файле, прочитанном в этой кодировке)
+     */
+    public static byte[] foldNeedle(String text) {
+        byte[] needle = new byte[text.length()];
+        for(int index = 0; index < needle.length; index++) {
+            char symbol = Character.toLowerCase(text.charAt(index));
+            if(symbol > 0xFF) {
+                return null;
+            }
+            needle[index] = (byte) symbol;
+        }
+        return needle;
+    }
+}
@@ -0,0 +1,179 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Параллельный поиск в одном большом файле.
+ *
+ * Файл делится на фрагменты, границы которых сдвигаются на начало следующей строки,
+ * фрагменты просматриваются задачами пула fork/join, а результаты возвращаются
+ * в порядке следования фрагментов в файле
+ */
+public class ChunkedFileSearcher {
+
+    private static final int ALIGN_BLOCK = 64 * 1024;   //Размер блока чтения при поиске границы строки
+
+    //Количество потоков общего пула (учитывается в пределе потоков всех запросов)
+    public static final int POOL_THREADS = Runtime.getRuntime().availableProcessors();
+    //Общий пул для фрагментов всех файлов
+    private static final ForkJoinPool POOL = new ForkJoinPool(POOL_THREADS);
+
+    private final MappedFileSearcher searcher;
+    private final long chunkSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Обработчик строк одного фрагмента, накапливающий результат
+     * @param <R> тип результата
+     */
+    public interface ChunkHandler<R> extends LineHandler {
+        R result();
+    }
+
+    /**
+     * @param searcher поиск внутри фрагмента (должен допускать вызов из нескольких потоков)
+     * @param chunkSize примерный размер фрагмента в байтах
+     */
+    public ChunkedFileSearcher(MappedFileSearcher searcher, long chunkSize) {
+        this(searcher, chunkSize, POOL);
+    }
+
+    public ChunkedFileSearcher(MappedFileSearcher searcher, long chunkSize, ForkJoinPool pool) {
+        this.searcher = searcher;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Параллельный поиск в диапазоне файла
+     * @param channel открытый канал файла
+     * @param from начало диапазона, совпадающее с началом строки
+     * @param to конец диапазона
+     * @param handlers создание обработчика для каждого фрагмента
+     * @param <R> тип результата фрагмента
+     * @return результаты фрагментов в порядке их расположения в файле
+     * @throws IOException ошибка чтения файла
+     */
+    public <R> List<R> search(FileChannel channel, long from, long to,
+                              Supplier<? extends ChunkHandler<R>> handlers) throws IOException {
+        long[] bounds = splitByLines(channel, from, to);
+        try {
+            return pool.invoke(new ChunkTask<>(channel, bounds, 0, bounds.length - 1, handlers));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Разбиение диапазона на фрагменты, каждый из которых начинается с новой строки
+     * @return массив границ: i-й фрагмент занимает [bounds[i], bounds[i+1])
+     */
+    private long[] splitByLines(FileChannel channel, long from, long to) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(from);
+        ByteBuffer block = ByteBuffer.allocate(ALIGN_BLOCK);
+        long nominal = from + chunkSize;
+        while (nominal < to) {
+            long aligned = nextLineStart(channel, block, nominal, to);
+            if(aligned >= to) {
+                break;
+            }
+            bounds.add(aligned);
+            nominal = Math.max(aligned, nominal) + chunkSize;
+        }
+        bounds.add(to);
+
+        long[] result = new long[bounds.size()];
+        for(int index = 0; index < result.length; index++) {
+            result[index] = bounds.get(index);
+        }
+        return result;
+    }
+
+    /**
+     * @return позиция начала первой строки, которая начинается не раньше позиции position
+     */
+    private static long nextLineStart(FileChannel channel, ByteBuffer block,
+                                      long position, long to) throws IOException {
+        long current = position - 1;
+        while (current < to) {
+            block.clear();
+            int read = channel.read(block, current);
+            if(read <= 0) {
+                return to;
+            }
+            for(int index = 0; index < read && current + index < to; index++) {
+                byte value = block.get(index);
+                if(MappedFileSearcher.isLineBreak(value)) {
+                    long next = current + index + 1;
+                    //Перевод строки \r\n пропускается целиком, иначе следующий фрагмент начнется с пустой строки
+                    if(value == '\r' && next < to && (index + 1 < read
+                            ? block.get(index + 1) == '\n' : byteAt(channel, next) == '\n')) {
+                        next++;
+                    }
+                    return next;
+                }
+            }
+            current += read;
+        }
+        return to;
+    }
+
+    /**
+     * @return байт в позиции position; -1 - если позиция за концом файла
+     */
+    private static int byteAt(FileChannel channel, long position) throws IOException {
+        ByteBuffer single = ByteBuffer.allocate(1);
+        return channel.read(single, position) == 1 ? single.get(0) : -1;
+    }
+
+    /**
+     * Задача, рекурсивно делящая набор фрагментов пополам
+     */
+    private class ChunkTask<R> extends RecursiveTask<List<R>> {
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final int first;        //Первый фрагмент (включительно)
+        private final int last;         //Последний фрагмент (не включительно)
+        private final Supplier<? extends ChunkHandler<R>> handlers;
+
+        ChunkTask(FileChannel channel, long[] bounds, int first, int last,
+                  Supplier<? extends ChunkHandler<R>> handlers) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.first = first;
+            this.last = last;
+            this.handlers = handlers;
+        }
+
+        @Override
+        protected List<R> compute() {
+            if(last - first == 1) {
+                ChunkHandler<R> handler = handlers.get();
+                try {
+                    searcher.search(channel, bounds[first], bounds[last], handler);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                List<R> result = new ArrayList<>(1);
+                result.add(handler.result());
+                return result;
+            }
+            int middle = (first + last) >>> 1;
+            ChunkTask<R> left = new ChunkTask<>(channel, bounds, first, middle, handlers);
+            ChunkTask<R> right = new ChunkTask<>(channel, bounds, middle, last, handlers);
+            left.fork();
+            List<R> result = new ArrayList<>(right.compute());
+            result.addAll(0, left.join());
+            return result;
+        }
+    }
+}
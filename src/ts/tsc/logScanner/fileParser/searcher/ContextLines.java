@@ -0,0 +1,225 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Вывод строк контекста вокруг найденных строк (аналог grep -B/-A).
+ *
+ * Строки перед найденной берутся из того же буфера без копирования: от найденной строки
+ * выполняется обратный проход, но не дальше последней выведенной строки. Только строки
+ * в конце буфера, которые могут понадобиться в начале следующего буфера (окна отображения
+ * или прочитанной части потока), копируются в кольцо из повторно используемых массивов.
+ * Пересекающиеся окна контекста объединяются, перед несмежными группами вызывается
+ * {@link LineHandler#onBreak()}. Состояние относится к одному просматриваемому диапазону файла
+ */
+class ContextLines {
+
+    private final int before;               //Количество строк перед найденной
+    private final int after;                //Количество строк после найденной
+
+    //Кольцо последних строк предыдущего буфера
+    private final byte[][] ring;
+    private final ByteBuffer[] ringBuffers;
+    private final int[] ringLengths;
+    private int ringHead = 0;               //Индекс самой старой строки
+    private int ringCount = 0;
+    private boolean ringContiguous = true;  //Строки кольца следуют сразу за последней выведенной строкой
+
+    //Границы строк, найденных обратным проходом (от ближайшей к найденной строке)
+    private final int[] starts;
+    private final int[] ends;
+
+    private int afterLeft = 0;              //Сколько строк после найденной еще нужно вывести
+    private boolean emitted = false;        //Была ли выведена хотя бы одна строка диапазона
+
+    /**
+     * @param before количество строк перед найденной строкой
+     * @param after количество строк после найденной строки
+     */
+    ContextLines(int before, int after) {
+        this.before = before;
+        this.after = after;
+        this.ring = new byte[before][];
+        this.ringBuffers = new ByteBuffer[before];
+        this.ringLengths = new int[before];
+        this.starts = new int[before];
+        this.ends = new int[before];
+    }
+
+    /**
+     * Сброс состояния перед просмотром нового диапазона (массивы кольца сохраняются)
+     */
+    void reset() {
+        ringHead = 0;
+        ringCount = 0;
+        ringContiguous = true;
+        afterLeft = 0;
+        emitted = false;
+    }
+
+    /**
+     * Поиск в буфере с выводом контекста
+     * @param buffer буфер
+     * @param from начало диапазона, совпадающее с началом строки
+     * @param to конец диапазона
+     * @param matcher поиск подстроки
+     * @param filter проверка строк с вхождением; null - без проверки
+     * @param handler обработчик строк
+     */
+    void search(ByteBuffer buffer, int from, int to, ByteMatcher matcher, LineFilter filter,
+                LineHandler handler) {
+        int position = emitAfter(buffer, from, to, matcher, filter, handler);
+        int emittedEnd = position > from ? position : -1;    //Конец последней выведенной строки буфера
+
+        //Строки после последней нужной найденной строки выводятся до конца окна контекста
+        while (position < to && !handler.isDone()) {
+            int hit = matcher.indexOf(buffer, position, to);
+            if(hit < 0) {
+                break;
+            }
+            int lineStart = MappedFileSearcher.lineStart(buffer, hit, position);
+            int lineEnd = MappedFileSearcher.lineEnd(buffer, hit, to);
+            if(filter != null && !filter.accept(buffer, lineStart, lineEnd)) {
+                position = MappedFileSearcher.nextLine(buffer, lineEnd, to);
+                continue;
+            }
+            emitBefore(buffer, from, lineStart, emittedEnd, handler);
+            handler.onLine(buffer, lineStart, lineEnd, matcher.patternAt(buffer, hit));
+            emitted = true;
+            afterLeft = after;
+            position = emitAfter(buffer, MappedFileSearcher.nextLine(buffer, lineEnd, to), to,
+                    matcher, filter, handler);
+            emittedEnd = position;
+        }
+        keepTail(buffer, from, to, emittedEnd);
+    }
+
+    /**
+     * Вывод строк после найденной. Найденная среди них строка продлевает окно контекста
+     * @return позиция начала первой невыведенной строки
+     */
+    private int emitAfter(ByteBuffer buffer, int from, int to, ByteMatcher matcher, LineFilter filter,
+                          LineHandler handler) {
+        int position = from;
+        while (afterLeft > 0 && position < to) {
+            int lineEnd = MappedFileSearcher.lineEnd(buffer, position, to);
+            int hit = matcher.indexOf(buffer, position, lineEnd);
+            //Когда найденные строки больше не нужны, следующие совпадения выводятся как контекст
+            if(hit >= 0 && !handler.isDone() && (filter == null || filter.accept(buffer, position, lineEnd))) {
+                handler.onLine(buffer, position, lineEnd, matcher.patternAt(buffer, hit));
+                afterLeft = after;
+            } else {
+                handler.onContext(buffer, position, lineEnd);
+                afterLeft--;
+            }
+            position = MappedFileSearcher.nextLine(buffer, lineEnd, to);
+        }
+        return position;
+    }
+
+    /**
+     * Вывод строк перед найденной: из буфера, а если их там не хватает - из кольца
+     * @param lineStart начало найденной строки
+     * @param emittedEnd конец последней выведенной строки буфера; -1 - в буфере ничего не выведено
+     */
+    private void emitBefore(ByteBuffer buffer, int from, int lineStart, int emittedEnd, LineHandler handler) {
+        int floor = emittedEnd >= 0 ? emittedEnd : from;
+        int count = collectBackward(buffer, floor, lineStart);
+        int first = count > 0 ? starts[count - 1] : lineStart;
+
+        int fromRing = 0;
+        boolean adjacent;
+        if(emittedEnd >= 0) {
+            adjacent = first == emittedEnd;
+        } else if(first == from) {
+            //Строки буфера закончились - недостающие берутся из конца предыдущего буфера
+            fromRing = Math.min(ringCount, before - count);
+            adjacent = emitted && ringContiguous && fromRing == ringCount;
+        } else {
+            adjacent = false;
+        }
+        if(!adjacent) {
+            handler.onBreak();
+        }
+
+        for(int index = ringCount - fromRing; index < ringCount; index++) {
+            int slot = (ringHead + index) % before;
+            handler.onContext(ringBuffers[slot], 0, ringLengths[slot]);
+        }
+        ringCount = 0;
+        ringContiguous = true;
+        for(int index = count - 1; index >= 0; index--) {
+            handler.onContext(buffer, starts[index], ends[index]);
+        }
+    }
+
+    /**
+     * Сохранение в кольце последних строк буфера, которые еще не выведены
+     * @param emittedEnd конец последней выведенной строки буфера; -1 - в буфере ничего не выведено
+     */
+    private void keepTail(ByteBuffer buffer, int from, int to, int emittedEnd) {
+        int floor = emittedEnd >= 0 ? emittedEnd : from;
+        int count = collectBackward(buffer, floor, to);
+        int first = count > 0 ? starts[count - 1] : to;
+        if(emittedEnd >= 0) {
+            ringCount = 0;
+            ringContiguous = first == emittedEnd;
+        } else if(first > from) {
+            //Между строками кольца и новыми строками есть пропущенные строки
+            ringCount = 0;
+            ringContiguous = false;
+        }
+        for(int index = count - 1; index >= 0; index--) {
+            push(buffer, starts[index], ends[index]);
+        }
+    }
+
+    /**
+     * Обратный проход от позиции position (начала строки или конца буфера) не дальше floor
+     * @return количество найденных строк (не больше before); границы - в starts и ends
+     */
+    private int collectBackward(ByteBuffer buffer, int floor, int position) {
+        int count = 0;
+        int current = position;
+        while (count < before && current > floor) {
+            int end = current;
+            if(MappedFileSearcher.isLineBreak(buffer.get(end - 1))) {
+                end--;
+                //Перевод строки \r\n относится к одной строке
+                if(buffer.get(end) == '\n' && end > floor && buffer.get(end - 1) == '\r') {
+                    end--;
+                }
+            }
+            int start = MappedFileSearcher.lineStart(buffer, end, floor);
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+            current = start;
+        }
+        return count;
+    }
+
+    /**
+     * Копирование строки в кольцо; самая старая строка вытесняется, если кольцо заполнено
+     */
+    private void push(ByteBuffer buffer, int start, int end) {
+        int slot;
+        if(ringCount == before) {
+            slot = ringHead;
+            ringHead = (ringHead + 1) % before;
+            ringContiguous = false;
+        } else {
+            slot = (ringHead + ringCount) % before;
+            ringCount++;
+        }
+        int length = end - start;
+        if(ring[slot] == null || ring[slot].length < length) {
+            ring[slot] = new byte[Math.max(length, 128)];
+            ringBuffers[slot] = ByteBuffer.wrap(ring[slot]);
+        }
+        for(int index = 0; index < length; index++) {
+            ring[slot][index] = buffer.get(start + index);
+        }
+        ringLengths[slot] = length;
+    }
+}
@@ -0,0 +1,15 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Выбор каждой строки для проверки {@link LineFilter}: используется для регулярного выражения,
+ * если не задана подстрока для предварительного отбора строк
+ */
+public class EveryLineMatcher implements ByteMatcher {
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        return from < to ? from : -1;
+    }
+}
@@ -0,0 +1,56 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Регистронезависимый поиск подстроки по алгоритму Бойера-Мура-Хорспула.
+ * Таблица сдвигов строится один раз при создании объекта,
+ * сам поиск не создает новых объектов, поэтому экземпляр можно использовать из нескольких потоков
+ */
+public class HorspoolMatcher implements ByteMatcher {
+
+    private final byte[] needle;        //Подстрока в нижнем регистре; null - если она не может быть найдена
+    private final int[] shifts = new int[256];  //Таблица сдвигов по последнему символу окна
+
+    /**
+     * @param text подстрока для поиска
+     */
+    public HorspoolMatcher(String text) {
+        this.needle = CaseFolding.foldNeedle(text);
+        if(needle == null) {
+            return;
+        }
+        int last = needle.length - 1;
+        for(int code = 0; code < shifts.length; code++) {
+            shifts[code] = needle.length;
+        }
+        for(int index = 0; index < last; index++) {
+            shifts[needle[index] & 0xFF] = last - index;
+        }
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        if(needle == null) {
+            return -1;
+        }
+        int last = needle.length - 1;
+        int lastByte = needle[last] & 0xFF;
+        int position = from;
+        while (position + last < to) {
+            int code = CaseFolding.fold(buffer.get(position + last));
+            if(code == lastByte) {
+                int index = last - 1;
+                while (index >= 0
+                        && CaseFolding.fold(buffer.get(position + index)) == (needle[index] & 0xFF)) {
+                    index--;
+                }
+                if(index < 0) {
+                    return position;
+                }
+            }
+            position += shifts[code];
+        }
+        return -1;
+    }
+}
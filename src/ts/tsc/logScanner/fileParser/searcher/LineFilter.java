@@ -0,0 +1,17 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Дополнительная проверка строки, в которой {@link ByteMatcher} нашел вхождение
+ */
+public interface LineFilter {
+
+    /**
+     * @param buffer буфер с содержимым файла
+     * @param start позиция начала строки (включительно)
+     * @param end позиция конца строки без символов перевода строки (не включительно)
+     * @return true - строка подходит; иначе - false
+     */
+    boolean accept(ByteBuffer buffer, int start, int end);
+}
@@ -0,0 +1,42 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Обработчик найденных строк
+ */
+public interface LineHandler {
+
+    /**
+     * Вызывается для каждой строки, содержащей искомую подстроку
+     * @param buffer буфер с содержимым файла
+     * @param start позиция начала строки (включительно)
+     * @param end позиция конца строки без символов перевода строки (не включительно)
+     * @param pattern номер найденной подстроки в списке искомых
+     */
+    void onLine(ByteBuffer buffer, int start, int end, int pattern);
+
+    /**
+     * Вызывается для строки контекста (соседней с найденной строкой), если вывод контекста задан
+     * @param buffer буфер с содержимым файла
+     * @param start позиция начала строки (включительно)
+     * @param end позиция конца строки без символов перевода строки (не включительно)
+     */
+    default void onContext(ByteBuffer buffer, int start, int end) {
+    }
+
+    /**
+     * Вызывается перед группой строк, не примыкающей к предыдущей выведенной строке
+     * (в том числе перед первой группой), если вывод контекста задан
+     */
+    default void onBreak() {
+    }
+
+    /**
+     * Проверяется после каждой найденной строки и перед следующей частью файла
+     * @return true - если строки больше не нужны и просмотр можно прекратить
+     */
+    default boolean isDone() {
+        return false;
+    }
+}
@@ -0,0 +1,13 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.io.IOException;
+
+/**
+ * Строка в файле не помещается в одно отображаемое окно
+ */
+public class LineTooLongException extends IOException {
+
+    public LineTooLongException(long position) {
+        super("Строка, начинающаяся с позиции " + position + ", слишком длинная");
+    }
+}
@@ -0,0 +1,278 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Поиск подстроки в файле, отображенном в память.
+ *
+ * Файл не декодируется в строки: сопоставление выполняется над байтами,
+ * а границы строк определяются только вокруг найденных вхождений.
+ * Большие файлы отображаются окнами, каждое окно заканчивается на границе строки.
+ * Если задан {@link LineFilter}, строка с вхождением дополнительно проверяется им
+ * (например, подстрока отбирает строки, а регулярное выражение проверяет только их).
+ * Если задан вывод контекста, состояние контекста хранится в объекте поиска, поэтому
+ * такой объект используется только одним потоком.
+ * Просмотр прекращается досрочно, если обработчику больше не нужны строки ({@link LineHandler#isDone()})
+ */
+public class MappedFileSearcher {
+
+    private static final int DEFAULT_WINDOW = 1 << 28;   //Размер окна отображения (256 Мб)
+
+    private final ByteMatcher matcher;
+    private final LineFilter filter;        //Проверка строк с вхождением; null - без проверки
+    private final int windowSize;
+    private final ContextLines context;     //Вывод строк контекста; null - выводятся только найденные строки
+
+    /**
+     * @param matcher алгоритм поиска подстроки
+     */
+    public MappedFileSearcher(ByteMatcher matcher) {
+        this(matcher, null, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param matcher алгоритм поиска подстроки
+     * @param filter проверка строк с вхождением; null - без проверки
+     */
+    public MappedFileSearcher(ByteMatcher matcher, LineFilter filter) {
+        this(matcher, filter, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param matcher алгоритм поиска подстроки
+     * @param windowSize максимальный размер отображаемого окна в байтах
+     */
+    public MappedFileSearcher(ByteMatcher matcher, int windowSize) {
+        this(matcher, null, windowSize);
+    }
+
+    /**
+     * @param matcher алгоритм поиска подстроки
+     * @param filter проверка строк с вхождением; null - без проверки
+     * @param windowSize максимальный размер отображаемого окна в байтах
+     */
+    public MappedFileSearcher(ByteMatcher matcher, LineFilter filter, int windowSize) {
+        this(matcher, filter, 0, 0, windowSize);
+    }
+
+    /**
+     * @param matcher алгоритм поиска подстроки
+     * @param filter проверка строк с вхождением; null - без проверки
+     * @param before количество строк контекста перед найденной строкой
+     * @param after количество строк контекста после найденной строки
+     */
+    public MappedFileSearcher(ByteMatcher matcher, LineFilter filter, int before, int after) {
+        this(matcher, filter, before, after, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param matcher алгоритм поиска подстроки
+     * @param filter проверка строк с вхождением; null - без проверки
+     * @param before количество строк контекста перед найденной строкой
+     * @param after количество строк контекста после найденной строки
+     * @param windowSize максимальный размер отображаемого окна в байтах
+     */
+    public MappedFileSearcher(ByteMatcher matcher, LineFilter filter, int before, int after, int windowSize) {
+        this.matcher = matcher;
+        this.filter = filter;
+        this.windowSize = windowSize;
+        this.context = before > 0 || after > 0 ? new ContextLines(before, after) : null;
+    }
+
+    /**
+     * @return true - если вместе с найденными строками выводятся строки контекста
+     */
+    public boolean hasContext() {
+        return context != null;
+    }
+
+    /**
+     * Начало нового диапазона: контекст предыдущего диапазона не переносится в новый
+     */
+    public void resetContext() {
+        if(context != null) {
+            context.reset();
+        }
+    }
+
+    /**
+     * Поиск во всем файле
+     * @param path путь к файлу
+     * @param handler обработчик найденных строк
+     * @throws IOException ошибка чтения файла
+     */
+    public void search(Path path, LineHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            search(channel, 0, channel.size(), handler);
+        }
+    }
+
+    /**
+     * Поиск в диапазоне байтов файла. Начало диапазона должно совпадать с началом строки
+     * @param channel открытый канал файла
+     * @param from начальная позиция (включительно)
+     * @param to конечная позиция (не включительно)
+     * @param handler обработчик найденных строк
+     * @throws IOException ошибка чтения файла
+     * @throws LineTooLongException строка не помещается в окно отображения
+     */
+    public void search(FileChannel channel, long from, long to, LineHandler handler) throws IOException {
+        resetContext();
+        long position = from;
+        while (position < to && !handler.isDone()) {
+            int length = (int) Math.min(windowSize, to - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            //Окно, не являющееся последним, обрезается по последнему переводу строки
+            int limit = length;
+            if(position + length < to) {
+                limit = lastLineBreak(buffer, length) + 1;
+                if(limit == 0) {
+                    throw new LineTooLongException(position);
+                }
+            }
+            searchBuffer(buffer, 0, limit, handler);
+            position += limit;
+        }
+    }
+
+    /**
+     * Поиск вхождений в буфере, вызов обработчика для каждой строки, содержащей вхождение
+     * @param buffer буфер
+     * @param from начало диапазона, совпадающее с началом строки
+     * @param to конец диапазона
+     * @param handler обработчик найденных строк
+     */
+    public void searchBuffer(ByteBuffer buffer, int from, int to, LineHandler handler) {
+        if(context != null) {
+            context.search(buffer, from, to, matcher, filter, handler);
+            return;
+        }
+        int position = from;
+        while (position < to) {
+            int hit = matcher.indexOf(buffer, position, to);
+            if(hit < 0) {
+                return;
+            }
+            int lineStart = lineStart(buffer, hit, position);
+            int lineEnd = lineEnd(buffer, hit, to);
+            if(filter == null || filter.accept(buffer, lineStart, lineEnd)) {
+                handler.onLine(buffer, lineStart, lineEnd, matcher.patternAt(buffer, hit));
+                if(handler.isDone()) {
+                    return;
+                }
+            }
+            //Продолжение поиска со следующей строки
+            position = nextLine(buffer, lineEnd, to);
+        }
+    }
+
+    /**
+     * Преобразование строки из буфера в объект String (кодировка ISO-8859-1)
+     * @param buffer буфер
+     * @param start начало строки
+     * @param end конец строки
+     * @return строка
+     */
+    public static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for(int index = 0; index < bytes.length; index++) {
+            bytes[index] = buffer.get(start + index);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Определение конца последней полной строки в диапазоне файла
+     * @param channel открытый канал файла
+     * @param from начало диапазона
+     * @param to конец диапазона
+     * @return позиция после последнего перевода строки; from - если в диапазоне нет полных строк
+     * @throws IOException ошибка чтения файла
+     */
+    public static long completeLinesEnd(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+        long end = to;
+        while (end > from) {
+            long start = Math.max(from, end - block.capacity());
+            block.clear();
+            block.limit((int) (end - start));
+            int read = 0;
+            while (block.hasRemaining()) {
+                int count = channel.read(block, start + read);
+                if(count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            for(int index = read - 1; index >= 0; index--) {
+                if(isLineBreak(block.get(index))) {
+                    return start + index + 1;
+                }
+            }
+            end = start;
+        }
+        return from;
+    }
+
+    public static boolean isLineBreak(byte value) {
+        return value == '\n' || value == '\r';
+    }
+
+    /**
+     * @return позиция первого символа строки, содержащей позицию position
+     */
+    static int lineStart(ByteBuffer buffer, int position, int from) {
+        int index = position;
+        while (index > from && !isLineBreak(buffer.get(index - 1))) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * @return позиция символа перевода строки (или конца диапазона) после позиции position
+     */
+    static int lineEnd(ByteBuffer buffer, int position, int to) {
+        int index = position;
+        while (index < to && !isLineBreak(buffer.get(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return начало строки, следующей за строкой с концом lineEnd (перевод строки \r\n пропускается целиком)
+     */
+    static int nextLine(ByteBuffer buffer, int lineEnd, int to) {
+        int position = lineEnd + 1;
+        if(position < to && buffer.get(lineEnd) == '\r' && buffer.get(position) == '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Символ \r в последнем байте буфера не считается концом строки: следующий за ним \n
+     * может оказаться в следующей части файла, и пара \r\n была бы разделена
+     * @return позиция последнего перевода строки в буфере; -1 - если его нет
+     */
+    static int lastLineBreak(ByteBuffer buffer, int length) {
+        int last = length - 1;
+        if(last >= 0 && buffer.get(last) == '\r') {
+            last--;
+        }
+        for(int index = last; index >= 0; index--) {
+            if(isLineBreak(buffer.get(index))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,44 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.nio.ByteBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Проверка строки регулярным выражением.
+ *
+ * Выражение компилируется один раз. Каждый поток использует свой {@link Matcher},
+ * который перенастраивается на очередную строку буфера без создания объектов String
+ */
+public class RegexLineFilter implements LineFilter {
+
+    private final Pattern pattern;
+    private final ThreadLocal<State> state;
+
+    /**
+     * Представление строки и настроенный на него Matcher одного потока
+     */
+    private static class State {
+        final ByteCharSequence line = new ByteCharSequence();
+        final Matcher matcher;
+
+        State(Pattern pattern) {
+            this.matcher = pattern.matcher(line);
+        }
+    }
+
+    /**
+     * @param pattern скомпилированное регулярное выражение
+     */
+    public RegexLineFilter(Pattern pattern) {
+        this.pattern = pattern;
+        this.state = ThreadLocal.withInitial(() -> new State(this.pattern));
+    }
+
+    @Override
+    public boolean accept(ByteBuffer buffer, int start, int end) {
+        State current = state.get();
+        current.line.set(buffer, start, end);
+        return current.matcher.reset(current.line).find();
+    }
+}
@@ -0,0 +1,129 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Поиск подстроки в потоке байтов (например, в распаковываемом архиве).
+ *
+ * Поток читается в большой буфер, который используется повторно для всех файлов потока поиска.
+ * Если буфер пришлось увеличить под длинную строку, после файла он возвращается к начальному размеру.
+ * Просматриваются только полные строки буфера, недочитанная последняя строка
+ * переносится в начало буфера и просматривается после следующего чтения.
+ * Если задано ограничение, поиск в каждом прочитанном буфере выполняется только
+ * при наличии разрешения, а чтение - без него: так много потоков могут одновременно
+ * ждать данных, а поиском заняты не больше потоков, чем задано
+ */
+public class StreamSearcher {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;         //Начальный размер буфера
+    private static final int MAX_BUFFER_SIZE = 64 * 1024 * 1024; //Максимальная длина строки
+
+    private final MappedFileSearcher searcher;
+    private final Semaphore matchPermits;   //Разрешения на поиск в буфере; null - без ограничения
+    private final int bufferSize;           //Начальный размер буфера
+    private byte[] buffer;
+    private ByteBuffer wrapped;
+
+    /**
+     * @param searcher поиск в буфере
+     */
+    public StreamSearcher(MappedFileSearcher searcher) {
+        this(searcher, BUFFER_SIZE, null);
+    }
+
+    /**
+     * @param searcher поиск в буфере
+     * @param bufferSize начальный размер буфера
+     * @param matchPermits разрешения на поиск, общие для всех потоков запроса; null - без ограничения
+     */
+    public StreamSearcher(MappedFileSearcher searcher, int bufferSize, Semaphore matchPermits) {
+        this.searcher = searcher;
+        this.matchPermits = matchPermits;
+        this.bufferSize = bufferSize;
+        this.buffer = new byte[bufferSize];
+        this.wrapped = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Поиск во всем потоке
+     * @param input поток (не закрывается)
+     * @param handler обработчик найденных строк; буфер действителен только во время вызова
+     * @throws IOException ошибка чтения потока
+     * @throws LineTooLongException строка длиннее максимального размера буфера
+     */
+    public void search(InputStream input, LineHandler handler) throws IOException {
+        try {
+            searchStream(input, handler);
+        } finally {
+            if(buffer.length > bufferSize) {
+                buffer = new byte[bufferSize];
+                wrapped = ByteBuffer.wrap(buffer);
+            }
+        }
+    }
+
+    private void searchStream(InputStream input, LineHandler handler) throws IOException {
+        searcher.resetContext();
+        int length = 0;
+        long position = 0;      //Позиция начала буфера в потоке
+        while (true) {
+            int read = input.read(buffer, length, buffer.length - length);
+            if(read < 0) {
+                if(length > 0) {
+                    searchBuffer(length, handler);
+                }
+                return;
+            }
+            length += read;
+            if(length < buffer.length) {
+                continue;
+            }
+
+            int limit = MappedFileSearcher.lastLineBreak(wrapped, length) + 1;
+            if(limit == 0) {
+                //Строка не помещается в буфер - увеличение буфера
+                if(buffer.length >= MAX_BUFFER_SIZE) {
+                    throw new LineTooLongException(position);
+                }
+                byte[] larger = new byte[Math.min(MAX_BUFFER_SIZE, buffer.length * 2)];
+                System.arraycopy(buffer, 0, larger, 0, length);
+                buffer = larger;
+                wrapped = ByteBuffer.wrap(buffer);
+                continue;
+            }
+            searchBuffer(limit, handler);
+            if(handler.isDone()) {
+                //Остаток потока не читается
+                return;
+            }
+            System.arraycopy(buffer, limit, buffer, 0, length - limit);
+            length -= limit;
+            position += limit;
+        }
+    }
+
+    /**
+     * Поиск в начале буфера с получением разрешения, если задано ограничение
+     */
+    private void searchBuffer(int limit, LineHandler handler) throws InterruptedIOException {
+        if(matchPermits == null) {
+            searcher.searchBuffer(wrapped, 0, limit, handler);
+            return;
+        }
+        try {
+            matchPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Поиск был прерван");
+        }
+        try {
+            searcher.searchBuffer(wrapped, 0, limit, handler);
+        } finally {
+            matchPermits.release();
+        }
+    }
+}
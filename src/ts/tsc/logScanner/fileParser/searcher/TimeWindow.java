@@ -0,0 +1,232 @@
+package ts.tsc.logScanner.fileParser.searcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+
+/**
+ * Интервал времени для поиска в логах, строки которых начинаются с отметки времени
+ * и упорядочены по времени.
+ *
+ * Границы интервала в файле находятся двоичным поиском: в каждой проверяемой позиции
+ * читается только начало ближайшей строки с отметкой времени. Строки без отметки
+ * (например, продолжение стека вызовов) относятся к предыдущей строке с отметкой.
+ * Если в начале файла отметка времени не найдена, файл просматривается целиком
+ */
+public class TimeWindow {
+
+    public static final String DEFAULT_FORMAT = "yyyy-MM-dd['T'][' ']HH:mm:ss";
+
+    private static final int PROBE_BLOCK = 4096;        //Размер блока, читаемого в каждой позиции
+    private static final int MAX_PROBE_LINES = 64;      //Количество строк, просматриваемых в поисках отметки
+
+    private final DateTimeFormatter formatter;
+    private final long from;        //Начало интервала (включительно), мс
+    private final long to;          //Конец интервала (включительно), мс
+
+    /**
+     * @param format формат отметки времени в начале строки (как в {@link DateTimeFormatter})
+     * @param fromText начало интервала в том же формате; null - без ограничения
+     * @param toText конец интервала в том же формате; null - без ограничения
+     * @throws IllegalArgumentException неверный формат
+     * @throws DateTimeException граница интервала не соответствует формату
+     */
+    public TimeWindow(String format, String fromText, String toText) {
+        this.formatter = DateTimeFormatter.ofPattern(format);
+        this.from = fromText == null ? Long.MIN_VALUE : toMillis(formatter.parse(fromText));
+        this.to = toText == null ? Long.MAX_VALUE : toMillis(formatter.parse(toText));
+    }
+
+    /**
+     * Проверка файла по времени изменения: если файл последний раз изменялся
+     * до начала интервала, все его строки старше интервала
+     * @param lastModified время изменения файла, мс
+     * @return true - файл можно пропустить
+     */
+    public boolean isBefore(long lastModified) {
+        return lastModified < from;
+    }
+
+    /**
+     * Время строки по отметке в ее начале
+     * @param buffer буфер с содержимым файла
+     * @param start начало строки
+     * @param end конец строки
+     * @return время, мс; Long.MIN_VALUE - если строка не начинается с отметки времени
+     */
+    public long timeOf(ByteBuffer buffer, int start, int end) {
+        ByteCharSequence line = new ByteCharSequence();
+        line.set(buffer, start, end);
+        return parse(line);
+    }
+
+    /**
+     * Определение диапазона файла, содержащего строки интервала
+     * @param channel открытый канал файла
+     * @param start начало просматриваемой части файла (начало строки)
+     * @param end конец просматриваемой части файла
+     * @return начало и конец диапазона; исходные границы - если в файле нет отметок времени
+     * @throws IOException ошибка чтения файла
+     */
+    public long[] range(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(PROBE_BLOCK);
+        ByteCharSequence line = new ByteCharSequence();
+        if(start >= end || timeAt(channel, start, end, block, line) == Long.MIN_VALUE) {
+            return new long[] {start, end};
+        }
+        long rangeStart = from == Long.MIN_VALUE ? start : lowerBound(channel, start, end, from, block, line);
+        long rangeEnd = to == Long.MAX_VALUE ? end : lowerBound(channel, rangeStart, end, to + 1, block, line);
+        return new long[] {rangeStart, rangeEnd};
+    }
+
+    /**
+     * Поиск первой строки, время которой не меньше заданного.
+     * Каждая позиция двоичного поиска сдвигается на начало следующей строки
+     * @return начало найденной строки; end - если такой строки нет
+     */
+    private long lowerBound(FileChannel channel, long start, long end, long time,
+                            ByteBuffer block, ByteCharSequence line) throws IOException {
+        long low = start;
+        long high = end;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            long lineStart = nextLineStart(channel, middle, end, block);
+            if(lineStart >= end || timeAt(channel, lineStart, end, block, line) >= time) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        //Строки без отметки в начале найденной позиции относятся к предыдущей строке интервала
+        return stampedLineStart(channel, nextLineStart(channel, low, end, block), end, block, line);
+    }
+
+    /**
+     * @return начало первой строки с отметкой времени, начиная с позиции lineStart;
+     * lineStart - если отметка не найдена в нескольких строках подряд
+     */
+    private long stampedLineStart(FileChannel channel, long lineStart, long end,
+                                  ByteBuffer block, ByteCharSequence line) throws IOException {
+        long position = lineStart;
+        for(int probe = 0; probe < MAX_PROBE_LINES && position < end; probe++) {
+            if(parse(readLine(channel, position, end, block, line)) != Long.MIN_VALUE) {
+                return position;
+            }
+            position = nextLineStart(channel, position + 1, end, block);
+        }
+        return position >= end ? end : lineStart;
+    }
+
+    /**
+     * @return начало первой строки, начинающейся не раньше позиции position
+     */
+    private static long nextLineStart(FileChannel channel, long position, long end,
+                                      ByteBuffer block) throws IOException {
+        if(position == 0) {
+            return 0;
+        }
+        //Позиция является началом строки, если перед ней перевод строки
+        long current = position - 1;
+        while (current < end) {
+            int read = readBlock(channel, current, end, block);
+            if(read <= 0) {
+                //Файл был усечен во время поиска
+                return end;
+            }
+            for(int index = 0; index < read; index++) {
+                if(MappedFileSearcher.isLineBreak(block.get(index))) {
+                    long next = current + index + 1;
+                    //Перевод строки \r\n пропускается целиком
+                    if(block.get(index) == '\r' && index + 1 < read && block.get(index + 1) == '\n') {
+                        next++;
+                    }
+                    return next;
+                }
+            }
+            current += read;
+        }
+        return end;
+    }
+
+    /**
+     * Время первой строки с отметкой, начиная со строки в позиции lineStart
+     * @return время, мс; Long.MAX_VALUE - если до конца диапазона нет отметок;
+     * Long.MIN_VALUE - если отметка не найдена в нескольких строках подряд (файл без отметок)
+     */
+    private long timeAt(FileChannel channel, long lineStart, long end,
+                        ByteBuffer block, ByteCharSequence line) throws IOException {
+        long position = lineStart;
+        for(int probe = 0; probe < MAX_PROBE_LINES && position < end; probe++) {
+            long time = parse(readLine(channel, position, end, block, line));
+            if(time != Long.MIN_VALUE) {
+                return time;
+            }
+            position = nextLineStart(channel, position + 1, end, block);
+        }
+        return position >= end ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+
+    /**
+     * Разбор отметки времени в начале строки
+     * @return время, мс; Long.MIN_VALUE - если строка не начинается с отметки
+     */
+    private long parse(CharSequence text) {
+        try {
+            return toMillis(formatter.parse(text, new ParsePosition(0)));
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Чтение начала строки в позиции lineStart (не длиннее блока)
+     */
+    private static CharSequence readLine(FileChannel channel, long lineStart, long end,
+                                         ByteBuffer block, ByteCharSequence line) throws IOException {
+        int read = readBlock(channel, lineStart, end, block);
+        line.set(block, 0, MappedFileSearcher.lineEnd(block, 0, read));
+        return line;
+    }
+
+    private static int readBlock(FileChannel channel, long position, long end,
+                                 ByteBuffer block) throws IOException {
+        block.clear();
+        block.limit((int) Math.min(block.capacity(), end - position));
+        int read = 0;
+        while (block.hasRemaining()) {
+            int count = channel.read(block, position + read);
+            if(count < 0) {
+                break;
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    /**
+     * Перевод отметки времени в миллисекунды. Если в формате нет часового пояса,
+     * используется часовой пояс системы, если нет времени - начало суток
+     */
+    private static long toMillis(TemporalAccessor value) {
+        if(value.isSupported(ChronoField.INSTANT_SECONDS)) {
+            return Instant.from(value).toEpochMilli();
+        }
+        LocalDate date = value.query(TemporalQueries.localDate());
+        if(date == null) {
+            throw new DateTimeException("В отметке времени нет даты");
+        }
+        LocalTime time = value.query(TemporalQueries.localTime());
+        return date.atTime(time != null ? time : LocalTime.MIDNIGHT)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
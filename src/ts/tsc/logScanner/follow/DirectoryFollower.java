@@ -0,0 +1,207 @@
+package ts.tsc.logScanner.follow;
+
+import ts.tsc.logScanner.checkpoint.CheckpointStore;
+import ts.tsc.logScanner.directory.CheckDirectory;
+import ts.tsc.logScanner.fileParser.fileParser;
+import ts.tsc.logScanner.fileParser.searcher.MappedFileSearcher;
+import ts.tsc.logScanner.inputLine.inputParser.InputParser;
+import ts.tsc.logScanner.inputLine.LineInterface;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Наблюдение за деревом начальной директории (аналог tail -F).
+ *
+ * При запуске запоминаются текущие размеры подходящих файлов, затем по событиям
+ * {@link WatchService} просматриваются только дописанные строки измененных файлов,
+ * новые файлы просматриваются с начала. Ротация и усечение файлов определяются так же,
+ * как в инкрементальном режиме. Для файловых систем, не присылающих события (например, сетевых),
+ * все известные файлы дополнительно проверяются с заданным интервалом.
+ * Сжатые файлы (.gz, .zip) не дописываются, а появляются при ротации и содержат уже выведенные строки,
+ * поэтому при наблюдении они не просматриваются
+ */
+public class DirectoryFollower implements Runnable {
+
+    private static final long POLL_INTERVAL_MS = 200;       //Время ожидания события
+    private static final long RESCAN_INTERVAL_MS = 10000;   //Интервал проверки всех известных файлов
+
+    private final LineInterface line;
+    private final fileParser parser;            //Поиск в дописанной части файла
+    private final CheckpointStore checkpoints;  //Позиции, до которых просмотрены файлы
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Set<Path> files = new LinkedHashSet<>();
+    private WatchService watchService;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param line параметры поиска
+     * @param parser поиск в файле, использующий хранилище позиций checkpoints
+     * @param checkpoints хранилище позиций (не сохраняется на диск)
+     */
+    public DirectoryFollower(LineInterface line, fileParser parser, CheckpointStore checkpoints) {
+        this.line = line;
+        this.parser = parser;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Остановка наблюдения
+     */
+    public void stop() {
+        stopped = true;
+        if(watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.out.println("> Ошибка в ходе остановки наблюдения за директорией");
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            //Существующее содержимое файлов пропускается, выводятся только новые строки
+            register(Paths.get(line.getInputDir()), false);
+            long lastRescan = System.currentTimeMillis();
+
+            while (!stopped) {
+                WatchKey key = watchService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if(key != null) {
+                    processEvents(key);
+                }
+                if(System.currentTimeMillis() - lastRescan >= RESCAN_INTERVAL_MS) {
+                    rescan();
+                    lastRescan = System.currentTimeMillis();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            //Наблюдение остановлено
+        } catch (IOException e) {
+            System.out.println("> Ошибка в ходе наблюдения за директорией");
+        }
+    }
+
+    /**
+     * Обработка событий одной директории
+     */
+    private void processEvents(WatchKey key) throws IOException {
+        Path directory = directories.get(key);
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                //События были потеряны - проверка всех файлов
+                rescan();
+                continue;
+            }
+            if(directory == null) {
+                continue;
+            }
+            Path entry = directory.resolve((Path) event.context());
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+            } catch (IOException e) {
+                //Файл уже удален или переименован
+                continue;
+            }
+            if(attrs.isDirectory()) {
+                if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    //Файлы в новой директории просматриваются с начала
+                    register(entry, true);
+                }
+            } else if(isFollowed(entry, attrs)) {
+                files.add(entry);
+                parser.parseFile(entry);
+            }
+        }
+        if(!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Регистрация директории и всех ее поддиректорий
+     * @param root директория
+     * @param scanExisting true - просмотреть найденные файлы с начала;
+     *                     false - запомнить текущий конец файлов как начальную позицию
+     */
+    private void register(Path root, boolean scanExisting) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if(isFollowed(file, attrs)) {
+                    files.add(file);
+                    if(scanExisting) {
+                        parser.parseFile(file);
+                    } else {
+                        skipExisting(file, attrs);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * @return true - файл подходит для поиска и не является сжатым
+     */
+    private boolean isFollowed(Path file, BasicFileAttributes attrs) {
+        return CheckDirectory.isSearchable(file, attrs, line) && !InputParser.isCompressed(file);
+    }
+
+    /**
+     * Сохранение конца последней полной строки файла как позиции начала просмотра
+     */
+    private void skipExisting(Path file, BasicFileAttributes attrs) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            checkpoints.update(file, attrs,
+                    MappedFileSearcher.completeLinesEnd(channel, 0, channel.size()), channel);
+        } catch (IOException e) {
+            System.out.println("Ошибка в ходе чтения файла " + file);
+        }
+    }
+
+    /**
+     * Проверка всех известных файлов на наличие новых строк
+     */
+    private void rescan() {
+        files.removeIf(file -> !Files.exists(file));
+        checkpoints.prune();
+        for(Path file : files) {
+            parser.parseFile(file);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package ts.tsc.logScanner.index;
+
+import ts.tsc.logScanner.checkpoint.CheckpointStore;
+import ts.tsc.logScanner.fileParser.searcher.CaseFolding;
+import ts.tsc.logScanner.fileParser.searcher.MappedFileSearcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс триграмм для отсечения файлов и блоков, в которых не может быть искомой подстроки.
+ *
+ * Каждый файл делится на блоки, заканчивающиеся на границе строки. Для блока хранится
+ * битовое множество хешей всех триграмм его строк в нижнем регистре. Если хотя бы одной
+ * триграммы подстроки нет в множестве блока, подстроки в блоке нет, и блок не просматривается.
+ * Индекс не зависит от запроса и используется повторно для любых подстрок длиной от трех символов.
+ * Запись файла устаревает при изменении его размера, времени изменения или идентификатора.
+ * Если файл только дописан (совпадает контрольная сумма начала и данных перед концом
+ * проиндексированной части), заново индексируется только последний блок и новые данные.
+ * Данные после проиндексированной части всегда просматриваются
+ */
+public class TrigramIndex {
+
+    private static final int MAGIC = 0x4C535832;                //Признак файла индекса ("LSX2")
+    private static final long BLOCK_SIZE = 4L * 1024 * 1024;    //Примерный размер блока
+    private static final int MAX_BITS = 1 << 16;                //Размер множества для полного блока
+    private static final int MIN_BITS = 1 << 9;                 //Минимальный размер множества
+    private static final int WINDOW = 1 << 28;                  //Размер окна отображения при построении
+
+    private final Path path;                                    //Файл индекса
+    private final Map<String, FileEntry> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    /**
+     * Индекс одного файла
+     */
+    private static class FileEntry {
+        final String fileKey;
+        final long size;
+        final long lastModified;
+        final long fingerprint;         //Контрольная сумма начала файла и данных перед концом индекса
+        final long[] blockStarts;       //Начала блоков
+        final long[][] blockBits;       //Множества хешей триграмм блоков
+
+        FileEntry(String fileKey, long size, long lastModified, long fingerprint,
+                  long[] blockStarts, long[][] blockBits) {
+            this.fileKey = fileKey;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fingerprint = fingerprint;
+            this.blockStarts = blockStarts;
+            this.blockBits = blockBits;
+        }
+
+        boolean isActual(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && lastModified == attrs.lastModifiedTime().toMillis()
+                    && fileKey.equals(fileKey(attrs));
+        }
+
+        /**
+         * @return true - если файл только дописан после построения записи
+         */
+        boolean isPrefixOf(BasicFileAttributes attrs, FileChannel channel) throws IOException {
+            return size < attrs.size()
+                    && fileKey.equals(fileKey(attrs))
+                    && fingerprint == CheckpointStore.fingerprint(channel, size);
+        }
+    }
+
+    /**
+     * @param path файл индекса
+     */
+    public TrigramIndex(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Подготовка подстрок к проверке по индексу
+     * @param patterns подстроки для поиска
+     * @return хеши триграмм каждой подстроки;
+     * null - если индекс не может помочь (есть подстрока короче трех символов)
+     */
+    public static int[][] compile(String[] patterns) {
+        int[][] result = new int[patterns.length][];
+        for(int index = 0; index < patterns.length; index++) {
+            byte[] needle = CaseFolding.foldNeedle(patterns[index]);
+            if(needle == null) {
+                //Подстрока не может встретиться в файле - проверять нечего
+                result[index] = null;
+                continue;
+            }
+            if(needle.length < 3) {
+                return null;
+            }
+            int[] hashes = new int[needle.length - 2];
+            int code = 0;
+            for(int position = 0; position < needle.length; position++) {
+                code = ((code << 8) | (needle[position] & 0xFF)) & 0xFFFFFF;
+                if(position >= 2) {
+                    hashes[position - 2] = hash(code);
+                }
+            }
+            result[index] = hashes;
+        }
+        return result;
+    }
+
+    /**
+     * Загрузка индекса с диска. Отсутствующий или поврежденный индекс считается пустым
+     */
+    public void load() {
+        entries.clear();
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if(input.readInt() != MAGIC) {
+                return;
+            }
+            int count = input.readInt();
+            for(int entry = 0; entry < count; entry++) {
+                String file = input.readUTF();
+                String fileKey = input.readUTF();
+                long size = input.readLong();
+                long lastModified = input.readLong();
+                long fingerprint = input.readLong();
+                int blocks = input.readInt();
+                long[] starts = new long[blocks];
+                long[][] bits = new long[blocks][];
+                for(int block = 0; block < blocks; block++) {
+                    starts[block] = input.readLong();
+                    bits[block] = new long[input.readInt()];
+                    for(int word = 0; word < bits[block].length; word++) {
+                        bits[block][word] = input.readLong();
+                    }
+                }
+                entries.put(file, new FileEntry(fileKey, size, lastModified, fingerprint, starts, bits));
+            }
+        } catch (NoSuchFileException e) {
+            //Индекс еще не построен
+        } catch (IOException e) {
+            System.out.println("> Файл индекса " + path + " поврежден, индекс будет построен заново");
+            entries.clear();
+        }
+        modified = false;
+    }
+
+    /**
+     * Сохранение индекса через временный файл, если он изменился.
+     * Записи удаленных файлов не сохраняются
+     */
+    public void save() {
+        if(entries.keySet().removeIf(file -> Files.notExists(Paths.get(file)))) {
+            modified = true;
+        }
+        if(!modified) {
+            return;
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                List<Map.Entry<String, FileEntry>> snapshot = new ArrayList<>(entries.entrySet());
+                output.writeInt(MAGIC);
+                output.writeInt(snapshot.size());
+                for(Map.Entry<String, FileEntry> item : snapshot) {
+                    FileEntry entry = item.getValue();
+                    output.writeUTF(item.getKey());
+                    output.writeUTF(entry.fileKey);
+                    output.writeLong(entry.size);
+                    output.writeLong(entry.lastModified);
+                    output.writeLong(entry.fingerprint);
+                    output.writeInt(entry.blockStarts.length);
+                    for(int block = 0; block < entry.blockStarts.length; block++) {
+                        output.writeLong(entry.blockStarts[block]);
+                        output.writeInt(entry.blockBits[block].length);
+                        for(long word : entry.blockBits[block]) {
+                            output.writeLong(word);
+                        }
+                    }
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            modified = false;
+        } catch (IOException e) {
+            System.out.println("> Ошибка в ходе сохранения индекса в " + path);
+        }
+    }
+
+    /**
+     * Определение диапазонов файла, в которых может находиться одна из подстрок.
+     * Если запись индекса для файла отсутствует или устарела, она строится заново,
+     * а если файл только дописан - достраивается
+     * @param file путь к файлу
+     * @param attrs атрибуты файла
+     * @param channel открытый канал файла
+     * @param query хеши триграмм подстрок, полученные методом {@link #compile(String[])}
+     * @return пары [начало, конец) диапазонов, которые нужно просмотреть
+     * @throws IOException ошибка чтения файла
+     */
+    public long[] candidateRanges(Path file, BasicFileAttributes attrs, FileChannel channel,
+                                  int[][] query) throws IOException {
+        FileEntry entry = entries.get(file.toString());
+        if(entry == null || !entry.isActual(attrs)) {
+            entry = entry != null && entry.isPrefixOf(attrs, channel)
+                    ? extend(entry, channel, attrs)
+                    : build(channel, attrs, 0, new ArrayList<>(), new ArrayList<>());
+            entries.put(file.toString(), entry);
+            modified = true;
+        }
+
+        long[] ranges = new long[2 * entry.blockStarts.length + 2];
+        int count = 0;
+        for(int block = 0; block < entry.blockStarts.length; block++) {
+            if(!mayContain(entry.blockBits[block], query)) {
+                continue;
+            }
+            long start = entry.blockStarts[block];
+            long end = block + 1 < entry.blockStarts.length ? entry.blockStarts[block + 1] : entry.size;
+            count = addRange(ranges, count, start, end);
+        }
+        //Данные, дописанные после построения записи, не проиндексированы и просматриваются целиком
+        long size = channel.size();
+        if(size > entry.size) {
+            count = addRange(ranges, count, entry.size, size);
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * Добавление диапазона; соседние диапазоны объединяются в один
+     * @return количество заполненных элементов массива
+     */
+    private static int addRange(long[] ranges, int count, long start, long end) {
+        if(count > 0 && ranges[count - 1] == start) {
+            ranges[count - 1] = end;
+        } else {
+            ranges[count++] = start;
+            ranges[count++] = end;
+        }
+        return count;
+    }
+
+    /**
+     * Достраивание записи дописанного файла: блоки, кроме последнего, сохраняются,
+     * последний блок (он мог закончиться посередине строки) и новые данные индексируются заново
+     */
+    private static FileEntry extend(FileEntry entry, FileChannel channel, BasicFileAttributes attrs)
+            throws IOException {
+        int kept = entry.blockStarts.length - 1;
+        List<Long> starts = new ArrayList<>();
+        List<long[]> blocks = new ArrayList<>();
+        for(int block = 0; block < kept; block++) {
+            starts.add(entry.blockStarts[block]);
+            blocks.add(entry.blockBits[block]);
+        }
+        return build(channel, attrs, entry.blockStarts[kept], starts, blocks);
+    }
+
+    /**
+     * @return true - если в блоке есть все триграммы хотя бы одной подстроки
+     */
+    private static boolean mayContain(long[] bits, int[][] query) {
+        int mask = bits.length * 64 - 1;
+        for(int[] hashes : query) {
+            if(hashes == null) {
+                continue;
+            }
+            boolean all = true;
+            for(int hash : hashes) {
+                int bit = hash & mask;
+                if((bits[bit >>> 6] & (1L << bit)) == 0) {
+                    all = false;
+                    break;
+                }
+            }
+            if(all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Построение записи индекса за один проход по отображенному в память файлу.
+     * Индексируется часть файла до размера из атрибутов (но не дальше текущего конца файла)
+     * @param from начало первого индексируемого блока (начало строки)
+     * @param starts начала уже построенных блоков перед from
+     * @param blocks множества уже построенных блоков
+     */
+    private static FileEntry build(FileChannel channel, BasicFileAttributes attrs, long from,
+                                   List<Long> starts, List<long[]> blocks) throws IOException {
+        long size = Math.min(attrs.size(), channel.size());
+
+        long[] bits = new long[MAX_BITS / 64];
+        long blockStart = from;
+        int code = 0;
+        int lineLength = 0;     //Количество символов текущей строки (для триграмм нужно не меньше трех)
+        for(long position = from; position < size; position += WINDOW) {
+            int length = (int) Math.min(WINDOW, size - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for(int index = 0; index < length; index++) {
+                byte value = buffer.get(index);
+                if(MappedFileSearcher.isLineBreak(value)) {
+                    lineLength = 0;
+                    long next = position + index + 1;
+                    //Блок закрывается только на границе строки
+                    if(next - blockStart >= BLOCK_SIZE) {
+                        starts.add(blockStart);
+                        blocks.add(shrink(bits, next - blockStart));
+                        bits = new long[MAX_BITS / 64];
+                        blockStart = next;
+                    }
+                    continue;
+                }
+                code = ((code << 8) | CaseFolding.fold(value)) & 0xFFFFFF;
+                if(++lineLength >= 3) {
+                    int bit = hash(code) & (MAX_BITS - 1);
+                    bits[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+        if(blockStart < size || starts.isEmpty()) {
+            starts.add(blockStart);
+            blocks.add(shrink(bits, size - blockStart));
+        }
+
+        long[] startArray = new long[starts.size()];
+        for(int index = 0; index < startArray.length; index++) {
+            startArray[index] = starts.get(index);
+        }
+        return new FileEntry(fileKey(attrs), size, attrs.lastModifiedTime().toMillis(),
+                CheckpointStore.fingerprint(channel, size), startArray, blocks.toArray(new long[0][]));
+    }
+
+    /**
+     * Уменьшение множества для небольших блоков: старшие половины объединяются с младшими,
+     * что равносильно использованию меньшего числа младших битов хеша
+     */
+    private static long[] shrink(long[] bits, long blockLength) {
+        int target = MIN_BITS;
+        while (target < MAX_BITS && target < blockLength * 2) {
+            target <<= 1;
+        }
+        long[] result = bits;
+        while (result.length * 64 > target) {
+            long[] half = Arrays.copyOf(result, result.length / 2);
+            for(int word = 0; word < half.length; word++) {
+                half[word] |= result[word + half.length];
+            }
+            result = half;
+        }
+        return result;
+    }
+
+    private static int hash(int code) {
+        return (code * 0x9E3779B1) >>> 16;
+    }
+
+    private static String fileKey(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key != null ? key.toString() : "created:" + attrs.creationTime().toMillis();
+    }
+}
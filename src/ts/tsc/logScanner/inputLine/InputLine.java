@@ -1,31 +1,92 @@
 package ts.tsc.logScanner.inputLine;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Класс для хранения введенных данных
  */
 public class InputLine implements LineInterface{
     private final int numberOfThreads;    //Количество потоков
     private final String errorMessage;    //Подстрока с текстом для поиска
+    private final String[] patterns;      //Список подстрок для поиска (разделитель |) или регулярное выражение
     private final String inputDir;        //Начальная директория
     private final String outputPath;      //Выходной файл
     private final String[] extensions;    //Массив необходимых расширений файлов
+    private final InputOptions options;   //Дополнительные параметры поиска
 
     public InputLine(String numberOfThreads,
                      String errorMessage,
                      String inputDir,
                      String outputPath,
                      String[] extensions) {
+        this(numberOfThreads, errorMessage, inputDir, outputPath, extensions, new InputOptions());
+    }
+
+    public InputLine(String numberOfThreads,
+                     String errorMessage,
+                     String inputDir,
+                     String outputPath,
+                     String[] extensions,
+                     InputOptions options) {
         this.numberOfThreads = Integer.parseInt(numberOfThreads);
         this.errorMessage = errorMessage;
+        //Символ | в регулярном выражении означает альтернативу, поэтому выражение не разделяется
+        this.patterns = options.getMatchMode() == InputOptions.MatchMode.REGEX
+                ? new String[] {errorMessage.trim()}
+                : splitPatterns(errorMessage);
         this.inputDir = inputDir;
         this.outputPath = outputPath;
         this.extensions = extensions;
+        this.options = options;
     }
 
     public String getErrorMessage() {
         return errorMessage;
     }
 
+    public String[] getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Разделение текста для поиска на отдельные подстроки.
+     * Символ | внутри подстроки задается как \|. Если разделителей нет, текст остается
+     * одной подстрокой без изменений (пробелы по краям сохраняются), иначе пробелы
+     * вокруг разделителей отбрасываются
+     * @param errorMessage текст для поиска, подстроки разделены символом |
+     * @return массив подстрок без пустых элементов
+     */
+    public static String[] splitPatterns(String errorMessage) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder part = new StringBuilder();
+        for(int index = 0; index < errorMessage.length(); index++) {
+            char symbol = errorMessage.charAt(index);
+            if(symbol == '\\' && index + 1 < errorMessage.length() && errorMessage.charAt(index + 1) == '|') {
+                part.append('|');
+                index++;
+            } else if(symbol == '|') {
+                parts.add(part.toString());
+                part.setLength(0);
+            } else {
+                part.append(symbol);
+            }
+        }
+        parts.add(part.toString());
+
+        if(parts.size() == 1) {
+            String pattern = parts.get(0);
+            return pattern.trim().isEmpty() ? new String[0] : new String[] {pattern};
+        }
+        List<String> patterns = new ArrayList<>();
+        for(String pattern : parts) {
+            if(!pattern.trim().isEmpty()) {
+                patterns.add(pattern.trim());
+            }
+        }
+        return patterns.toArray(new String[0]);
+    }
+
     public String getInputDir() {
         return inputDir;
     }
@@ -41,4 +102,8 @@ public class InputLine implements LineInterface{
     public int getNumberOfThreads() {
         return numberOfThreads;
     }
+
+    public InputOptions getOptions() {
+        return options;
+    }
 }
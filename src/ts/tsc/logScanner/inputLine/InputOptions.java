@@ -0,0 +1,474 @@
+package ts.tsc.logScanner.inputLine;
+
+import ts.tsc.logScanner.fileParser.searcher.TimeWindow;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Дополнительные параметры поиска, задаваемые после обязательных
+ * в виде элементов "ключ=значение", например: walk=parallel
+ */
+public class InputOptions {
+
+    public static final int MAX_CONTEXT = 1000;     //Максимальное количество строк контекста
+    public static final int DEFAULT_CACHE_SIZE = 256;   //Наибольший размер кэша результатов по умолчанию, МБ
+
+    /**
+     * Режим поиска
+     */
+    public enum Mode {
+        FULL,           //Просмотр всех файлов целиком
+        INCREMENTAL,    //Просмотр только строк, добавленных с предыдущего запуска
+        FOLLOW          //Непрерывное наблюдение за директорией и вывод новых строк
+    }
+
+    /**
+     * Способ сопоставления строк
+     */
+    public enum MatchMode {
+        LITERAL,        //Регистронезависимый поиск подстрок
+        REGEX           //Регулярное выражение (с предварительным отбором строк по подстроке prefilter)
+    }
+
+    /**
+     * Группировка найденных строк в режиме подсчета
+     */
+    public enum Aggregate {
+        FILE,           //Количество строк в каждом файле
+        DIRECTORY,      //Количество строк в каждой поддиректории
+        HOUR            //Количество строк за каждый час (по отметке времени в начале строки)
+    }
+
+    private boolean parallelWalk = false;   //Параллельный обход начальной директории
+    private Mode mode = Mode.FULL;          //Режим поиска
+    private boolean indexed = false;        //Использование индекса триграмм
+    private boolean cached = false;         //Использование кэша результатов по файлам
+    private int cacheSize = DEFAULT_CACHE_SIZE;     //Наибольший размер кэша результатов, МБ
+    private long progressInterval = 0;      //Интервал вывода прогресса, мс; 0 - прогресс не выводится
+    private String statsPath = null;        //Файл итоговой статистики в формате JSON; null - не записывается
+    private MatchMode matchMode = MatchMode.LITERAL;    //Способ сопоставления строк
+    private String prefilter = null;        //Подстрока для отбора строк перед регулярным выражением
+    private String timeFormat = TimeWindow.DEFAULT_FORMAT;  //Формат отметки времени в начале строки
+    private String timeFrom = null;         //Начало интервала времени; null - без ограничения
+    private String timeTo = null;           //Конец интервала времени; null - без ограничения
+    private TimeWindow timeWindow = null;   //Интервал времени; null - строки не отбираются по времени
+    private TimeWindow timeParser = null;   //Разбор отметки времени при подсчете по часам
+    private boolean sortedOutput = false;   //Вывод строк в порядке путей файлов и номеров строк
+    private Aggregate aggregate = null;     //Группировка при подсчете; null - вывод найденных строк
+    private int beforeContext = 0;          //Количество строк, выводимых перед найденной строкой
+    private int afterContext = 0;           //Количество строк, выводимых после найденной строки
+    private int fileMatchLimit = 0;         //Наибольшее количество найденных строк в файле; 0 - без ограничения
+    private boolean filesOnly = false;      //Вывод только имен файлов, содержащих подстроку
+    private long matchLimit = 0;            //Наибольшее количество найденных строк запроса; 0 - без ограничения
+    private boolean virtualThreads = false; //Поиск в виртуальных потоках
+    private boolean deviceScheduling = false;   //Раздельные очереди и ограничения чтения для каждого устройства
+    private int cpuLimit = 0;               //Количество потоков, одновременно выполняющих поиск; 0 - по числу ядер
+    private List<InetSocketAddress> workers = null;     //Узлы распределенного поиска; null - поиск на этом узле
+    private String shard = null;            //Фрагмент директории, просматриваемый узлом; null - вся директория
+    private final List<String> entries = new ArrayList<>();    //Заданные параметры в виде ключ=значение
+
+    /**
+     * Установка параметра по ключу
+     * @param key название параметра
+     * @param value значение параметра
+     * @return true - если параметр известен и значение корректно; иначе - false
+     */
+    public boolean set(String key, String value) {
+        switch (key) {
+            case "walk":
+                if(value.equals("parallel") || value.equals("sequential")) {
+                    parallelWalk = value.equals("parallel");
+                    return true;
+                }
+                return false;
+            case "index":
+                if(value.equals("on") || value.equals("off")) {
+                    indexed = value.equals("on");
+                    return true;
+                }
+                return false;
+            case "cache":
+                if(value.equals("on") || value.equals("off")) {
+                    cached = value.equals("on");
+                    return true;
+                }
+                return false;
+            case "cachesize":
+                try {
+                    cacheSize = Integer.parseInt(value);
+                    return cacheSize > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            case "mode":
+                for(Mode item : Mode.values()) {
+                    if(item.name().equalsIgnoreCase(value)) {
+                        mode = item;
+                        return true;
+                    }
+                }
+                return false;
+            case "progress":
+                if(value.equals("off")) {
+                    progressInterval = 0;
+                    return true;
+                }
+                try {
+                    int seconds = Integer.parseInt(value);
+                    if(seconds < 1) {
+                        return false;
+                    }
+                    progressInterval = seconds * 1000L;
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            case "match":
+                for(MatchMode item : MatchMode.values()) {
+                    if(item.name().equalsIgnoreCase(value)) {
+                        matchMode = item;
+                        return true;
+                    }
+                }
+                return false;
+            case "prefilter":
+                if(value.length() < 2) {
+                    return false;
+                }
+                prefilter = value;
+                return true;
+            case "from":
+                timeFrom = value.isEmpty() ? null : value;
+                return timeFrom != null;
+            case "to":
+                timeTo = value.isEmpty() ? null : value;
+                return timeTo != null;
+            case "timeformat":
+                timeFormat = value;
+                return !value.isEmpty();
+            case "exec":
+                if(value.equals("virtual") || value.equals("platform")) {
+                    virtualThreads = value.equals("virtual");
+                    return true;
+                }
+                return false;
+            case "before":
+                beforeContext = parseContext(value);
+                return beforeContext >= 0;
+            case "after":
+                afterContext = parseContext(value);
+                return afterContext >= 0;
+            case "context":
+                beforeContext = afterContext = parseContext(value);
+                return beforeContext >= 0;
+            case "max":
+                fileMatchLimit = (int) parseLimit(value);
+                return fileMatchLimit > 0;
+            case "limit":
+                matchLimit = parseLimit(value);
+                return matchLimit > 0;
+            case "list":
+                if(value.equals("files") || value.equals("lines")) {
+                    filesOnly = value.equals("files");
+                    return true;
+                }
+                return false;
+            case "order":
+                if(value.equals("path") || value.equals("none")) {
+                    sortedOutput = value.equals("path");
+                    return true;
+                }
+                return false;
+            case "count":
+                switch (value) {
+                    case "file":
+                        aggregate = Aggregate.FILE;
+                        return true;
+                    case "dir":
+                        aggregate = Aggregate.DIRECTORY;
+                        return true;
+                    case "hour":
+                        aggregate = Aggregate.HOUR;
+                        return true;
+                    default:
+                        return false;
+                }
+            case "io":
+                if(value.equals("device") || value.equals("shared")) {
+                    deviceScheduling = value.equals("device");
+                    return true;
+                }
+                return false;
+            case "cpu":
+                try {
+                    cpuLimit = Integer.parseInt(value);
+                    return cpuLimit > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            case "stats":
+                if(value.isEmpty()) {
+                    return false;
+                }
+                statsPath = value;
+                return true;
+            case "workers":
+                workers = parseWorkers(value);
+                return workers != null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Установка параметра с сохранением его текста для передачи узлам распределенного поиска
+     * @param key название параметра
+     * @param value значение параметра
+     * @return true - если параметр известен и значение корректно; иначе - false
+     */
+    public boolean add(String key, String value) {
+        if(!set(key, value)) {
+            return false;
+        }
+        entries.add(key + "=" + value);
+        return true;
+    }
+
+    /**
+     * @param value адреса узлов через запятую: узел:порт
+     * @return адреса узлов; null - если хотя бы один адрес задан неверно
+     */
+    private static List<InetSocketAddress> parseWorkers(String value) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for(String worker : value.split(",")) {
+            int delimiter = worker.lastIndexOf(':');
+            if(delimiter < 1) {
+                return null;
+            }
+            try {
+                int port = Integer.parseInt(worker.substring(delimiter + 1).trim());
+                if(port < 1 || port > 65535) {
+                    return null;
+                }
+                addresses.add(InetSocketAddress.createUnresolved(worker.substring(0, delimiter).trim(), port));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * @return количество строк контекста; -1 - если значение некорректно
+     */
+    private static int parseContext(String value) {
+        try {
+            int lines = Integer.parseInt(value);
+            return lines >= 0 && lines <= MAX_CONTEXT ? lines : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return ограничение количества строк; -1 - если значение некорректно
+     */
+    private static long parseLimit(String value) {
+        try {
+            long limit = Long.parseLong(value);
+            return limit > 0 && limit <= Integer.MAX_VALUE ? limit : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public boolean isParallelWalk() {
+        return parallelWalk;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return true - строки неизменившихся файлов берутся из кэша результатов
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * @return наибольший размер кэша результатов, байт
+     */
+    public long getCacheSize() {
+        return cacheSize * 1024L * 1024;
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    public String getStatsPath() {
+        return statsPath;
+    }
+
+    public MatchMode getMatchMode() {
+        return matchMode;
+    }
+
+    /**
+     * @return подстрока для отбора строк перед проверкой регулярным выражением; null - не задана
+     */
+    public String getPrefilter() {
+        return prefilter;
+    }
+
+    /**
+     * Разбор интервала времени после установки всех параметров
+     * (формат может быть указан после границ интервала)
+     * @throws IllegalArgumentException неверный формат отметки времени
+     * @throws java.time.DateTimeException граница интервала не соответствует формату
+     */
+    public void resolveTimeWindow() {
+        timeWindow = timeFrom == null && timeTo == null ? null : new TimeWindow(timeFormat, timeFrom, timeTo);
+        //Для подсчета по часам нужен разбор отметки времени, даже если интервал не задан
+        if(aggregate == Aggregate.HOUR) {
+            timeParser = timeWindow != null ? timeWindow : new TimeWindow(timeFormat, null, null);
+        }
+    }
+
+    /**
+     * @return текст интервала времени (формат и границы) для привязки сохраненных позиций к запросу
+     */
+    public String getTimeRange() {
+        return timeWindow == null ? "" : timeFormat + "|" + timeFrom + "|" + timeTo;
+    }
+
+    /**
+     * @return интервал времени; null - строки не отбираются по времени
+     */
+    public TimeWindow getTimeWindow() {
+        return timeWindow;
+    }
+
+    /**
+     * @return true - строки выводятся в порядке относительных путей файлов и номеров строк
+     */
+    public boolean isSortedOutput() {
+        return sortedOutput;
+    }
+
+    /**
+     * @return группировка найденных строк; null - найденные строки выводятся в файл
+     */
+    public Aggregate getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * @return разбор отметки времени в начале строки; null - если подсчет не по часам
+     */
+    public TimeWindow getTimeParser() {
+        return timeParser;
+    }
+
+    public int getBeforeContext() {
+        return beforeContext;
+    }
+
+    public int getAfterContext() {
+        return afterContext;
+    }
+
+    /**
+     * @return true - если вместе с найденными строками выводятся соседние строки
+     */
+    public boolean hasContext() {
+        return beforeContext > 0 || afterContext > 0;
+    }
+
+    /**
+     * @return наибольшее количество найденных строк в одном файле, после которого просмотр файла
+     * прекращается (при выводе имен файлов - одна строка); 0 - файл просматривается целиком
+     */
+    public int getFileMatchLimit() {
+        return filesOnly ? 1 : fileMatchLimit;
+    }
+
+    /**
+     * @return true - выводятся только имена файлов, содержащих подстроку
+     */
+    public boolean isFilesOnly() {
+        return filesOnly;
+    }
+
+    /**
+     * @return наибольшее количество найденных строк запроса, после которого поиск останавливается;
+     * 0 - без ограничения
+     */
+    public long getMatchLimit() {
+        return matchLimit;
+    }
+
+    /**
+     * @return true - если поиск может быть прекращен до окончания файла или обхода директории
+     */
+    public boolean isLimited() {
+        return getFileMatchLimit() > 0 || matchLimit > 0;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return true - файлы читаются из отдельных очередей устройств со своими ограничениями
+     */
+    public boolean isDeviceScheduling() {
+        return deviceScheduling;
+    }
+
+    /**
+     * @return количество потоков, одновременно выполняющих поиск в виртуальном режиме
+     */
+    public int getCpuLimit() {
+        return cpuLimit > 0 ? cpuLimit : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return адреса узлов распределенного поиска; null - поиск выполняется на этом узле
+     */
+    public List<InetSocketAddress> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return фрагмент начальной директории, просматриваемый узлом распределенного поиска:
+     * пустая строка - только файлы самой директории, иначе - имя поддиректории;
+     * null - просматривается вся директория
+     */
+    public String getShard() {
+        return shard;
+    }
+
+    /**
+     * @param shard фрагмент начальной директории, назначенный узлу координатором
+     */
+    public void setShard(String shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * @return параметры, заданные при вводе, в виде ключ=значение
+     */
+    public List<String> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+}
@@ -5,7 +5,9 @@ package ts.tsc.logScanner.inputLine;
  */
 public interface LineInterface {
     String getErrorMessage();
+    String[] getPatterns();
     String getInputDir();
     String getOutputPath();
     String[] getExtensions();
+    InputOptions getOptions();
 }
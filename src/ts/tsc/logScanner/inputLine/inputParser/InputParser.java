@@ -1,12 +1,17 @@
 package ts.tsc.logScanner.inputLine.inputParser;
 
 import ts.tsc.logScanner.inputLine.InputLine;
+import ts.tsc.logScanner.inputLine.InputOptions;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Проверка входной строки на соответствие необходимым параметрам
@@ -15,10 +20,136 @@ public class InputParser {
     /**
      * Проверка количества входных параметров
      * @param length длина массива входных параметров
-     * @return true - если параметров 5 (расширения пока хранятся в одной строке); иначе - false
+     * @return true - если параметров не меньше 5 (расширения пока хранятся в одной строке,
+     * за ними могут следовать дополнительные параметры); иначе - false
      */
     private static boolean checkArraySize(final int length) {
-        return length == 5;
+        return length >= 5;
+    }
+
+    /**
+     * Разбор дополнительных параметров вида "ключ=значение"
+     * @param entries параметры (например, полученные узлом распределенного поиска от координатора)
+     * @return заполненный объект InputOptions; null - если хотя бы один параметр задан неверно
+     */
+    public static InputOptions parseOptions(List<String> entries) {
+        return parseOptions(entries.toArray(new String[0]), 0);
+    }
+
+    /**
+     * Разбор дополнительных параметров вида "ключ=значение"
+     * @param line массив входных параметров
+     * @param from индекс первого дополнительного параметра
+     * @return заполненный объект InputOptions; null - если хотя бы один параметр задан неверно
+     */
+    private static InputOptions parseOptions(String[] line, int from) {
+        InputOptions options = new InputOptions();
+        for(int iterator = from; iterator < line.length; iterator++) {
+            int delimiter = line[iterator].indexOf('=');
+            if(delimiter < 1) {
+                System.out.println("> Дополнительный параметр должен иметь вид ключ=значение: "
+                        + line[iterator]);
+                return null;
+            }
+            String key = line[iterator].substring(0, delimiter).trim().toLowerCase();
+            String value = line[iterator].substring(delimiter + 1).trim();
+            if(!options.add(key, value)) {
+                System.out.println("> Неизвестный параметр или неверное значение: " + line[iterator]);
+                return null;
+            }
+        }
+        String error = checkOptions(options);
+        if(error != null) {
+            System.out.println("> " + error);
+            return null;
+        }
+        return options;
+    }
+
+    /**
+     * Разбор интервала времени и проверка совместимости параметров после установки всех параметров
+     * @param options дополнительные параметры поиска
+     * @return описание ошибки; null - если параметры совместимы
+     */
+    public static String checkOptions(InputOptions options) {
+        try {
+            options.resolveTimeWindow();
+        } catch (DateTimeException | IllegalArgumentException e) {
+            return "Интервал времени (from, to) не соответствует формату отметки времени (timeformat): "
+                    + e.getMessage();
+        }
+        if(options.isSortedOutput() && options.getMode() == InputOptions.Mode.FOLLOW) {
+            return "Упорядоченный вывод (order=path) не используется при наблюдении за директорией (mode=follow)";
+        }
+        if(options.isSortedOutput() && (options.isParallelWalk() || options.isDeviceScheduling())) {
+            return "Упорядоченный вывод (order=path) не используется с параллельным обходом (walk=parallel) "
+                    + "и раздельным чтением по устройствам (io=device): они не сохраняют порядок файлов";
+        }
+        if(options.isSortedOutput() && options.getMatchLimit() > 0) {
+            return "Ограничение limit не используется с упорядоченным выводом (order=path): первые найденные строки "
+                    + "зависят от скорости потоков поиска, поэтому результат разных запусков различается";
+        }
+        if(options.getAggregate() != null && options.getMode() == InputOptions.Mode.FOLLOW) {
+            return "Подсчет строк (count) не используется при наблюдении за директорией (mode=follow)";
+        }
+        if(options.isLimited() && (options.getMode() != InputOptions.Mode.FULL || options.getAggregate() != null)) {
+            return "Ограничения max, limit и list=files используются только в обычном режиме: без mode и count";
+        }
+        if(options.isCached() && (options.getMode() != InputOptions.Mode.FULL || options.getAggregate() != null)) {
+            return "Кэш результатов (cache=on) используется только в обычном режиме: без mode и count";
+        }
+        if(options.getWorkers() != null && (options.getMode() != InputOptions.Mode.FULL || options.isIndexed()
+                || options.getAggregate() != null || options.isSortedOutput() || options.isCached()
+                || options.isLimited())) {
+            return "Распределенный поиск (workers) выполняется только в обычном режиме: без mode, index, count, "
+                    + "order, cache, max, limit и list";
+        }
+        return null;
+    }
+
+    /**
+     * Проверка текста для поиска: подстрок или регулярного выражения
+     * @param message текст для поиска
+     * @param options дополнительные параметры поиска
+     * @return true - если текст соответствует способу сопоставления; иначе - false
+     */
+    private static boolean checkPatterns(String message, InputOptions options) {
+        String error = checkMessage(message, options);
+        if(error != null) {
+            System.out.println("> " + error);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Проверка текста для поиска: подстрок или регулярного выражения
+     * @param message текст для поиска
+     * @param options дополнительные параметры поиска
+     * @return описание ошибки; null - если текст соответствует способу сопоставления
+     */
+    public static String checkMessage(String message, InputOptions options) {
+        if(options.getMatchMode() == InputOptions.MatchMode.REGEX) {
+            try {
+                Pattern.compile(message);
+            } catch (PatternSyntaxException e) {
+                return "Неверное регулярное выражение: " + e.getDescription();
+            }
+            return null;
+        }
+        if(options.getPrefilter() != null) {
+            return "Параметр prefilter используется только вместе с match=regex";
+        }
+        String[] patterns = InputLine.splitPatterns(message);
+        if(patterns.length == 0) {
+            return "Не указан текст ошибки (введен пробел или пустое значение)";
+        }
+        for(String pattern : patterns) {
+            if(!InputParser.checkMessageLength(pattern)) {
+                return "Текст для поиска должен содержать более одного символа: " + pattern;
+            }
+        }
+        return null;
     }
 
     /**
@@ -109,19 +240,60 @@ public class InputParser {
     }
 
     /**
-     * Проверка на соответствие пути указанным расширениям
+     * Проверка на соответствие пути указанным расширениям.
+     * Сжатый файл после ротации (например, app.log.1.gz) проверяется также по имени
+     * без расширения .gz и номера ротации
      * @param path путь к файлу
      * @param extensions массив заданных расширений
      * @return true - расширение файла соответствует заданным параметрам; иначе - false
      */
     public static boolean isRightExtension(Path path, String[] extensions) {
         String sPath = path.toString().toLowerCase();
+        if(hasExtension(sPath, extensions)) {
+            return true;
+        }
+        if(sPath.endsWith(".gz")) {
+            String name = sPath.substring(0, sPath.length() - ".gz".length());
+            return hasExtension(name.replaceFirst("\\.\\d+$", ""), extensions);
+        }
+        return false;
+    }
+
+    private static boolean hasExtension(String sPath, String[] extensions) {
         for (String extension : extensions) {
             if(sPath.endsWith("." + extension)) return true;
         }
         return false;
     }
 
+    /**
+     * Определение сжатого файла
+     * @param path путь к файлу
+     * @return true - файл .gz или .zip; иначе - false
+     */
+    public static boolean isCompressed(Path path) {
+        String sPath = path.toString().toLowerCase();
+        return sPath.endsWith(".gz") || sPath.endsWith(".zip");
+    }
+
+    /**
+     * Проверка элемента zip-архива на соответствие указанным расширениям.
+     * Если в списке указаны только расширения архивов, просматриваются все элементы
+     * @param name имя элемента архива
+     * @param extensions массив заданных расширений
+     * @return true - элемент нужно просмотреть; иначе - false
+     */
+    public static boolean isRightEntry(String name, String[] extensions) {
+        boolean onlyArchives = true;
+        for (String extension : extensions) {
+            if(!extension.equals("gz") && !extension.equals("zip")) {
+                onlyArchives = false;
+                break;
+            }
+        }
+        return onlyArchives || hasExtension(name.toLowerCase(), extensions);
+    }
+
     /**
      * Проверка строки на пустоту
      * @param line строка
@@ -173,8 +345,11 @@ public class InputParser {
             System.out.println("> Не указан текст ошибки (введен пробел или пустое значение)");
             return null;
         }
-        if(!InputParser.checkMessageLength(line[1])) {
-            System.out.println("> Текст для поиска должен содержать более одного символа");
+        InputOptions options = InputParser.parseOptions(line, 5);
+        if(options == null) {
+            return null;
+        }
+        if(!InputParser.checkPatterns(line[1], options)) {
             return null;
         }
         if(InputParser.isEmpty(line[2])) {
@@ -251,6 +426,6 @@ public class InputParser {
             return null;
         }
 
-        return new InputLine(line[0], line[1], line[2], line[3], extensions);
+        return new InputLine(line[0], line[1], line[2], line[3], extensions, options);
     }
 }
@@ -0,0 +1,70 @@
+package ts.tsc.logScanner.metrics;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Периодический вывод строки прогресса в консоль во время поиска
+ * и измерение наибольшей длины очереди файлов
+ */
+public class ProgressReporter implements Runnable {
+
+    private static final long SAMPLE_INTERVAL_MS = 100;     //Интервал измерения длины очереди
+
+    private final ScanMetrics metrics;
+    private final String label;                 //Пометка запроса перед строкой прогресса
+    private final IntSupplier queueDepth;       //Текущая длина очереди файлов
+    private final IntSupplier writerDepth;      //Текущая длина очереди записи
+    private final long interval;                //Интервал вывода, мс; 0 - прогресс не выводится
+    private final Thread thread;
+
+    /**
+     * @param metrics счетчики поиска
+     * @param label пометка запроса перед строкой прогресса
+     * @param queueDepth длина очереди файлов
+     * @param writerDepth длина очереди записи
+     * @param interval интервал вывода, мс; 0 - только измерение длины очереди, без вывода
+     */
+    public ProgressReporter(ScanMetrics metrics, String label, IntSupplier queueDepth, IntSupplier writerDepth, long interval) {
+        this.metrics = metrics;
+        this.label = label;
+        this.queueDepth = queueDepth;
+        this.writerDepth = writerDepth;
+        this.interval = interval;
+        this.thread = new Thread(this, "progress-reporter");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Остановка вывода и ожидание окончания потока
+     */
+    public void stop() {
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        long next = System.currentTimeMillis() + interval;
+        try {
+            while (true) {
+                //Длина очереди проверяется чаще, чем выводится прогресс, чтобы заметить ее заполнение
+                Thread.sleep(SAMPLE_INTERVAL_MS);
+                metrics.sampleQueue(queueDepth.getAsInt());
+                if(interval > 0 && System.currentTimeMillis() >= next) {
+                    System.out.println("> " + label + metrics.progressLine(queueDepth.getAsInt(), writerDepth.getAsInt()));
+                    next += interval;
+                }
+            }
+        } catch (InterruptedException e) {
+            //Поиск окончен
+        }
+    }
+}
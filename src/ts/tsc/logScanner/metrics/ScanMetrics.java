@@ -0,0 +1,263 @@
+package ts.tsc.logScanner.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики одного поиска: обход директории, потоки поиска и самые долгие файлы.
+ *
+ * Счетчики обхода изменяются несколькими потоками (при параллельном обходе), поэтому
+ * используются {@link LongAdder}; счетчики потоков поиска хранятся отдельно для каждого потока
+ * в {@link WorkerMetrics} и суммируются только при чтении. По времени ожидания видно,
+ * что ограничивает поиск: долгое ожидание потоков поиска - обход или диск при обходе,
+ * долгое ожидание обхода - поиск в файлах, долгое ожидание записи - выходной файл.
+ * Количество просмотренных строк не считается: поиск пропускает байты между вхождениями,
+ * а подсчет переводов строк потребовал бы отдельного прохода по всем данным
+ */
+public class ScanMetrics {
+
+    private static final int SLOWEST_FILES = 10;    //Количество сохраняемых самых долгих файлов
+
+    private final long startTime = System.nanoTime();
+    private final LongAdder filesQueued = new LongAdder();      //Файлов добавлено в очередь
+    private final LongAdder walkerWaitNanos = new LongAdder();  //Ожидание обходом места в очереди
+    private final LongAdder workerWaitNanos = new LongAdder();  //Ожидание потоками поиска новых файлов
+    private final List<WorkerMetrics> workers = new CopyOnWriteArrayList<>();
+    private final PriorityQueue<FileTime> slowest =
+            new PriorityQueue<>(Comparator.comparingLong(file -> file.nanos));
+    private volatile long slowestThreshold = 0;     //Время, меньше которого файл не попадает в список
+    private volatile int maxQueueDepth = 0;         //Наибольшая наблюдавшаяся длина очереди файлов
+
+    /**
+     * Время просмотра одного файла
+     */
+    private static class FileTime {
+        final Path path;
+        final long nanos;
+        final long size;
+
+        FileTime(Path path, long nanos, long size) {
+            this.path = path;
+            this.nanos = nanos;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Создание счетчиков потока поиска
+     * @param threadNumber номер потока
+     * @return счетчики, которые должен изменять только этот поток
+     */
+    public WorkerMetrics newWorker(int threadNumber) {
+        WorkerMetrics worker = new WorkerMetrics(this, threadNumber);
+        workers.add(worker);
+        return worker;
+    }
+
+    /**
+     * Добавление файла в очередь
+     * @param waitNanos время ожидания места в очереди
+     */
+    public void fileQueued(long waitNanos) {
+        filesQueued.increment();
+        walkerWaitNanos.add(waitNanos);
+    }
+
+    /**
+     * @param nanos время ожидания потоком поиска нового файла в очереди
+     */
+    public void workerWaited(long nanos) {
+        workerWaitNanos.add(nanos);
+    }
+
+    /**
+     * @param depth текущая длина очереди файлов
+     */
+    public void sampleQueue(int depth) {
+        if(depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+    }
+
+    /**
+     * Учет файла в списке самых долгих. Большинство файлов отсекается
+     * без блокировки сравнением с порогом
+     */
+    void fileTime(Path path, long nanos, long size) {
+        if(nanos <= slowestThreshold) {
+            return;
+        }
+        synchronized (slowest) {
+            slowest.add(new FileTime(path, nanos, size));
+            if(slowest.size() > SLOWEST_FILES) {
+                slowest.poll();
+                slowestThreshold = slowest.peek().nanos;
+            }
+        }
+    }
+
+    public long getFilesQueued() {
+        return filesQueued.sum();
+    }
+
+    public long getFilesScanned() {
+        long sum = 0;
+        for(WorkerMetrics worker : workers) {
+            sum += worker.getFiles();
+        }
+        return sum;
+    }
+
+    public long getBytesRead() {
+        long sum = 0;
+        for(WorkerMetrics worker : workers) {
+            sum += worker.getBytes();
+        }
+        return sum;
+    }
+
+    public long getMatches() {
+        long sum = 0;
+        for(WorkerMetrics worker : workers) {
+            sum += worker.getMatches();
+        }
+        return sum;
+    }
+
+    /**
+     * @return время с начала поиска, нс
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * Строка прогресса для вывода в консоль
+     * @param queueDepth текущая длина очереди файлов
+     * @param writerDepth текущее количество пакетов в очереди записи
+     * @return строка прогресса
+     */
+    public String progressLine(int queueDepth, int writerDepth) {
+        long ioNanos = 0;
+        long matchNanos = 0;
+        long writerWait = 0;
+        for(WorkerMetrics worker : workers) {
+            ioNanos += worker.getIoNanos();
+            matchNanos += worker.getMatchNanos();
+            writerWait += worker.getWriterWaitNanos();
+        }
+        long bytes = getBytesRead();
+        double elapsed = seconds(getElapsedNanos());
+        return String.format(Locale.ROOT,
+                "Просмотрено файлов: %d из %d (в очереди %d), прочитано %s (%s/с), найдено строк: %d; " +
+                        "время чтения %.1f с, поиска %.1f с; ожидание: обход %.1f с, поиск %.1f с, " +
+                        "запись %.1f с (в очереди записи %d)",
+                getFilesScanned(), getFilesQueued(), queueDepth, formatBytes(bytes),
+                formatBytes(elapsed > 0 ? (long) (bytes / elapsed) : 0), getMatches(),
+                seconds(ioNanos), seconds(matchNanos), seconds(walkerWaitNanos.sum()),
+                seconds(workerWaitNanos.sum()), seconds(writerWait), writerDepth);
+    }
+
+    /**
+     * Запись итоговой статистики в файл в формате JSON
+     * @param path путь к файлу статистики
+     */
+    public void writeJson(Path path) {
+        List<FileTime> files;
+        synchronized (slowest) {
+            files = new ArrayList<>(slowest);
+        }
+        files.sort(Comparator.comparingLong((FileTime file) -> file.nanos).reversed());
+
+        long ioNanos = 0;
+        long matchNanos = 0;
+        long writerWait = 0;
+        StringBuilder workersJson = new StringBuilder();
+        for(WorkerMetrics worker : workers) {
+            ioNanos += worker.getIoNanos();
+            matchNanos += worker.getMatchNanos();
+            writerWait += worker.getWriterWaitNanos();
+            if(workersJson.length() > 0) {
+                workersJson.append(",\n");
+            }
+            workersJson.append(String.format(Locale.ROOT,
+                    "    {\"thread\": %d, \"files\": %d, \"bytes\": %d, \"matches\": %d, " +
+                            "\"ioSeconds\": %.3f, \"matchSeconds\": %.3f, \"writerWaitSeconds\": %.3f}",
+                    worker.getThreadNumber(), worker.getFiles(), worker.getBytes(), worker.getMatches(),
+                    seconds(worker.getIoNanos()), seconds(worker.getMatchNanos()),
+                    seconds(worker.getWriterWaitNanos())));
+        }
+
+        StringBuilder filesJson = new StringBuilder();
+        for(FileTime file : files) {
+            if(filesJson.length() > 0) {
+                filesJson.append(",\n");
+            }
+            filesJson.append(String.format(Locale.ROOT, "    {\"path\": \"%s\", \"seconds\": %.3f, \"bytes\": %d}",
+                    escape(file.path.toString()), seconds(file.nanos), file.size));
+        }
+
+        String json = String.format(Locale.ROOT, "{\n" +
+                        "  \"elapsedSeconds\": %.3f,\n" +
+                        "  \"filesQueued\": %d,\n" +
+                        "  \"filesScanned\": %d,\n" +
+                        "  \"bytesRead\": %d,\n" +
+                        "  \"matches\": %d,\n" +
+                        "  \"ioSeconds\": %.3f,\n" +
+                        "  \"matchSeconds\": %.3f,\n" +
+                        "  \"walkerWaitSeconds\": %.3f,\n" +
+                        "  \"workerWaitSeconds\": %.3f,\n" +
+                        "  \"writerWaitSeconds\": %.3f,\n" +
+                        "  \"maxQueueDepth\": %d,\n" +
+                        "  \"workers\": [\n%s\n  ],\n" +
+                        "  \"slowestFiles\": [\n%s\n  ]\n" +
+                        "}\n",
+                seconds(getElapsedNanos()), getFilesQueued(), getFilesScanned(), getBytesRead(), getMatches(),
+                seconds(ioNanos), seconds(matchNanos), seconds(walkerWaitNanos.sum()),
+                seconds(workerWaitNanos.sum()), seconds(writerWait), maxQueueDepth,
+                workersJson, filesJson);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(json);
+        } catch (IOException e) {
+            System.out.println("> Ошибка в ходе записи статистики в файл " + path);
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String formatBytes(long bytes) {
+        if(bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f КБ", bytes / 1024.0);
+        }
+        if(bytes < 1024L * 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f МБ", bytes / (1024.0 * 1024));
+        }
+        return String.format(Locale.ROOT, "%.2f ГБ", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    private static String escape(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for(char symbol : value.toCharArray()) {
+            if(symbol == '"' || symbol == '\\') {
+                result.append('\\').append(symbol);
+            } else if(symbol < 0x20) {
+                result.append(String.format("\\u%04x", (int) symbol));
+            } else {
+                result.append(symbol);
+            }
+        }
+        return result.toString();
+    }
+}
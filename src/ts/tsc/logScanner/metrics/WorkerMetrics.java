@@ -0,0 +1,96 @@
+package ts.tsc.logScanner.metrics;
+
+import java.nio.file.Path;
+
+/**
+ * Счетчики одного потока поиска.
+ *
+ * Значения изменяет только поток-владелец, поэтому синхронизация не нужна:
+ * поля объявлены volatile, чтобы поток вывода прогресса видел актуальные значения
+ */
+public class WorkerMetrics {
+
+    private final ScanMetrics parent;
+    private final int threadNumber;
+
+    private volatile long files = 0;            //Просмотрено файлов
+    private volatile long bytes = 0;            //Прочитано байт
+    private volatile long matches = 0;          //Найдено строк
+    private volatile long ioNanos = 0;          //Время открытия и чтения файлов
+    private volatile long matchNanos = 0;       //Время поиска подстроки
+    private volatile long writerWaitNanos = 0;  //Время ожидания места в очереди записи
+
+    WorkerMetrics(ScanMetrics parent, int threadNumber) {
+        this.parent = parent;
+        this.threadNumber = threadNumber;
+    }
+
+    /**
+     * @param nanos время открытия файла, чтения атрибутов или данных
+     */
+    public void io(long nanos) {
+        ioNanos += nanos;
+    }
+
+    /**
+     * @param count количество прочитанных байт
+     */
+    public void read(long count) {
+        bytes += count;
+    }
+
+    /**
+     * @param nanos время поиска подстроки (для отображенных файлов включает подкачку страниц)
+     */
+    public void match(long nanos) {
+        matchNanos += nanos;
+    }
+
+    /**
+     * @param nanos время ожидания передачи найденных строк потоку записи
+     */
+    public void writerWaited(long nanos) {
+        writerWaitNanos += nanos;
+    }
+
+    /**
+     * Окончание просмотра файла
+     * @param path путь к файлу
+     * @param nanos общее время просмотра файла
+     * @param size размер файла
+     * @param found количество найденных строк
+     */
+    public void fileDone(Path path, long nanos, long size, int found) {
+        files++;
+        matches += found;
+        parent.fileTime(path, nanos, size);
+    }
+
+    public int getThreadNumber() {
+        return threadNumber;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getMatches() {
+        return matches;
+    }
+
+    public long getIoNanos() {
+        return ioNanos;
+    }
+
+    public long getMatchNanos() {
+        return matchNanos;
+    }
+
+    public long getWriterWaitNanos() {
+        return writerWaitNanos;
+    }
+}
@@ -1,5 +0,0 @@
-package ts.tsc.logScanner.observing;
-
-public interface Observable {
-    void update();
-}
@@ -0,0 +1,203 @@
+package ts.tsc.logScanner.output;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Буфер найденных строк одного файла ограниченного размера.
+ *
+ * Строки накапливаются в памяти, пока их суммарная длина не превысит заданную,
+ * затем сбрасываются во временный файл (сегмент) рядом с выходным файлом. В поток записи
+ * передается либо пакет строк, либо сегмент целиком, поэтому строки файла остаются
+ * в выходном файле подряд, а память потока поиска не зависит от количества найденных строк.
+ * Буфер используется повторно для всех файлов потока поиска
+ */
+public class ResultBuffer {
+
+    private static final String NEW_LINE = System.lineSeparator();
+
+    private final int capacity;             //Максимальная суммарная длина строк в памяти (символов)
+    private final Path spillDirectory;      //Директория временных сегментов
+    private List<String> lines = new ArrayList<>();
+    private long length = 0;                //Суммарная длина строк в памяти
+    private Path segment;                   //Временный сегмент; null - строки только в памяти
+    private BufferedWriter segmentWriter;
+    private ByteArrayOutputStream encoded;  //Кодирование строк для упорядоченного вывода
+    private Writer encodedWriter;
+
+    /**
+     * @param capacity максимальная суммарная длина строк, хранимых в памяти (символов)
+     * @param spillDirectory директория для временных сегментов
+     */
+    public ResultBuffer(int capacity, Path spillDirectory) {
+        this.capacity = capacity;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Добавление строки; при превышении размера строки сбрасываются в сегмент
+     * @param line найденная строка
+     * @throws UncheckedIOException ошибка записи сегмента
+     */
+    public void add(String line) {
+        lines.add(line);
+        length += line.length();
+        if(length > capacity) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Перенос всех строк другого буфера (например, фрагмента файла) в конец этого буфера.
+     * Другой буфер после переноса пуст
+     * @param other буфер с последующими строками файла
+     * @throws UncheckedIOException ошибка записи или чтения сегмента
+     */
+    public void addAll(ResultBuffer other) {
+        try {
+            if(other.segment != null) {
+                //Строки в памяти должны оказаться в сегменте перед строками другого сегмента
+                spill();
+                other.segmentWriter.close();
+                other.segmentWriter = null;
+                segmentWriter.flush();
+                try (FileChannel source = FileChannel.open(other.segment, StandardOpenOption.READ);
+                     FileChannel target = FileChannel.open(segment, StandardOpenOption.WRITE,
+                             StandardOpenOption.APPEND)) {
+                    long position = 0;
+                    long size = source.size();
+                    while (position < size) {
+                        position += source.transferTo(position, size - position, target);
+                    }
+                }
+                Files.deleteIfExists(other.segment);
+                other.segment = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for(String line : other.lines) {
+            add(line);
+        }
+        other.lines.clear();
+        other.length = 0;
+    }
+
+    /**
+     * @return true - если в буфере нет строк (ни в памяти, ни в сегменте)
+     */
+    public boolean isEmpty() {
+        return lines.isEmpty() && segment == null;
+    }
+
+    /**
+     * Передача строк файла потоку записи и очистка буфера для следующего файла
+     * @param writer поток записи результатов
+     * @throws IOException ошибка записи сегмента
+     */
+    public void submitTo(ResultWriter writer) throws IOException {
+        if(segment == null) {
+            if(lines.isEmpty()) {
+                return;
+            }
+            //Поток записи обрабатывает пакет позже, поэтому буфер получает новый список
+            writer.submit(lines);
+            lines = new ArrayList<>();
+            length = 0;
+            return;
+        }
+        spill();
+        segmentWriter.close();
+        segmentWriter = null;
+        Path written = segment;
+        segment = null;
+        writer.submitSegment(written);
+    }
+
+    /**
+     * Запись строк файла в сегмент упорядоченного вывода: длина данных, затем строки в UTF-8.
+     * Буфер очищается для следующего файла
+     * @param output поток записи сегмента
+     * @throws IOException ошибка записи
+     */
+    void writeRun(DataOutputStream output) throws IOException {
+        if(segment == null) {
+            //Строки в памяти ограничены размером буфера, поэтому кодируются целиком для определения длины
+            if(encoded == null) {
+                encoded = new ByteArrayOutputStream();
+                encodedWriter = new OutputStreamWriter(encoded, StandardCharsets.UTF_8);
+            }
+            encoded.reset();
+            for(String line : lines) {
+                encodedWriter.write(line);
+                encodedWriter.write(NEW_LINE);
+            }
+            encodedWriter.flush();
+            output.writeLong(encoded.size());
+            encoded.writeTo(output);
+            lines.clear();
+            length = 0;
+            return;
+        }
+        spill();
+        segmentWriter.close();
+        segmentWriter = null;
+        output.writeLong(Files.size(segment));
+        Files.copy(segment, output);
+        Files.delete(segment);
+        segment = null;
+    }
+
+    /**
+     * Удаление всех строк и сегмента (например, после ошибки чтения файла)
+     */
+    public void clear() {
+        lines.clear();
+        length = 0;
+        if(segment != null) {
+            try {
+                if(segmentWriter != null) {
+                    segmentWriter.close();
+                }
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                System.out.println("Ошибка в ходе удаления временного файла " + segment);
+            }
+            segmentWriter = null;
+            segment = null;
+        }
+    }
+
+    /**
+     * Запись строк из памяти в конец сегмента (сегмент создается при первом сбросе)
+     */
+    private void spill() throws IOException {
+        if(segment == null) {
+            segment = Files.createTempFile(spillDirectory, ".logscanner-", ".segment");
+            //Запись только в конец: в addAll к сегменту дописываются данные другого сегмента
+            segmentWriter = Files.newBufferedWriter(segment, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+        for(String line : lines) {
+            segmentWriter.write(line);
+            segmentWriter.write(NEW_LINE);
+        }
+        lines.clear();
+        length = 0;
+    }
+}
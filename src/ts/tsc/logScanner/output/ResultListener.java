@@ -0,0 +1,18 @@
+package ts.tsc.logScanner.output;
+
+import java.util.List;
+
+/**
+ * Получатель найденных строк запроса вместо выходного файла.
+ *
+ * Вызывается только потоком записи результатов, поэтому пакеты приходят по одному, в том же порядке,
+ * в котором строки были бы записаны в файл, и обработчику не нужна синхронизация.
+ * Пока обработчик не вернул управление, потоки поиска могут ожидать места в очереди записи
+ */
+public interface ResultListener {
+
+    /**
+     * @param lines пакет найденных строк (строки одного файла идут подряд)
+     */
+    void onLines(List<String> lines);
+}
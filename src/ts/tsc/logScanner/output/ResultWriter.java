@@ -0,0 +1,369 @@
+package ts.tsc.logScanner.output;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Единственный поток записи результатов в выходной файл.
+ *
+ * Потоки поиска передают найденные строки пакетами через ограниченную очередь и не ждут диска,
+ * а если строк файла слишком много - временным сегментом ({@link ResultBuffer}).
+ * Очередь ограничена и количеством пакетов, и суммарной длиной строк в них: пакеты бывают
+ * от одной строки до сотен тысяч символов, поэтому память очереди задается именно длиной.
+ * Выходной файл открывается один раз на весь поиск, строки кодируются в UTF-8
+ * в большой прямой буфер, который сбрасывается в файл при заполнении
+ * или если новых строк не было дольше заданного интервала.
+ *
+ * Вместо файла строки могут передаваться обработчику {@link ResultListener} (программный интерфейс поиска):
+ * пакеты передаются без буферизации, а строки сегментов читаются пакетами
+ */
+public class ResultWriter implements Runnable {
+
+    private static final int QUEUE_CAPACITY = 256;              //Максимальное количество пакетов в очереди
+    private static final int QUEUE_CHARS = 32 * 1024 * 1024;    //Максимальная суммарная длина строк в очереди
+    private static final int BUFFER_SIZE = 1024 * 1024;         //Размер буфера записи
+    private static final long FLUSH_INTERVAL_MS = 1000;         //Время хранения строк в буфере по умолчанию
+    private static final int SEGMENT_BATCH = 1024;              //Строк сегмента в одном пакете для обработчика
+    private static final byte[] LINE_SEPARATOR =
+            System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    //Признак окончания записи, передаваемый через очередь
+    private static final Object END = new Object();
+
+    private final Path path;                    //Выходной файл; null - строки передаются обработчику
+    private final ResultListener listener;      //Обработчик строк; null - строки записываются в файл
+    //Пакеты строк (Batch) и временные сегменты (Path)
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    //Свободная длина строк в очереди (символов); справедливая, чтобы большой пакет не ждал бесконечно
+    private final Semaphore freeChars = new Semaphore(QUEUE_CHARS, true);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    //Ошибочные символы (например, непарные суррогаты) заменяются, а не обрывают строку
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final Thread thread;
+    private final long flushInterval;           //Максимальное время хранения строк в буфере, мс
+
+    private FileChannel channel;
+    private volatile boolean written = false;   //Была ли записана хотя бы одна строка
+    private boolean failed = false;             //Произошла ли ошибка записи
+    private long lastFlush;
+
+    /**
+     * Пакет строк в очереди и занятая им длина
+     */
+    private static class Batch {
+        final List<String> lines;
+        final int chars;
+
+        Batch(List<String> lines, int chars) {
+            this.lines = lines;
+            this.chars = chars;
+        }
+    }
+
+    /**
+     * @param path путь к выходному файлу
+     */
+    public ResultWriter(Path path) {
+        this(path, FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * @param path путь к выходному файлу
+     * @param flushInterval максимальное время хранения строк в буфере до записи в файл, мс
+     */
+    public ResultWriter(Path path, long flushInterval) {
+        this(path, null, flushInterval);
+    }
+
+    /**
+     * @param listener обработчик найденных строк, вызываемый потоком записи
+     */
+    public ResultWriter(ResultListener listener) {
+        this(null, listener, FLUSH_INTERVAL_MS);
+    }
+
+    private ResultWriter(Path path, ResultListener listener, long flushInterval) {
+        this.path = path;
+        this.listener = listener;
+        this.flushInterval = flushInterval;
+        this.thread = new Thread(this, "result-writer");
+    }
+
+    /**
+     * Запуск потока записи
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Передача пакета строк на запись. Если очередь заполнена (по количеству пакетов или длине строк),
+     * ожидание места в ней. Пакет длиннее всей очереди занимает ее целиком
+     * @param lines найденные строки (список не должен изменяться после передачи)
+     */
+    public void submit(List<String> lines) {
+        if(lines.isEmpty()) {
+            return;
+        }
+        long length = 0;
+        for(String line : lines) {
+            length += line.length();
+        }
+        int chars = (int) Math.min(length, QUEUE_CHARS);
+        try {
+            freeChars.acquire(chars);
+            try {
+                queue.put(new Batch(lines, chars));
+            } catch (InterruptedException e) {
+                freeChars.release(chars);
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Ошибка в ходе записи в файл: поток был прерван");
+        }
+    }
+
+    /**
+     * Передача на запись временного сегмента с уже закодированными строками.
+     * Содержимое сегмента копируется в выходной файл целиком, затем сегмент удаляется
+     * @param segment временный файл, созданный {@link ResultBuffer}
+     */
+    public void submitSegment(Path segment) {
+        try {
+            queue.put(segment);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Ошибка в ходе записи в файл: поток был прерван");
+        }
+    }
+
+    /**
+     * Запись оставшихся пакетов, закрытие файла и ожидание окончания потока записи
+     */
+    public void close() {
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Ошибка в ходе записи в файл: поток был прерван");
+        }
+    }
+
+    /**
+     * @return true - если в файл была записана хотя бы одна строка; иначе - false
+     */
+    public boolean isWritten() {
+        return written;
+    }
+
+    /**
+     * @return true - если строки передаются обработчику, а не записываются в файл
+     */
+    public boolean hasListener() {
+        return listener != null;
+    }
+
+    /**
+     * @return количество пакетов строк, ожидающих записи
+     */
+    public int pendingBatches() {
+        return queue.size();
+    }
+
+    @Override
+    public void run() {
+        lastFlush = System.currentTimeMillis();
+        try {
+            while (true) {
+                Object batch = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if(batch == END) {
+                    break;
+                }
+                if(batch instanceof Path) {
+                    writeSegment((Path) batch);
+                } else if(batch != null) {
+                    Batch lines = (Batch) batch;
+                    try {
+                        write(lines.lines);
+                    } finally {
+                        //Строки закодированы в буфер или переданы обработчику - место в очереди освобождается
+                        freeChars.release(lines.chars);
+                    }
+                }
+                if(System.currentTimeMillis() - lastFlush >= flushInterval) {
+                    flush();
+                }
+            }
+            flush();
+        } catch (InterruptedException e) {
+            System.out.println("Ошибка в ходе записи в файл: поток был прерван");
+        } finally {
+            closeChannel();
+        }
+    }
+
+    /**
+     * Кодирование строк в буфер со сбросом в файл при заполнении
+     */
+    private void write(List<String> lines) {
+        if(failed) {
+            return;
+        }
+        if(listener != null) {
+            deliver(lines);
+            return;
+        }
+        try {
+            for(String line : lines) {
+                CharBuffer chars = CharBuffer.wrap(line);
+                encoder.reset();
+                while (encoder.encode(chars, buffer, true).isOverflow()) {
+                    flushBuffer();
+                }
+                while (encoder.flush(buffer).isOverflow()) {
+                    flushBuffer();
+                }
+                if(buffer.remaining() < LINE_SEPARATOR.length) {
+                    flushBuffer();
+                }
+                buffer.put(LINE_SEPARATOR);
+            }
+        } catch (IOException e) {
+            failed = true;
+            System.out.println("Ошибка в ходе записи в файл");
+        }
+    }
+
+    /**
+     * Копирование сегмента в выходной файл после записи буфера (или передача его строк обработчику)
+     * и удаление сегмента
+     */
+    private void writeSegment(Path segment) {
+        try {
+            if(!failed && listener != null) {
+                readSegment(segment);
+            } else if(!failed) {
+                flushBuffer();
+                try (FileChannel source = FileChannel.open(segment, StandardOpenOption.READ)) {
+                    long size = source.size();
+                    if(size > 0) {
+                        openChannel();
+                        long position = 0;
+                        while (position < size) {
+                            position += source.transferTo(position, size - position, channel);
+                        }
+                        written = true;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            failed = true;
+            System.out.println("Ошибка в ходе записи в файл");
+        } finally {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                System.out.println("Ошибка в ходе удаления временного файла " + segment);
+            }
+        }
+    }
+
+    /**
+     * Передача строк сегмента обработчику пакетами
+     */
+    private void readSegment(Path segment) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            List<String> lines = new ArrayList<>(SEGMENT_BATCH);
+            String line;
+            while (!failed && (line = reader.readLine()) != null) {
+                lines.add(line);
+                if(lines.size() == SEGMENT_BATCH) {
+                    deliver(lines);
+                    lines = new ArrayList<>(SEGMENT_BATCH);
+                }
+            }
+            if(!lines.isEmpty()) {
+                deliver(lines);
+            }
+        }
+    }
+
+    /**
+     * Передача пакета обработчику; после ошибки обработчика строки больше не передаются
+     */
+    private void deliver(List<String> lines) {
+        try {
+            listener.onLines(lines);
+            written = true;
+        } catch (RuntimeException e) {
+            failed = true;
+            System.out.println("Ошибка в обработчике найденных строк: " + e);
+        }
+    }
+
+    private void flush() {
+        if(failed || listener != null) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            failed = true;
+            System.out.println("Ошибка в ходе записи в файл");
+        }
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Запись содержимого буфера в файл. Файл открывается при первой записи,
+     * в режиме добавления в конец (или создается, если не существует).
+     * Строки считаются записанными только после успешной записи в файл
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        if(buffer.hasRemaining()) {
+            openChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            written = true;
+        }
+        buffer.clear();
+    }
+
+    private void openChannel() throws IOException {
+        if(channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private void closeChannel() {
+        if(channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Ошибка в ходе записи в файл");
+            }
+        }
+    }
+}
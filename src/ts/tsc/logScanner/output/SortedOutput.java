@@ -0,0 +1,190 @@
+package ts.tsc.logScanner.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Упорядоченный вывод результатов (параметр order=path): строки в выходном файле
+ * упорядочены по относительному пути файла и номеру строки независимо от потоков.
+ *
+ * Обход директории выдает файлы в порядке путей, поэтому каждый поток поиска получает
+ * файлы в возрастающем порядке и пишет строки каждого файла (серию) в свой временный сегмент
+ * {@link WorkerSegment}: серии сегмента уже упорядочены. После поиска сегменты объединяются
+ * k-путевым слиянием: из сегментов читаются только заголовки серий, каждая серия копируется
+ * в выходной файл целиком. Память не зависит от объема результатов, чтение каждого сегмента
+ * и запись выходного файла последовательны
+ */
+public class SortedOutput {
+
+    private static final int STREAM_BUFFER = 64 * 1024;    //Буфер чтения сегмента и записи выходного файла
+
+    /**
+     * Порядок путей: по компонентам относительного пути, как при обходе директорий
+     * с упорядоченными по имени элементами
+     */
+    public static final Comparator<String[]> PATH_ORDER = (first, second) -> {
+        int common = Math.min(first.length, second.length);
+        for(int index = 0; index < common; index++) {
+            int result = first[index].compareTo(second[index]);
+            if(result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(first.length, second.length);
+    };
+
+    private final Path directory;                   //Директория временных сегментов
+    private final List<WorkerSegment> workers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param directory директория для временных сегментов
+     */
+    public SortedOutput(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Создание сегмента потока поиска
+     * @return сегмент, в который должен писать только этот поток
+     */
+    public WorkerSegment newWorker() {
+        WorkerSegment worker = new WorkerSegment(directory);
+        workers.add(worker);
+        return worker;
+    }
+
+    /**
+     * @param root начальная директория
+     * @param file файл внутри нее
+     * @return компоненты относительного пути файла - ключ серии
+     */
+    public static String[] key(Path root, Path file) {
+        Path relative = root.relativize(file);
+        String[] key = new String[relative.getNameCount()];
+        for(int index = 0; index < key.length; index++) {
+            key[index] = relative.getName(index).toString();
+        }
+        return key;
+    }
+
+    /**
+     * Слияние сегментов всех потоков в конец выходного файла и удаление сегментов.
+     * Вызывается после окончания всех потоков поиска
+     * @param output выходной файл
+     * @return количество записанных байт
+     */
+    public long merge(Path output) {
+        PriorityQueue<SegmentReader> heads = new PriorityQueue<>(
+                Math.max(1, workers.size()), (first, second) -> PATH_ORDER.compare(first.key, second.key));
+        long written = 0;
+        try {
+            for(WorkerSegment worker : workers) {
+                Path segment = worker.close();
+                if(segment != null) {
+                    SegmentReader reader = new SegmentReader(segment);
+                    if(reader.next()) {
+                        heads.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            }
+            if(heads.isEmpty()) {
+                return 0;
+            }
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), STREAM_BUFFER)) {
+                byte[] buffer = new byte[STREAM_BUFFER];
+                while (!heads.isEmpty()) {
+                    SegmentReader reader = heads.poll();
+                    written += reader.copyRun(out, buffer);
+                    if(reader.next()) {
+                        heads.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("> Ошибка в ходе упорядочивания результатов в файле " + output);
+        } finally {
+            for(SegmentReader reader : heads) {
+                reader.close();
+            }
+            for(WorkerSegment worker : workers) {
+                worker.delete();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Последовательное чтение серий одного сегмента
+     */
+    private static class SegmentReader {
+        private final Path segment;
+        private final DataInputStream input;
+        private String[] key;           //Ключ текущей серии
+        private long length;            //Длина данных текущей серии
+
+        SegmentReader(Path segment) throws IOException {
+            this.segment = segment;
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), STREAM_BUFFER));
+        }
+
+        /**
+         * Чтение заголовка следующей серии
+         * @return false - если сегмент закончился
+         */
+        boolean next() throws IOException {
+            int count;
+            try {
+                count = input.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            key = new String[count];
+            for(int index = 0; index < count; index++) {
+                key[index] = input.readUTF();
+            }
+            length = input.readLong();
+            return true;
+        }
+
+        /**
+         * Копирование данных текущей серии
+         * @return количество скопированных байт
+         */
+        long copyRun(OutputStream out, byte[] buffer) throws IOException {
+            long left = length;
+            while (left > 0) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if(read < 0) {
+                    throw new EOFException("Сегмент " + segment + " поврежден");
+                }
+                out.write(buffer, 0, read);
+                left -= read;
+            }
+            return length;
+        }
+
+        void close() {
+            try {
+                input.close();
+            } catch (IOException e) {
+                System.out.println("> Ошибка в ходе чтения временного файла " + segment);
+            }
+        }
+    }
+}
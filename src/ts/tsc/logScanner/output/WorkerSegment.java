@@ -0,0 +1,79 @@
+package ts.tsc.logScanner.output;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Временный сегмент упорядоченного вывода одного потока поиска.
+ *
+ * Сегмент состоит из серий: количество компонентов пути файла, компоненты пути,
+ * длина данных и строки файла в UTF-8. Серии записываются в порядке получения файлов,
+ * который совпадает с порядком путей. Сегмент изменяется только потоком-владельцем
+ */
+public class WorkerSegment {
+
+    private static final int STREAM_BUFFER = 64 * 1024;
+
+    private final Path directory;
+    private Path segment;               //Файл сегмента; создается при первой серии
+    private DataOutputStream output;
+
+    WorkerSegment(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Запись строк файла как одной серии; буфер строк очищается
+     * @param key компоненты относительного пути файла
+     * @param results найденные строки файла
+     * @throws IOException ошибка записи сегмента
+     */
+    public void write(String[] key, ResultBuffer results) throws IOException {
+        if(results.isEmpty()) {
+            return;
+        }
+        if(output == null) {
+            segment = Files.createTempFile(directory, ".logscanner-", ".sorted");
+            output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment), STREAM_BUFFER));
+        }
+        output.writeInt(key.length);
+        for(String name : key) {
+            output.writeUTF(name);
+        }
+        results.writeRun(output);
+    }
+
+    /**
+     * Закрытие сегмента перед слиянием
+     * @return файл сегмента; null - если потоком не было записано ни одной серии
+     */
+    Path close() throws IOException {
+        if(output != null) {
+            output.close();
+            output = null;
+        }
+        return segment;
+    }
+
+    /**
+     * Удаление сегмента после слияния
+     */
+    void delete() {
+        if(segment == null) {
+            return;
+        }
+        try {
+            if(output != null) {
+                output.close();
+                output = null;
+            }
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            System.out.println("> Ошибка в ходе удаления временного файла " + segment);
+        }
+        segment = null;
+    }
+}